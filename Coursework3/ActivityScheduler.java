@@ -0,0 +1,271 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides which animals act at each step, so that animals with nothing to
+ * do are not visited at all.
+ *
+ * Between its active steps an animal only grows older and hungrier, which
+ * it catches up on when it next acts (see Animal.nextWake). A young rat or
+ * a zebra at night can therefore sleep until it is old enough to breed, the
+ * time of day changes or it is due to die, whatever its neighbours do; if
+ * it is eaten in the meantime it is simply not woken.
+ *
+ * Animals that act at the very next step are kept in an awake list. The
+ * others wait in a timing wheel: a ring of buckets indexed by the clock
+ * reading they wake at, modulo the number of buckets. A bucket is drained
+ * when the clock reaches it, and animals due on a later turn of the wheel
+ * stay where they are. An animal that dies while asleep may be brought
+ * back from a pool as a different animal before its bucket is drained,
+ * so the wheel also notes the incarnation of each animal it holds and
+ * drops any entry for an earlier one. Scheduling only happens between
+ * steps, in a fixed order, so the acting order does not depend on how many
+ * threads ran the step.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class ActivityScheduler {
+    // The number of buckets in the wheel; a power of two.
+    private static final int WHEEL_SIZE = 64;
+
+    // The sleeping animals, by the clock reading they wake at.
+    private final List<List<Animal>> wheel;
+    // The clock reading each sleeping animal wakes at, in the same layout.
+    private final List<int[]> wakes;
+    // The incarnation of each sleeping animal when it was put to sleep.
+    private final List<int[]> incarnations;
+    // The animals that act at the next step.
+    private Animal[] awake;
+    private int awakeCount;
+    // The animals acting at the current step, in acting order.
+    private Animal[] due;
+    private int dueCount;
+
+    /**
+     * Create an empty scheduler.
+     */
+    public ActivityScheduler() {
+        wheel = new ArrayList<>(WHEEL_SIZE);
+        wakes = new ArrayList<>(WHEEL_SIZE);
+        incarnations = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+            wakes.add(new int[4]);
+            incarnations.add(new int[4]);
+        }
+        awake = new Animal[16];
+        due = new Animal[16];
+    }
+
+    /**
+     * Schedule a live animal to act at its next active step.
+     *
+     * @param animal The animal.
+     */
+    public void schedule(Animal animal) {
+        int wake = animal.nextWake();
+        if (wake == animal.getField().getClock() + 1) {
+            if (awakeCount == awake.length) {
+                awake = Arrays.copyOf(awake, awakeCount * 2);
+            }
+            awake[awakeCount++] = animal;
+        } else {
+            addSleeper(animal, wake);
+        }
+    }
+
+    /**
+     * Start a step: gather the live animals that act at the given clock
+     * reading, the awake ones first and then those woken from the wheel.
+     *
+     * @param clock The field's clock at this step.
+     */
+    public void beginStep(int clock) {
+        dueCount = 0;
+        for (int i = 0; i < awakeCount; i++) {
+            addDue(awake[i]);
+            awake[i] = null;
+        }
+        awakeCount = 0;
+
+        int bucket = clock & (WHEEL_SIZE - 1);
+        List<Animal> sleepers = wheel.get(bucket);
+        int[] bucketWakes = wakes.get(bucket);
+        int[] bucketIncarnations = incarnations.get(bucket);
+        int kept = 0;
+        for (int i = 0; i < sleepers.size(); i++) {
+            Animal animal = sleepers.get(i);
+            if (animal.getIncarnation() != bucketIncarnations[i]) {
+                // It died, and has been brought back as another animal.
+                continue;
+            }
+            if (bucketWakes[i] == clock) {
+                addDue(animal);
+            } else if (animal.isAlive()) {
+                // Due on a later turn of the wheel.
+                sleepers.set(kept, animal);
+                bucketWakes[kept] = bucketWakes[i];
+                bucketIncarnations[kept++] = bucketIncarnations[i];
+            }
+        }
+        // Removed from the end, one at a time, so that no view of the list is made.
+        for (int i = sleepers.size() - 1; i >= kept; i--) {
+            sleepers.remove(i);
+        }
+    }
+
+    /**
+     * Return the number of animals acting at the current step. Some may
+     * have been eaten since the step began.
+     *
+     * @return The number of animals due.
+     */
+    public int dueCount() {
+        return dueCount;
+    }
+
+    /**
+     * Return an animal acting at the current step.
+     *
+     * @param index The position in acting order, from 0 to dueCount() - 1.
+     * @return The animal.
+     */
+    public Animal due(int index) {
+        return due[index];
+    }
+
+    /**
+     * Finish a step: schedule the next active step of every animal that
+     * acted and survived, and then of every newborn that survived.
+     *
+     * @param newborns The animals born during the step.
+     */
+    public void endStep(List<Animal> newborns) {
+        for (int i = 0; i < dueCount; i++) {
+            Animal animal = due[i];
+            due[i] = null;
+            if (animal.isAlive()) {
+                schedule(animal);
+            }
+        }
+        dueCount = 0;
+        // Indexed, so that no iterator is made at every step.
+        for (int i = 0; i < newborns.size(); i++) {
+            Animal animal = newborns.get(i);
+            // It may have been eaten as soon as it was born.
+            if (animal.isAlive()) {
+                schedule(animal);
+            }
+        }
+    }
+
+    /**
+     * Pass every live animal waiting for a later step to the visitor: the
+     * awake ones first, in order, and then the sleeping ones bucket by
+     * bucket. Restoring them in the same order recreates the scheduler
+     * exactly. Must not be called while a step is in progress.
+     *
+     * @param visitor Receives each animal.
+     */
+    public void forEachScheduled(Visitor visitor) {
+        for (int i = 0; i < awakeCount; i++) {
+            if (awake[i].isAlive()) {
+                visitor.visit(awake[i], awake[i].nextWake(), true);
+            }
+        }
+        for (int bucket = 0; bucket < WHEEL_SIZE; bucket++) {
+            List<Animal> sleepers = wheel.get(bucket);
+            int[] bucketWakes = wakes.get(bucket);
+            int[] bucketIncarnations = incarnations.get(bucket);
+            for (int i = 0; i < sleepers.size(); i++) {
+                if (sleepers.get(i).isAlive()
+                        && sleepers.get(i).getIncarnation() == bucketIncarnations[i]) {
+                    visitor.visit(sleepers.get(i), bucketWakes[i], false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Put back an animal passed to a visitor by forEachScheduled.
+     *
+     * @param animal  The animal.
+     * @param wake    The clock reading it wakes at.
+     * @param isAwake Whether it was in the awake list.
+     */
+    public void restore(Animal animal, int wake, boolean isAwake) {
+        if (isAwake) {
+            if (awakeCount == awake.length) {
+                awake = Arrays.copyOf(awake, awakeCount * 2);
+            }
+            awake[awakeCount++] = animal;
+        } else {
+            addSleeper(animal, wake);
+        }
+    }
+
+    /**
+     * Forget every animal.
+     */
+    public void clear() {
+        for (List<Animal> sleepers : wheel) {
+            sleepers.clear();
+        }
+        Arrays.fill(awake, 0, awakeCount, null);
+        awakeCount = 0;
+        Arrays.fill(due, 0, dueCount, null);
+        dueCount = 0;
+    }
+
+    /**
+     * Put an animal in the wheel until the given clock reading.
+     *
+     * @param animal The animal.
+     * @param wake   The clock reading it wakes at.
+     */
+    private void addSleeper(Animal animal, int wake) {
+        int bucket = wake & (WHEEL_SIZE - 1);
+        List<Animal> sleepers = wheel.get(bucket);
+        int[] bucketWakes = wakes.get(bucket);
+        int[] bucketIncarnations = incarnations.get(bucket);
+        if (sleepers.size() == bucketWakes.length) {
+            bucketWakes = Arrays.copyOf(bucketWakes, bucketWakes.length * 2);
+            wakes.set(bucket, bucketWakes);
+            bucketIncarnations = Arrays.copyOf(bucketIncarnations, bucketWakes.length);
+            incarnations.set(bucket, bucketIncarnations);
+        }
+        bucketWakes[sleepers.size()] = wake;
+        bucketIncarnations[sleepers.size()] = animal.getIncarnation();
+        sleepers.add(animal);
+    }
+
+    /**
+     * Receives the animals passed on by forEachScheduled.
+     */
+    public interface Visitor {
+        /**
+         * Receive one scheduled animal.
+         *
+         * @param animal  The animal.
+         * @param wake    The clock reading it wakes at.
+         * @param isAwake Whether it is in the awake list.
+         */
+        void visit(Animal animal, int wake, boolean isAwake);
+    }
+
+    /**
+     * Add a live animal to the animals acting at the current step.
+     *
+     * @param animal The animal.
+     */
+    private void addDue(Animal animal) {
+        if (animal.isAlive()) {
+            if (dueCount == due.length) {
+                due = Arrays.copyOf(due, dueCount * 2);
+            }
+            due[dueCount++] = animal;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The animals taking part in a simulation, kept in a dense array in the
+ * order they joined it. Which of them act at a step, and in what order, is
+ * up to the ActivityScheduler.
+ *
+ * Animals that die during a step stay in the array until the end of the
+ * step, when one compaction pass removes all of them, keeping the order of
+ * the survivors. Each death therefore costs O(1) however many animals there
+ * are, where removing it from an ArrayList would shift the whole tail.
+ * Animals born during the step are appended to a separate buffer and only
+ * join the array once the step is over.
+ *
+ * An animal that has died is released to the store's AnimalPool, if it
+ * has one, as it is removed, to be brought back as a newborn.
+ *
+ * Every animal in the store is given a handle: its slot in a slot table
+ * tagged with the slot's generation. A handle stays valid while the animal
+ * lives, wherever the compaction moves it, and a handle to a dead animal is
+ * never mistaken for the animal that later reuses its slot.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class AgentStore {
+    // The handle of an animal that is not in a store.
+    public static final long NO_HANDLE = -1;
+
+    // The animals, in the order they joined the store.
+    private Animal[] agents;
+    private int size;
+    // Animals born during the current step.
+    private final List<Animal> newborns;
+    // The animal in each slot of the slot table.
+    private Animal[] slots;
+    // The generation of each slot, advanced whenever the slot is released.
+    private int[] generations;
+    // Slots that have been released and can be reused.
+    private int[] freeSlots;
+    private int freeCount;
+    // The number of slots handed out so far.
+    private int slotCount;
+    // Receives the animals that die; null to leave them to the collector.
+    private final AnimalPool pool;
+
+    /**
+     * Create an empty store that leaves the dead to the garbage collector.
+     */
+    public AgentStore() {
+        this(null);
+    }
+
+    /**
+     * Create an empty store that releases the dead to a pool.
+     *
+     * @param pool The pool, or null for none.
+     */
+    public AgentStore(AnimalPool pool) {
+        this.pool = pool;
+        agents = new Animal[16];
+        newborns = new ArrayList<>();
+        slots = new Animal[16];
+        generations = new int[16];
+        freeSlots = new int[16];
+    }
+
+    /**
+     * Add an animal to the end of the store.
+     *
+     * @param animal The animal.
+     * @return The animal's handle.
+     */
+    public long add(Animal animal) {
+        if (size == agents.length) {
+            agents = Arrays.copyOf(agents, size * 2);
+        }
+        agents[size++] = animal;
+        long handle = allocateHandle(animal);
+        animal.setHandle(handle);
+        return handle;
+    }
+
+    /**
+     * Return the number of animals in the store, including any that have
+     * died during the current step.
+     *
+     * @return The number of animals.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the animal at the given position in the store.
+     *
+     * @param index The position, from 0 to size() - 1.
+     * @return The animal.
+     */
+    public Animal get(int index) {
+        return agents[index];
+    }
+
+    /**
+     * Return the animal with the given handle, if it is still alive.
+     *
+     * @param handle The animal's handle.
+     * @return The animal, or null if it has died or the handle is stale.
+     */
+    public Animal lookup(long handle) {
+        int slot = (int) handle;
+        if (handle == NO_HANDLE || slot >= slotCount || generations[slot] != (int) (handle >>> 32)) {
+            return null;
+        }
+        Animal animal = slots[slot];
+        return animal.isAlive() ? animal : null;
+    }
+
+    /**
+     * Return the buffer that animals born during the current step are
+     * added to. They join the store at the end of the step.
+     *
+     * @return The newborn buffer.
+     */
+    public List<Animal> newborns() {
+        return newborns;
+    }
+
+    /**
+     * Finish a step: remove every animal that has died, keeping the order
+     * of the rest, and then append the animals born during the step. The
+     * scheduler must have finished the step first, as the dead may be
+     * brought back by the next one.
+     */
+    public void endStep() {
+        int live = 0;
+        for (int i = 0; i < size; i++) {
+            Animal animal = agents[i];
+            if (animal.isAlive()) {
+                agents[live++] = animal;
+            } else {
+                releaseHandle(animal.getHandle());
+                animal.setHandle(NO_HANDLE);
+                if (pool != null) {
+                    pool.release(animal);
+                }
+            }
+        }
+        Arrays.fill(agents, live, size, null);
+        size = live;
+        // Indexed, so that no iterator is made at every step.
+        for (int i = 0; i < newborns.size(); i++) {
+            add(newborns.get(i));
+        }
+        newborns.clear();
+    }
+
+    /**
+     * Remove every animal and invalidate all handles.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            releaseHandle(agents[i].getHandle());
+            agents[i].setHandle(NO_HANDLE);
+            agents[i] = null;
+        }
+        size = 0;
+        newborns.clear();
+    }
+
+    /**
+     * Give an animal a slot and return the slot's current handle.
+     *
+     * @param animal The animal.
+     * @return The handle.
+     */
+    private long allocateHandle(Animal animal) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slotCount * 2);
+                generations = Arrays.copyOf(generations, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        slots[slot] = animal;
+        return ((long) generations[slot] << 32) | slot;
+    }
+
+    /**
+     * Release the slot of a handle, so that the handle goes stale.
+     *
+     * @param handle The handle.
+     */
+    private void releaseHandle(long handle) {
+        int slot = (int) handle;
+        slots[slot] = null;
+        generations[slot]++;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+}
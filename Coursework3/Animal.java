@@ -1,40 +1,414 @@
 import java.util.List;
+import java.util.random.RandomGenerator;
 
 /**
- * A class representing shared characteristics of animals.
+ * A model of an animal of any species. Animals age, breed, move, may hunt,
+ * and die; everything that differs between species is looked up in the
+ * animal's row of the species table (see Species).
  *
  * @author David J. Barnes and Michael Kölling, edited by Dylan Barker (k20001430) and Isaac Addo (k20034809)
  * @version 2020.03.03
  */
-public abstract class Animal {
+public final class Animal {
     // Whether the animal is alive or not.
     private boolean alive;
     // The animal's field.
     private Field field;
-    // The animal's position in the field.
-    private Location location;
+    // The animal's position in the field, as a cell index.
+    private int cell;
     // The animal's gender
     private boolean gender;
+    // The animal's species.
+    private final Species species;
+    // The id of the animal's species.
+    private final int speciesId;
+    // The animal's age.
+    private int age;
+    // The animal's food level, which is increased by eating.
+    private int foodLevel;
+    // The field clock when the age and food level were last brought up to date.
+    private int lastActed;
+    // The animal's handle in the simulation's agent store.
+    private long handle = AgentStore.NO_HANDLE;
+    // The number of times the animal has been brought back from a pool.
+    private int incarnation;
 
     /**
-     * Create a new animal at location in field.
+     * Create a new animal at location in field. An animal may be created
+     * with age zero and full of food (a new born) or with a random age
+     * and food level.
      *
-     * @param field    The field currently occupied.
-     * @param location The location within the field.
+     * @param species   The animal's species.
+     * @param randomAge If true, the animal will have random age and hunger level.
+     * @param field     The field currently occupied.
+     * @param location  The location within the field.
      */
-    public Animal(Field field, Location location) {
+    public Animal(Species species, boolean randomAge, Field field, Location location) {
+        this.species = species;
+        speciesId = species.getId();
+        initialise(randomAge, field, location);
+    }
+
+    /**
+     * Return a new animal of the given species at location in field,
+     * reusing a dead one from the field's pool if there is one. The animal
+     * is the same as one made by the constructor, and the same random
+     * numbers are drawn to make it.
+     *
+     * @param species   The animal's species.
+     * @param randomAge If true, the animal will have random age and hunger level.
+     * @param field     The field currently occupied.
+     * @param location  The location within the field.
+     * @return The animal.
+     */
+    public static Animal create(Species species, boolean randomAge, Field field, Location location) {
+        Animal animal = field.getAnimalPool().take(species);
+        if (animal == null) {
+            return new Animal(species, randomAge, field, location);
+        }
+        animal.reinitialise(randomAge, field, location);
+        return animal;
+    }
+
+    /**
+     * Bring a dead animal back as a new one, as if it had just been made
+     * by the constructor.
+     *
+     * @param randomAge If true, the animal will have random age and hunger level.
+     * @param field     The field currently occupied.
+     * @param location  The location within the field.
+     */
+    void reinitialise(boolean randomAge, Field field, Location location) {
+        incarnation++;
+        handle = AgentStore.NO_HANDLE;
+        initialise(randomAge, field, location);
+    }
+
+    /**
+     * Set up a new animal of the animal's species.
+     *
+     * @param randomAge If true, the animal will have random age and hunger level.
+     * @param field     The field currently occupied.
+     * @param location  The location within the field.
+     */
+    private void initialise(boolean randomAge, Field field, Location location) {
         alive = true;
         this.field = field;
+        RandomGenerator rand = Randomizer.current();
+        // The gender is known before the animal is placed, as the field
+        // may index it by gender.
+        gender = rand.nextBoolean();
+        cell = Field.NO_CELL;
         setLocation(location);
+        lastActed = field.getClock();
+        if (randomAge) {
+            age = rand.nextInt(species.getMaxAge());
+            if (species.getFoodValue() > 0) {
+                foodLevel = rand.nextInt(species.getFoodValue());
+            }
+        } else {
+            age = 0;
+            foodLevel = species.getFoodValue();
+        }
+    }
+
+    /**
+     * Recreate an animal exactly as it was saved in a checkpoint. Nothing
+     * random is drawn.
+     *
+     * @param species   The animal's species.
+     * @param field     The field currently occupied.
+     * @param cell      The cell within the field.
+     * @param gender    The animal's gender.
+     * @param age       The animal's age when it last acted.
+     * @param foodLevel The animal's food level when it last acted.
+     * @param lastActed The field clock when it last acted.
+     */
+    Animal(Species species, Field field, int cell, boolean gender, int age, int foodLevel,
+           int lastActed) {
+        alive = true;
+        this.species = species;
+        speciesId = species.getId();
+        this.field = field;
+        this.gender = gender;
+        this.cell = Field.NO_CELL;
+        setLocation(cell);
+        this.age = age;
+        this.foodLevel = foodLevel;
+        this.lastActed = lastActed;
     }
 
     /**
-     * Make this animal act - that is: make it do
-     * whatever it wants/needs to do.
+     * Make this animal act - that is: make it do whatever its species
+     * does at the current time of day. It ages, may die of hunger or old
+     * age, may breed, hunts if it is a time to hunt, and otherwise moves to
+     * a free location or stays where it is.
+     *
+     * An animal need not act at every step. Steps at which it only grows
+     * older and hungrier can be skipped (see nextWake); the age and food
+     * level catch up with the field's clock when it next acts.
      *
      * @param newAnimals A list to receive newly born animals.
      */
-    abstract public void act(List<Animal> newAnimals);
+    public void act(List<Animal> newAnimals) {
+        int elapsed = field.getClock() - lastActed;
+        lastActed += elapsed;
+        incrementAge(elapsed);
+        if (species.getFoodValue() > 0) {
+            incrementHunger(elapsed);
+        }
+        if (alive) {
+            giveBirth(newAnimals);
+            Field.TimeOfDay time = field.getTimeOfDay();
+            // Move towards a source of food if found.
+            int newCell = Field.NO_CELL;
+            if (species.huntsIn(time)) {
+                newCell = findFood();
+            }
+            if (newCell == Field.NO_CELL) {
+                // No food found - try to move to a free location, or stay put.
+                newCell = species.movesIn(time) ? field.randomFreeAdjacentCell(cell) : cell;
+            }
+            // See if it was possible to move.
+            if (newCell != Field.NO_CELL) {
+                setLocation(newCell);
+            } else {
+                // Overcrowding.
+                setDead(SimulationEvents.DeathCause.OVERCROWDING);
+            }
+        }
+    }
+
+    /**
+     * Work out what this animal does at this step, as act does, but from
+     * the field as it was at the start of the step and without changing
+     * it: the animal only ages and grows hungrier, and records in the plan
+     * whether it dies, where it moves or hunts and where its young are
+     * born. A SynchronousStepEngine settles the plans of all the animals
+     * against each other and then carries them out.
+     *
+     * Every cell the animal claims was free at the start of the step, or
+     * held its prey. Its young and its own move are given different free
+     * cells, drawn in that order.
+     *
+     * @param plan Receives what the animal means to do.
+     */
+    void plan(SynchronousStepEngine.Plan plan) {
+        plan.start(cell);
+        int elapsed = field.getClock() - lastActed;
+        lastActed += elapsed;
+        age += elapsed;
+        if (age > species.getMaxAge()) {
+            plan.death = SimulationEvents.DeathCause.AGE;
+            return;
+        }
+        if (species.getFoodValue() > 0) {
+            foodLevel -= elapsed;
+            if (foodLevel <= 0) {
+                plan.death = SimulationEvents.DeathCause.HUNGER;
+                return;
+            }
+        }
+
+        RandomGenerator rand = Randomizer.current();
+        int[] free = plan.free;
+        int freeCount = field.freeAdjacentCells(cell, free);
+        if (canBreed()) {
+            int births = findMate() ? breed() : 0;
+            for (int born = 0; born < births && freeCount > 0; born++) {
+                int chosen = rand.nextInt(freeCount);
+                plan.addBirth(free[chosen]);
+                free[chosen] = free[--freeCount];
+            }
+        }
+
+        Field.TimeOfDay time = field.getTimeOfDay();
+        int newCell = Field.NO_CELL;
+        if (species.huntsIn(time)) {
+            newCell = field.randomAdjacentCellIn(cell, species.getPreyMask());
+            if (newCell != Field.NO_CELL) {
+                plan.eats = true;
+            } else if (species.getSensingRange() > 1) {
+                int prey = field.nearestWithin(cell, species.getSensingRange(),
+                        species.getPreyMask(), SpatialIndex.ANY_GENDER);
+                if (prey != Field.NO_CELL) {
+                    newCell = field.freeAdjacentCellToward(cell, prey);
+                }
+            }
+        }
+        if (newCell == Field.NO_CELL) {
+            if (!species.movesIn(time)) {
+                newCell = cell;
+            } else if (freeCount > 0) {
+                newCell = free[rand.nextInt(freeCount)];
+            }
+        }
+        if (newCell != Field.NO_CELL) {
+            plan.target = newCell;
+        } else {
+            plan.death = SimulationEvents.DeathCause.OVERCROWDING;
+        }
+    }
+
+    /**
+     * Fill the animal up, having eaten.
+     */
+    void feed() {
+        foodLevel = species.getFoodValue();
+    }
+
+    /**
+     * Return the field clock reading at which this animal next needs to
+     * act: the first step at which it could breed, hunt or move, or at
+     * which it dies of old age or hunger. It only grows older and hungrier
+     * at the steps before that, so they can be skipped. Only valid for a
+     * live animal.
+     *
+     * @return The clock reading of its next active step.
+     */
+    int nextWake() {
+        if (canBreed()) {
+            // It looks for a mate at every step.
+            return lastActed + 1;
+        }
+        int wake = lastActed + Math.min(species.getBreedingAge() - age,
+                species.getMaxAge() - age + 1);
+        if (species.getFoodValue() > 0) {
+            wake = Math.min(wake, lastActed + foodLevel);
+        }
+        // The times of day repeat, so a full day ahead is enough to look.
+        int end = Math.min(wake, lastActed + 1 + Field.TimeOfDay.COUNT);
+        for (int clock = lastActed + 1; clock < end; clock++) {
+            if (species.isActiveIn(Field.timeOfDayAt(clock))) {
+                return clock;
+            }
+        }
+        // An animal created with no food left starves at its first step.
+        return Math.max(wake, lastActed + 1);
+    }
+
+    /**
+     * Increase the age. This could result in the animal's death.
+     *
+     * @param steps The number of steps to age by.
+     */
+    private void incrementAge(int steps) {
+        age += steps;
+        if (age > species.getMaxAge()) {
+            setDead(SimulationEvents.DeathCause.AGE);
+        }
+    }
+
+    /**
+     * Make this animal more hungry. This could result in the animal's death.
+     *
+     * @param steps The number of steps to grow hungrier by.
+     */
+    private void incrementHunger(int steps) {
+        foodLevel -= steps;
+        if (foodLevel <= 0) {
+            setDead(SimulationEvents.DeathCause.HUNGER);
+        }
+    }
+
+    /**
+     * Check whether or not this animal is to give birth at this step.
+     * New births will be made into free adjacent locations, if an animal
+     * of the same species and the opposite gender is adjacent, or for a
+     * species that senses further, anywhere within its sensing range.
+     *
+     * @param newAnimals A list to return newly born animals.
+     */
+    private void giveBirth(List<Animal> newAnimals) {
+        if (!canBreed()) {
+            return;
+        }
+        int births = findMate() ? breed() : 0;
+
+        int born = 0;
+        for (; born < births; born++) {
+            int free = field.randomFreeAdjacentCell(cell);
+            if (free == Field.NO_CELL) {
+                break;
+            }
+            newAnimals.add(create(species, false, field, field.locationAt(free)));
+        }
+        if (born > 0) {
+            SimulationEvents.birth(species, cell, field.getClock(), born);
+        }
+    }
+
+    /**
+     * Look for a mate: a neighbour of the same species, picked at random,
+     * that is of the opposite gender, or for a species that senses
+     * further, any animal of the opposite gender within its sensing range.
+     *
+     * @return true if there is a mate.
+     */
+    private boolean findMate() {
+        boolean mated = false;
+        int mateCell = field.randomAdjacentCell(cell, speciesId);
+        if (mateCell != Field.NO_CELL) {
+            Animal mate = (Animal) field.getObjectAt(mateCell);
+            mated = gender != mate.gender;
+        }
+        if (!mated && species.getSensingRange() > 1) {
+            mated = field.anyWithin(cell, species.getSensingRange(),
+                    Species.maskOf(speciesId), gender ? 0 : 1);
+        }
+        return mated;
+    }
+
+    /**
+     * Look for prey adjacent to the current location.
+     * Only the first live prey is eaten. If there is none, a species that
+     * senses further heads for the nearest prey within its sensing range.
+     *
+     * @return The cell where food was found or the cell to move to in
+     * pursuit of it, or Field.NO_CELL if there is neither.
+     */
+    private int findFood() {
+        int where = field.randomAdjacentCellIn(cell, species.getPreyMask());
+        if (where != Field.NO_CELL) {
+            Animal prey = (Animal) field.getObjectAt(where);
+            if (prey.isAlive()) {
+                field.countEaten(prey.speciesId);
+                SimulationEvents.predation(species, prey.species, where, field.getClock());
+                prey.setDead(SimulationEvents.DeathCause.EATEN);
+                foodLevel = species.getFoodValue();
+                return where;
+            }
+        } else if (species.getSensingRange() > 1) {
+            int prey = field.nearestWithin(cell, species.getSensingRange(),
+                    species.getPreyMask(), SpatialIndex.ANY_GENDER);
+            if (prey != Field.NO_CELL) {
+                return field.freeAdjacentCellToward(cell, prey);
+            }
+        }
+        return Field.NO_CELL;
+    }
+
+    /**
+     * An animal can breed if it has reached the breeding age.
+     */
+    private boolean canBreed() {
+        return age >= species.getBreedingAge();
+    }
+
+    /**
+     * Generate a number representing the number of births,
+     * if it can breed.
+     *
+     * @return The number of births (may be zero).
+     */
+    private int breed() {
+        RandomGenerator rand = Randomizer.current();
+        int births = 0;
+        if (canBreed() && rand.nextDouble() <= species.getBreedingProbability()) {
+            births = rand.nextInt(species.getMaxLitterSize()) + 1;
+        }
+        return births;
+    }
 
     /**
      * Check whether the animal is alive or not.
@@ -48,12 +422,15 @@ public abstract class Animal {
     /**
      * Indicate that the animal is no longer alive.
      * It is removed from the field.
+     *
+     * @param cause What it died of, for the flight recorder.
      */
-    protected void setDead() {
+    protected void setDead(SimulationEvents.DeathCause cause) {
         alive = false;
-        if (location != null) {
-            field.clear(location);
-            location = null;
+        if (cell != Field.NO_CELL) {
+            SimulationEvents.death(species, cell, field.getClock(), cause, age);
+            field.clear(cell);
+            cell = Field.NO_CELL;
             field = null;
         }
     }
@@ -64,7 +441,19 @@ public abstract class Animal {
      * @return The animal's location.
      */
     protected Location getLocation() {
-        return location;
+        if (cell == Field.NO_CELL) {
+            return null;
+        }
+        return field.locationAt(cell);
+    }
+
+    /**
+     * Return the cell the animal occupies.
+     *
+     * @return The animal's cell, or Field.NO_CELL once it has died.
+     */
+    protected int getCell() {
+        return cell;
     }
 
     /**
@@ -73,11 +462,21 @@ public abstract class Animal {
      * @param newLocation The animal's new location.
      */
     protected void setLocation(Location newLocation) {
-        if (location != null) {
-            field.clear(location);
+        setLocation(field.cellOf(newLocation));
+    }
+
+    /**
+     * Place the animal in the new cell of the given field.
+     *
+     * @param newCell The animal's new cell.
+     */
+    protected void setLocation(int newCell) {
+        if (cell != Field.NO_CELL) {
+            field.move(cell, newCell);
+        } else {
+            field.place(this, newCell);
         }
-        location = newLocation;
-        field.place(this, newLocation);
+        cell = newCell;
     }
 
     /**
@@ -89,6 +488,80 @@ public abstract class Animal {
         return gender;
     }
 
+    /**
+     * Return the animal's age when it last acted.
+     *
+     * @return The age.
+     */
+    int getAge() {
+        return age;
+    }
+
+    /**
+     * Return the animal's food level when it last acted.
+     *
+     * @return The food level.
+     */
+    int getFoodLevel() {
+        return foodLevel;
+    }
+
+    /**
+     * Return the field clock when the animal last acted.
+     *
+     * @return The clock reading.
+     */
+    int getLastActed() {
+        return lastActed;
+    }
+
+    /**
+     * Return the animal's species.
+     *
+     * @return The species.
+     */
+    protected Species getSpecies() {
+        return species;
+    }
+
+    /**
+     * Return the id of the animal's species.
+     *
+     * @return The species id.
+     */
+    protected int getSpeciesId() {
+        return speciesId;
+    }
+
+    /**
+     * Return the animal's handle in the simulation's agent store.
+     *
+     * @return The handle, or AgentStore.NO_HANDLE if it is not in a store.
+     */
+    protected long getHandle() {
+        return handle;
+    }
+
+    /**
+     * Return which incarnation of the animal this is. It changes each time
+     * the animal is brought back from a pool, so a reference kept from an
+     * earlier life can be told apart from the current one.
+     *
+     * @return The incarnation.
+     */
+    int getIncarnation() {
+        return incarnation;
+    }
+
+    /**
+     * Record the animal's handle. Only the agent store sets this.
+     *
+     * @param handle The new handle.
+     */
+    void setHandle(long handle) {
+        this.handle = handle;
+    }
+
     /**
      * Return the animal's field.
      *
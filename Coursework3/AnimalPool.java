@@ -0,0 +1,191 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps dead animals of each species so that they can be brought back as
+ * newborns (see Animal.create), instead of leaving garbage behind at every
+ * death and allocating at every birth.
+ *
+ * An animal is only released to the pool once nothing in the simulation
+ * still refers to it as a live animal: the AgentStore releases its dead at
+ * the end of each step. The ActivityScheduler may still have a dead animal
+ * asleep in its wheel, so it notes which incarnation of an animal it put
+ * there and ignores entries for an earlier one.
+ *
+ * Animals are released only between steps, on the simulation thread, and
+ * taken during a step, possibly by several threads at once, so taking is
+ * a compare-and-set on the size of a species' stack. Each species keeps
+ * at most getCapacity() animals, so that a population that crashes does
+ * not leave the pool holding it.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class AnimalPool {
+    // The most animals kept for each species by default.
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    // The pooled animals of each species, by species id; a stack each.
+    private Animal[][] pooled;
+    // The number of pooled animals of each species, by species id.
+    private AtomicInteger[] sizes;
+    // The most animals kept for each species.
+    private int capacity;
+    // The number of animals taken from the pool and released to it.
+    private final LongAdder reused;
+    private long released;
+
+    /**
+     * Create an empty pool.
+     */
+    public AnimalPool() {
+        pooled = new Animal[0][];
+        sizes = new AtomicInteger[0];
+        capacity = DEFAULT_CAPACITY;
+        reused = new LongAdder();
+    }
+
+    /**
+     * Take a pooled animal of the given species, if there is one.
+     *
+     * @param species The species.
+     * @return A dead animal of that species, or null if none is pooled.
+     */
+    public Animal take(Species species) {
+        int id = species.getId();
+        AtomicInteger[] counts = sizes;
+        if (id >= counts.length) {
+            return null;
+        }
+        AtomicInteger size = counts[id];
+        int n;
+        do {
+            n = size.get();
+            if (n == 0) {
+                return null;
+            }
+        } while (!size.compareAndSet(n, n - 1));
+        Animal animal = pooled[id][n - 1];
+        // A variant of the species keeps the same id, but not its animals.
+        if (animal.getSpecies() != species) {
+            return null;
+        }
+        reused.increment();
+        return animal;
+    }
+
+    /**
+     * Keep a dead animal for reuse, unless the pool of its species is
+     * full. Must not be called while a step is in progress.
+     *
+     * @param animal The animal, dead and referred to by nothing live.
+     */
+    public void release(Animal animal) {
+        int id = animal.getSpeciesId();
+        if (id >= sizes.length) {
+            grow(id + 1);
+        }
+        int n = sizes[id].get();
+        if (n < capacity) {
+            if (n == pooled[id].length) {
+                pooled[id] = Arrays.copyOf(pooled[id], Math.max(16, n * 2));
+            }
+            pooled[id][n] = animal;
+            sizes[id].set(n + 1);
+            released++;
+        }
+    }
+
+    /**
+     * Drop every pooled animal.
+     */
+    public void clear() {
+        for (int id = 0; id < sizes.length; id++) {
+            Arrays.fill(pooled[id], 0, sizes[id].get(), null);
+            sizes[id].set(0);
+        }
+    }
+
+    /**
+     * Set the most animals kept for each species. Zero turns pooling off.
+     * Animals already pooled beyond the new capacity are dropped.
+     *
+     * @param capacity The most animals kept per species.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        for (int id = 0; id < sizes.length; id++) {
+            int n = sizes[id].get();
+            if (n > this.capacity) {
+                Arrays.fill(pooled[id], this.capacity, n, null);
+                sizes[id].set(this.capacity);
+            }
+        }
+    }
+
+    /**
+     * @return The most animals kept for each species.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Return the number of animals of a species in the pool.
+     *
+     * @param speciesId The species id.
+     * @return The number pooled.
+     */
+    public int getSize(int speciesId) {
+        return speciesId < sizes.length ? sizes[speciesId].get() : 0;
+    }
+
+    /**
+     * @return The number of animals taken from the pool so far.
+     */
+    public long getReused() {
+        return reused.sum();
+    }
+
+    /**
+     * @return The number of animals released to the pool so far.
+     */
+    public long getReleased() {
+        return released;
+    }
+
+    /**
+     * Get details of the animals in the pool, in species order.
+     *
+     * @return A string describing the pool.
+     */
+    public String getPoolDetails() {
+        StringBuilder buffer = new StringBuilder();
+        for (int id = 1; id < Species.idRange(); id++) {
+            buffer.append(Species.get(id).getName());
+            buffer.append(": ");
+            buffer.append(getSize(id));
+            buffer.append(' ');
+        }
+        buffer.append("(reused ").append(getReused()).append(')');
+        return buffer.toString();
+    }
+
+    /**
+     * Make room for the given number of species.
+     *
+     * @param species The number of species ids.
+     */
+    private void grow(int species) {
+        int old = sizes.length;
+        Animal[][] newPooled = Arrays.copyOf(pooled, species);
+        AtomicInteger[] newSizes = Arrays.copyOf(sizes, species);
+        for (int id = old; id < species; id++) {
+            newPooled[id] = new Animal[16];
+            newSizes[id] = new AtomicInteger();
+        }
+        pooled = newPooled;
+        sizes = newSizes;
+    }
+}
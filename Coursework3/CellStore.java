@@ -0,0 +1,71 @@
+import java.util.function.IntConsumer;
+
+/**
+ * Holds the species layer and the agent layer of a field: for each cell,
+ * the species id of its occupant (0 when empty) and the index of the
+ * occupant in the field's occupant table. Cells are addressed by their
+ * row-major index, however the store lays them out.
+ *
+ * Different threads may write different cells at the same time, as long
+ * as no two threads touch the same cell (see TiledStepEngine).
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public interface CellStore {
+    /**
+     * Return the species id of the occupant of a cell.
+     *
+     * @param cell The row-major index of the cell.
+     * @return The species id, or Species.EMPTY.
+     */
+    int speciesAt(int cell);
+
+    /**
+     * Return the occupant table index of the occupant of a cell. Only
+     * meaningful if the cell is occupied.
+     *
+     * @param cell The row-major index of the cell.
+     * @return The occupant table index.
+     */
+    int agentAt(int cell);
+
+    /**
+     * Put an occupant in a cell.
+     *
+     * @param cell      The row-major index of the cell.
+     * @param speciesId The species id of the occupant; not Species.EMPTY.
+     * @param agent     The occupant table index of the occupant.
+     */
+    void set(int cell, int speciesId, int agent);
+
+    /**
+     * Mark a cell as empty.
+     *
+     * @param cell The row-major index of the cell.
+     */
+    void empty(int cell);
+
+    /**
+     * Mark every cell as empty.
+     */
+    void clear();
+
+    /**
+     * Give back the memory of any part of the store that has emptied.
+     * Must not be called while other threads are writing to the store.
+     */
+    void releaseEmpty();
+
+    /**
+     * Pass the row-major index of every occupied cell to the consumer.
+     *
+     * @param occupied Receives each occupied cell.
+     */
+    void forEachOccupied(IntConsumer occupied);
+
+    /**
+     * @return The number of cells the store currently holds memory for.
+     */
+    long getAllocatedCells();
+}
@@ -0,0 +1,410 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a running simulation to a binary file and resumes it from one.
+ * A resumed simulation carries on exactly as the original would have.
+ *
+ * A checkpoint holds the step, the field's clock, the number of threads,
+ * whether the update is synchronous, the run's seed, the state of its
+ * random generator, the parameters of each species it was run with and
+ * every live animal: its species, cell, gender, age, food level, the step
+ * it last acted and when it acts next. Animals are stored in the order the ActivityScheduler
+ * holds them, which fixes the order they will act in. The tiles' random
+ * streams need not be saved, as they are made afresh at every step from
+ * the seed and the clock. Species are stored by name, so a checkpoint
+ * stays readable if the species table is reordered.
+ *
+ * The file is written in one pass through a buffer, ends with a CRC32 of
+ * everything before it, and only replaces the previous checkpoint once it
+ * is complete, so a run that is stopped while saving keeps its last good
+ * checkpoint. Reading checks the CRC32 over the whole file before any of
+ * it is interpreted, and every value that locates something, such as a
+ * species id or a cell, is range-checked as well, so a damaged file is
+ * rejected with an IOException rather than half loaded.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class Checkpoint {
+    // Identifies a checkpoint file: "FCSP".
+    private static final int MAGIC = 0x46435350;
+    // The version of the format.
+    private static final int VERSION = 4;
+    // The size of the buffer between the file and the simulation.
+    private static final int BUFFER_SIZE = 1 << 16;
+    // The size of the header.
+    private static final int HEADER_BYTES = 8 * Integer.BYTES + 2 * Long.BYTES;
+    // The size of the parameters of one species in the file.
+    private static final int SPECIES_BYTES = 5 * Integer.BYTES + 2 * Double.BYTES;
+    // The size of one animal in the file.
+    private static final int ANIMAL_BYTES = 22;
+    // Flags of an animal in the file: its gender, and whether it is awake.
+    private static final int GENDER = 1;
+    private static final int AWAKE = 2;
+
+    /**
+     * Save the state of a simulation between steps.
+     *
+     * @param simulator The simulation.
+     * @param file      The checkpoint file, replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Simulator simulator, Path file) throws IOException {
+        Field field = simulator.getField();
+        ActivityScheduler scheduler = simulator.getScheduler();
+        long[] count = new long[1];
+        scheduler.forEachScheduled((animal, wake, isAwake) -> count[0]++);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            SimulationContext context = simulator.getContext();
+            out.ensure(HEADER_BYTES);
+            out.buffer.putInt(MAGIC).putInt(VERSION)
+                    .putInt(field.getDepth()).putInt(field.getWidth())
+                    .putInt(simulator.getStep()).putInt(field.getClock())
+                    .putInt(simulator.getThreads())
+                    .putInt(simulator.isSynchronous() ? 1 : 0)
+                    .putLong(context.getSeed())
+                    .putLong(context.getRandom().getState());
+
+            List<Species> table = context.getSpecies();
+            out.ensure(Integer.BYTES);
+            out.buffer.putInt(table.size());
+            for (Species species : table) {
+                byte[] name = species.getName().getBytes(StandardCharsets.UTF_8);
+                out.ensure(1 + Short.BYTES + name.length + SPECIES_BYTES);
+                out.buffer.put((byte) species.getId()).putShort((short) name.length).put(name)
+                        .putInt(species.getBreedingAge())
+                        .putInt(species.getMaxAge())
+                        .putDouble(species.getBreedingProbability())
+                        .putInt(species.getMaxLitterSize())
+                        .putInt(species.getFoodValue())
+                        .putDouble(species.getCreationProbability())
+                        .putInt(species.getSensingRange());
+            }
+
+            out.ensure(Long.BYTES);
+            out.buffer.putLong(count[0]);
+            try {
+                scheduler.forEachScheduled((animal, wake, isAwake) -> {
+                    out.ensure(ANIMAL_BYTES);
+                    out.buffer.put((byte) animal.getSpeciesId())
+                            .put((byte) ((animal.getGender() ? GENDER : 0) | (isAwake ? AWAKE : 0)))
+                            .putInt(animal.getCell())
+                            .putInt(animal.getAge())
+                            .putInt(animal.getFoodLevel())
+                            .putInt(animal.getLastActed())
+                            .putInt(wake);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.finish();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Create a simulation from a checkpoint, with the same number of
+     * threads and the same kind of update it was saved with.
+     *
+     * @param file     The checkpoint file.
+     * @param showView Whether to display the simulation in a window.
+     * @return The resumed simulation.
+     * @throws IOException If the file cannot be read or is not a valid checkpoint.
+     */
+    public static Simulator read(Path file, boolean showView) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = new Input(channel, file);
+            in.verifyChecksum();
+            in.require(HEADER_BYTES);
+            if (in.buffer.getInt() != MAGIC || in.buffer.getInt() != VERSION) {
+                throw new IOException("Not a checkpoint: " + file);
+            }
+            int depth = in.buffer.getInt();
+            int width = in.buffer.getInt();
+            int step = in.buffer.getInt();
+            int clock = in.buffer.getInt();
+            int threads = in.buffer.getInt();
+            boolean synchronous = in.buffer.getInt() != 0;
+            long seed = in.buffer.getLong();
+            long randomState = in.buffer.getLong();
+            if (depth <= 0 || width <= 0 || (long) depth * width > Integer.MAX_VALUE) {
+                throw new IOException("Bad field size in " + file);
+            }
+            if (step < 0 || clock < 0) {
+                throw new IOException("Bad step in " + file);
+            }
+
+            Map<String, Species> byName = new HashMap<>();
+            for (Species species : Species.all()) {
+                byName.put(species.getName(), species);
+            }
+            Species[] speciesOf = new Species[Species.MAX_ID + 1];
+            List<Species> variants = new ArrayList<>();
+            in.require(Integer.BYTES);
+            int speciesCount = in.buffer.getInt();
+            for (int i = 0; i < speciesCount; i++) {
+                in.require(1 + Short.BYTES);
+                int id = in.buffer.get();
+                if (id <= 0 || id > Species.MAX_ID) {
+                    throw new IOException("Bad species id " + id + " in " + file);
+                }
+                int nameLength = in.buffer.getShort();
+                if (nameLength < 0) {
+                    throw new IOException("Bad species name in " + file);
+                }
+                byte[] name = new byte[nameLength];
+                in.require(name.length);
+                in.buffer.get(name);
+                in.require(SPECIES_BYTES);
+                int breedingAge = in.buffer.getInt();
+                int maxAge = in.buffer.getInt();
+                double breedingProbability = in.buffer.getDouble();
+                int maxLitterSize = in.buffer.getInt();
+                int foodValue = in.buffer.getInt();
+                double creationProbability = in.buffer.getDouble();
+                int sensingRange = in.buffer.getInt();
+                Species species = byName.get(new String(name, StandardCharsets.UTF_8));
+                if (species != null) {
+                    species = species.withParameters(breedingAge, maxAge, breedingProbability,
+                            maxLitterSize, foodValue, creationProbability, sensingRange);
+                    variants.add(species);
+                    speciesOf[id] = species;
+                }
+            }
+
+            Simulator simulator = Simulator.forRestore(
+                    new SimulationContext(depth, width, seed, variants), showView);
+            Field field = simulator.getField();
+            simulator.beginRestore(step, clock);
+            in.require(Long.BYTES);
+            long count = in.buffer.getLong();
+            for (long i = 0; i < count; i++) {
+                in.require(ANIMAL_BYTES);
+                int id = in.buffer.get();
+                int flags = in.buffer.get();
+                int cell = in.buffer.getInt();
+                int age = in.buffer.getInt();
+                int foodLevel = in.buffer.getInt();
+                int lastActed = in.buffer.getInt();
+                int wake = in.buffer.getInt();
+                if (id <= 0 || id > Species.MAX_ID || speciesOf[id] == null) {
+                    throw new IOException("Unknown species " + id + " in " + file);
+                }
+                if (cell < 0 || cell >= depth * width || !field.isEmpty(cell)) {
+                    throw new IOException("Bad cell " + cell + " in " + file);
+                }
+                Animal animal = new Animal(speciesOf[id], field, cell, (flags & GENDER) != 0,
+                        age, foodLevel, lastActed);
+                simulator.restoreAnimal(animal, wake, (flags & AWAKE) != 0);
+            }
+            in.verifyEnd();
+
+            simulator.getContext().getRandom().setState(randomState);
+            simulator.setSynchronous(synchronous);
+            simulator.setThreads(threads);
+            simulator.endRestore();
+            return simulator;
+        }
+    }
+
+    /**
+     * Return an observer that saves a simulation after every given number
+     * of steps, replacing the previous checkpoint.
+     *
+     * @param simulator The simulation.
+     * @param interval  The number of steps between checkpoints.
+     * @param file      The checkpoint file.
+     * @return The observer, to be added to the simulation.
+     */
+    public static SimulatorObserver every(Simulator simulator, int interval, Path file) {
+        return (step, field, stats) -> {
+            if (step > 0 && step % interval == 0) {
+                try {
+                    write(simulator, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not save checkpoint " + file, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Buffers what is written to a checkpoint file and keeps its checksum.
+     */
+    private static class Output {
+        // The file.
+        private final FileChannel channel;
+        // The bytes not yet written.
+        private final ByteBuffer buffer;
+        // The checksum of everything written so far.
+        private final CRC32 crc;
+
+        /**
+         * @param channel The file.
+         */
+        Output(FileChannel channel) {
+            this.channel = channel;
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            crc = new CRC32();
+        }
+
+        /**
+         * Make room in the buffer for the given number of bytes.
+         *
+         * @param bytes The number of bytes about to be put.
+         */
+        void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Write the checksum and everything still buffered.
+         *
+         * @throws IOException If the file cannot be written.
+         */
+        void finish() throws IOException {
+            try {
+                flush();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * Write the buffered bytes to the file.
+         */
+        private void flush() {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Buffers what is read from a checkpoint file and checks its checksum.
+     */
+    private static class Input {
+        // The file.
+        private final FileChannel channel;
+        // The name of the file, for error messages.
+        private final Path file;
+        // The bytes read but not yet used.
+        private final ByteBuffer buffer;
+        // The number of bytes before the checksum at the end of the file.
+        private long payload;
+
+        /**
+         * @param channel The file.
+         * @param file    The name of the file.
+         */
+        Input(FileChannel channel, Path file) {
+            this.channel = channel;
+            this.file = file;
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+        }
+
+        /**
+         * Check that the checksum at the end of the file matches everything
+         * before it, and go back to the start. This reads the whole file,
+         * so that nothing in it is interpreted until it is known to be
+         * what was written.
+         *
+         * @throws IOException If the file cannot be read or is corrupt.
+         */
+        void verifyChecksum() throws IOException {
+            payload = channel.size() - Long.BYTES;
+            if (payload < 0) {
+                throw new IOException("Checkpoint is truncated: " + file);
+            }
+            CRC32 crc = new CRC32();
+            channel.position(0);
+            buffer.clear();
+            long left = payload;
+            while (left > 0) {
+                buffer.limit((int) Math.min(buffer.capacity(), left));
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Checkpoint is truncated: " + file);
+                }
+                buffer.flip();
+                left -= buffer.remaining();
+                crc.update(buffer);
+                buffer.clear();
+            }
+            buffer.limit(Long.BYTES);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Checkpoint is truncated: " + file);
+                }
+            }
+            buffer.flip();
+            if (buffer.getLong() != crc.getValue()) {
+                throw new IOException("Checkpoint is corrupt: " + file);
+            }
+            channel.position(0);
+            buffer.clear().flip();
+        }
+
+        /**
+         * Make sure the given number of bytes can be got from the buffer.
+         *
+         * @param bytes The number of bytes about to be got.
+         * @throws IOException If the file ends first.
+         */
+        void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Checkpoint is truncated: " + file);
+                }
+            }
+            buffer.flip();
+        }
+
+        /**
+         * Check that everything before the checksum has been read.
+         *
+         * @throws IOException If it has not.
+         */
+        void verifyEnd() throws IOException {
+            if (channel.position() - buffer.remaining() != payload) {
+                throw new IOException("Checkpoint is corrupt: " + file);
+            }
+        }
+    }
+}
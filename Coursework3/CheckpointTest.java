@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Checks that a simulation resumed from a Checkpoint carries on exactly as
+ * the original, and that damaged checkpoints are rejected.
+ *
+ * A run is checkpointed halfway, resumed and finished, and must then save
+ * the same bytes as a run made straight through, with the classic, tiled
+ * and synchronous updates. A checkpoint with one byte changed must fail
+ * its checksum, and one with a bad species id or cell, but a checksum
+ * made to match, must fail the range checks; either way reading it must
+ * throw an IOException and nothing else.
+ *
+ * Run main; it prints what it checked and exits with status 1 if anything
+ * failed.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class CheckpointTest {
+    // The size of the field and the number of steps before the checkpoint.
+    private static final int DEPTH = 80;
+    private static final int WIDTH = 120;
+    private static final int STEPS = 100;
+    // Where the species table starts in a checkpoint file.
+    private static final int SPECIES_OFFSET = 8 * Integer.BYTES + 2 * Long.BYTES;
+    // The size of the fixed part of a species' entry, after its name.
+    private static final int SPECIES_BYTES = 5 * Integer.BYTES + 2 * Double.BYTES;
+
+    // Whether every check so far has passed.
+    private static boolean ok = true;
+
+    /**
+     * Run the checks.
+     *
+     * @param args Not used.
+     * @throws IOException If a temporary file cannot be used.
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint-test");
+        try {
+            checkResume(dir, 0, false);
+            checkResume(dir, 3, false);
+            checkResume(dir, 3, true);
+            checkDamaged(dir);
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+        System.out.println(ok ? "ok" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compare a run resumed from a checkpoint with one made straight
+     * through.
+     *
+     * @param dir         A directory for the checkpoints.
+     * @param threads     The number of threads.
+     * @param synchronous Whether the update is synchronous.
+     * @throws IOException If a checkpoint cannot be written or read.
+     */
+    private static void checkResume(Path dir, int threads, boolean synchronous) throws IOException {
+        Path straight = dir.resolve("straight");
+        Path half = dir.resolve("half");
+        Path resumed = dir.resolve("resumed");
+
+        Simulator simulator = start(threads, synchronous);
+        simulator.simulate(2 * STEPS);
+        Checkpoint.write(simulator, straight);
+        simulator.setThreads(0);
+
+        simulator = start(threads, synchronous);
+        simulator.simulate(STEPS);
+        Checkpoint.write(simulator, half);
+        simulator.setThreads(0);
+
+        simulator = Checkpoint.read(half, false);
+        simulator.simulate(STEPS);
+        Checkpoint.write(simulator, resumed);
+        simulator.setThreads(0);
+
+        check(Arrays.equals(Files.readAllBytes(straight), Files.readAllBytes(resumed)),
+                "resume with " + threads + " threads" + (synchronous ? ", synchronous" : ""));
+    }
+
+    /**
+     * Check that damaged copies of a checkpoint are rejected.
+     *
+     * @param dir A directory for the checkpoints.
+     * @throws IOException If a checkpoint cannot be written.
+     */
+    private static void checkDamaged(Path dir) throws IOException {
+        Path good = dir.resolve("good");
+        Simulator simulator = start(0, false);
+        simulator.simulate(STEPS);
+        Checkpoint.write(simulator, good);
+        byte[] bytes = Files.readAllBytes(good);
+
+        // Any changed byte fails the checksum.
+        boolean rejected = true;
+        for (int i = 0; i < bytes.length; i += 997) {
+            byte[] damaged = bytes.clone();
+            damaged[i] ^= 0x5A;
+            rejected &= isRejected(dir, damaged);
+        }
+        check(rejected, "changed bytes rejected");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int depth = buffer.getInt(2 * Integer.BYTES);
+        int width = buffer.getInt(3 * Integer.BYTES);
+        int position = SPECIES_OFFSET;
+        int speciesCount = buffer.getInt(position);
+        position += Integer.BYTES;
+        int firstSpecies = position;
+        for (int i = 0; i < speciesCount; i++) {
+            position += 1 + Short.BYTES + buffer.getShort(position + 1) + SPECIES_BYTES;
+        }
+        int firstAnimal = position + Long.BYTES;
+
+        check(isRejected(dir, resealed(bytes, file -> file.putShort(firstSpecies + 1, (short) -1))),
+                "negative name length rejected");
+        check(isRejected(dir, resealed(bytes, file -> file.put(firstAnimal, (byte) 100))),
+                "species id out of range rejected");
+        check(isRejected(dir, resealed(bytes, file -> file.putInt(firstAnimal + 2, depth * width))),
+                "cell out of range rejected");
+        check(isRejected(dir, resealed(bytes, file -> file.putInt(firstAnimal + 2, -1))),
+                "negative cell rejected");
+    }
+
+    /**
+     * Return a copy of a checkpoint with a change made to it and its
+     * checksum made to match.
+     *
+     * @param bytes  The checkpoint.
+     * @param change The change.
+     * @return The changed checkpoint.
+     */
+    private static byte[] resealed(byte[] bytes, Consumer<ByteBuffer> change) {
+        byte[] damaged = bytes.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(damaged);
+        change.accept(buffer);
+        CRC32 crc = new CRC32();
+        crc.update(damaged, 0, damaged.length - Long.BYTES);
+        buffer.putLong(damaged.length - Long.BYTES, crc.getValue());
+        return damaged;
+    }
+
+    /**
+     * Return whether reading a checkpoint throws an IOException. Any other
+     * exception is a failure.
+     *
+     * @param dir   A directory for the checkpoint.
+     * @param bytes The checkpoint.
+     * @return true if the checkpoint was rejected with an IOException.
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    private static boolean isRejected(Path dir, byte[] bytes) throws IOException {
+        Path file = dir.resolve("damaged");
+        Files.write(file, bytes);
+        try {
+            Checkpoint.read(file, false).setThreads(0);
+            return false;
+        } catch (IOException e) {
+            return true;
+        } catch (RuntimeException e) {
+            System.out.println("  " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Start a run from the default seed.
+     *
+     * @param threads     The number of threads.
+     * @param synchronous Whether the update is synchronous.
+     * @return The simulation.
+     */
+    private static Simulator start(int threads, boolean synchronous) {
+        Simulator simulator = new Simulator(DEPTH, WIDTH, false);
+        simulator.setSynchronous(synchronous);
+        simulator.setThreads(threads);
+        return simulator;
+    }
+
+    /**
+     * Report one check.
+     *
+     * @param passed Whether it passed.
+     * @param what   What was checked.
+     */
+    private static void check(boolean passed, String what) {
+        System.out.println((passed ? "passed: " : "FAILED: ") + what);
+        ok &= passed;
+    }
+}
@@ -0,0 +1,238 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * A cell store for very large, mostly empty fields. The field is divided
+ * into square chunks of CHUNK_SIZE by CHUNK_SIZE cells, and a chunk's
+ * layers are only allocated once something is put in it. A directory with
+ * one entry per chunk finds the chunk of any cell in constant time; an
+ * unallocated chunk reads as empty.
+ *
+ * Each chunk counts its occupants, and releaseEmpty gives back the chunks
+ * whose count has fallen to zero. Chunks are only released between steps,
+ * as a tile being updated on one thread may share a chunk with a tile
+ * being updated on another. A missing chunk is allocated under the store's
+ * lock, so two threads writing to it at once get the same chunk.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class ChunkedCellStore implements CellStore {
+    // The log2 of the width and depth of a chunk, in cells.
+    private static final int CHUNK_SHIFT = 6;
+    // The width and depth of a chunk, in cells.
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    // The number of cells in a chunk.
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    // The width of the field.
+    private final int width;
+    // The number of chunks across the field.
+    private final int chunkCols;
+    // The chunk at each position, row-major by chunk; null if unallocated.
+    private final Chunk[] directory;
+    // The directory index of every allocated chunk, in no particular order.
+    private int[] allocated;
+    private int allocatedCount;
+
+    /**
+     * Create a store for a field of the given size, with no chunks allocated.
+     *
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public ChunkedCellStore(int depth, int width) {
+        this.width = width;
+        chunkCols = (width + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+        int chunkRows = (depth + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+        directory = new Chunk[chunkRows * chunkCols];
+        allocated = new int[16];
+    }
+
+    /**
+     * @param cell The row-major index of the cell.
+     * @return The species id of its occupant, or Species.EMPTY.
+     */
+    @Override
+    public int speciesAt(int cell) {
+        int row = cell / width;
+        int col = cell - row * width;
+        Chunk chunk = directory[chunkIndex(row, col)];
+        return chunk == null ? Species.EMPTY : chunk.species[offset(row, col)];
+    }
+
+    /**
+     * @param cell The row-major index of the cell.
+     * @return The occupant table index of its occupant.
+     */
+    @Override
+    public int agentAt(int cell) {
+        int row = cell / width;
+        int col = cell - row * width;
+        Chunk chunk = directory[chunkIndex(row, col)];
+        return chunk == null ? 0 : chunk.agents[offset(row, col)];
+    }
+
+    /**
+     * Put an occupant in a cell, allocating its chunk if need be.
+     *
+     * @param cell      The row-major index of the cell.
+     * @param speciesId The species id of the occupant.
+     * @param agent     The occupant table index of the occupant.
+     */
+    @Override
+    public void set(int cell, int speciesId, int agent) {
+        int row = cell / width;
+        int col = cell - row * width;
+        int index = chunkIndex(row, col);
+        Chunk chunk = directory[index];
+        if (chunk == null) {
+            chunk = allocate(index);
+        }
+        int offset = offset(row, col);
+        if (chunk.species[offset] == Species.EMPTY) {
+            chunk.occupied.incrementAndGet();
+        }
+        chunk.agents[offset] = agent;
+        chunk.species[offset] = (byte) speciesId;
+    }
+
+    /**
+     * Mark a cell as empty. Its chunk is kept until releaseEmpty.
+     *
+     * @param cell The row-major index of the cell.
+     */
+    @Override
+    public void empty(int cell) {
+        int row = cell / width;
+        int col = cell - row * width;
+        Chunk chunk = directory[chunkIndex(row, col)];
+        int offset = offset(row, col);
+        if (chunk != null && chunk.species[offset] != Species.EMPTY) {
+            chunk.species[offset] = Species.EMPTY;
+            chunk.occupied.decrementAndGet();
+        }
+    }
+
+    /**
+     * Mark every cell as empty and release every chunk.
+     */
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < allocatedCount; i++) {
+            directory[allocated[i]] = null;
+        }
+        allocatedCount = 0;
+    }
+
+    /**
+     * Release the chunks that no longer hold anything.
+     */
+    @Override
+    public synchronized void releaseEmpty() {
+        int kept = 0;
+        for (int i = 0; i < allocatedCount; i++) {
+            int index = allocated[i];
+            if (directory[index].occupied.get() == 0) {
+                directory[index] = null;
+            } else {
+                allocated[kept++] = index;
+            }
+        }
+        allocatedCount = kept;
+    }
+
+    /**
+     * Pass every occupied cell to the consumer, visiting only allocated
+     * chunks: chunk by chunk in row-major order of the chunks, and in
+     * row-major order within each chunk.
+     *
+     * @param occupied Receives each occupied cell.
+     */
+    @Override
+    public void forEachOccupied(IntConsumer occupied) {
+        int[] indices;
+        synchronized (this) {
+            indices = Arrays.copyOf(allocated, allocatedCount);
+        }
+        Arrays.sort(indices);
+        for (int index : indices) {
+            Chunk chunk = directory[index];
+            if (chunk == null) {
+                continue;
+            }
+            int top = index / chunkCols << CHUNK_SHIFT;
+            int left = index % chunkCols << CHUNK_SHIFT;
+            for (int offset = 0; offset < CHUNK_CELLS; offset++) {
+                if (chunk.species[offset] != Species.EMPTY) {
+                    int row = top + (offset >>> CHUNK_SHIFT);
+                    int col = left + (offset & (CHUNK_SIZE - 1));
+                    occupied.accept(row * width + col);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of cells in the allocated chunks.
+     */
+    @Override
+    public synchronized long getAllocatedCells() {
+        return (long) allocatedCount * CHUNK_CELLS;
+    }
+
+    /**
+     * Return the chunk at the given directory index, allocating it if no
+     * other thread has yet.
+     *
+     * @param index The directory index.
+     * @return The chunk.
+     */
+    private synchronized Chunk allocate(int index) {
+        Chunk chunk = directory[index];
+        if (chunk == null) {
+            chunk = new Chunk();
+            directory[index] = chunk;
+            if (allocatedCount == allocated.length) {
+                allocated = Arrays.copyOf(allocated, allocatedCount * 2);
+            }
+            allocated[allocatedCount++] = index;
+        }
+        return chunk;
+    }
+
+    /**
+     * Return the directory index of the chunk holding a position.
+     *
+     * @param row The row.
+     * @param col The column.
+     * @return The directory index.
+     */
+    private int chunkIndex(int row, int col) {
+        return (row >>> CHUNK_SHIFT) * chunkCols + (col >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * Return the index of a position within its chunk.
+     *
+     * @param row The row.
+     * @param col The column.
+     * @return The row-major index within the chunk.
+     */
+    private static int offset(int row, int col) {
+        return (row & (CHUNK_SIZE - 1)) << CHUNK_SHIFT | (col & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * The layers of one chunk of cells.
+     */
+    private static class Chunk {
+        // The species id at each position in the chunk; 0 when empty.
+        private final byte[] species = new byte[CHUNK_CELLS];
+        // The occupant table index at each position in the chunk.
+        private final int[] agents = new int[CHUNK_CELLS];
+        // The number of occupied positions.
+        private final AtomicInteger occupied = new AtomicInteger();
+    }
+}
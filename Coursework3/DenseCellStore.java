@@ -0,0 +1,101 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A cell store holding every cell of the field in two flat row-major
+ * arrays, allocated up front. The fastest store, for fields that are
+ * mostly occupied or small enough to fit in memory whole.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class DenseCellStore implements CellStore {
+    // The species id at each position, row-major; 0 when empty.
+    private final byte[] species;
+    // The occupant table index of the occupant at each position, row-major.
+    private final int[] agents;
+
+    /**
+     * Create a store of the given number of cells, all empty.
+     *
+     * @param cells The number of cells.
+     */
+    public DenseCellStore(int cells) {
+        species = new byte[cells];
+        agents = new int[cells];
+    }
+
+    /**
+     * @param cell The row-major index of the cell.
+     * @return The species id of its occupant, or Species.EMPTY.
+     */
+    @Override
+    public int speciesAt(int cell) {
+        return species[cell];
+    }
+
+    /**
+     * @param cell The row-major index of the cell.
+     * @return The occupant table index of its occupant.
+     */
+    @Override
+    public int agentAt(int cell) {
+        return agents[cell];
+    }
+
+    /**
+     * @param cell      The row-major index of the cell.
+     * @param speciesId The species id of the occupant.
+     * @param agent     The occupant table index of the occupant.
+     */
+    @Override
+    public void set(int cell, int speciesId, int agent) {
+        agents[cell] = agent;
+        species[cell] = (byte) speciesId;
+    }
+
+    /**
+     * @param cell The row-major index of the cell.
+     */
+    @Override
+    public void empty(int cell) {
+        species[cell] = Species.EMPTY;
+    }
+
+    /**
+     * Mark every cell as empty.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(species, (byte) Species.EMPTY);
+    }
+
+    /**
+     * Does nothing: the arrays are kept for the life of the field.
+     */
+    @Override
+    public void releaseEmpty() {
+    }
+
+    /**
+     * Pass every occupied cell to the consumer, in row-major order.
+     *
+     * @param occupied Receives each occupied cell.
+     */
+    @Override
+    public void forEachOccupied(IntConsumer occupied) {
+        for (int cell = 0; cell < species.length; cell++) {
+            if (species[cell] != Species.EMPTY) {
+                occupied.accept(cell);
+            }
+        }
+    }
+
+    /**
+     * @return The number of cells in the field.
+     */
+    @Override
+    public long getAllocatedCells() {
+        return species.length;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Checks that a run gives the same result however many threads execute
+ * it, with both the tiled and the synchronous update (see
+ * Simulator.setSynchronous). Runs with the same seed are made with each
+ * thread count in turn and the species layer of the field is hashed after
+ * every step; every run of one kind of update must end with the same
+ * hash, and so must have held the same species in every cell at every
+ * step.
+ *
+ * Run main; it prints the hash of each run and exits with status 1 if any
+ * differ.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class DeterminismTest {
+    // The size of the field and the length of each run.
+    private static final int DEPTH = 120;
+    private static final int WIDTH = 160;
+    private static final int STEPS = 200;
+    // The thread counts compared.
+    private static final int[] THREADS = {1, 2, 3, 4};
+
+    /**
+     * Run the check.
+     *
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+        boolean ok = compare(false);
+        ok &= compare(true);
+        System.out.println(ok ? "ok" : "FAILED: the thread count changes the run");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Make a run with each thread count and compare their hashes.
+     *
+     * @param synchronous Whether the update is synchronous.
+     * @return true if every run had the same hash.
+     */
+    private static boolean compare(boolean synchronous) {
+        long expected = 0;
+        boolean same = true;
+        for (int i = 0; i < THREADS.length; i++) {
+            long hash = run(THREADS[i], synchronous);
+            System.out.printf("%s, %d threads: %016x%n",
+                    synchronous ? "synchronous" : "tiled", THREADS[i], hash);
+            if (i == 0) {
+                expected = hash;
+            } else if (hash != expected) {
+                same = false;
+            }
+        }
+        return same;
+    }
+
+    /**
+     * Make one run from the default seed.
+     *
+     * @param threads     The number of threads.
+     * @param synchronous Whether the update is synchronous.
+     * @return The hash of the species layer over every step of the run.
+     */
+    private static long run(int threads, boolean synchronous) {
+        Simulator simulator = new Simulator(DEPTH, WIDTH, false);
+        simulator.setSynchronous(synchronous);
+        simulator.setThreads(threads);
+        Field field = simulator.getField();
+        long hash = 0;
+        try {
+            for (int step = 0; step < STEPS; step++) {
+                simulator.simulateOneStep();
+                for (int cell = 0; cell < DEPTH * WIDTH; cell++) {
+                    hash = hash * 31 + field.getSpeciesAt(cell);
+                }
+            }
+        } finally {
+            simulator.setThreads(0);
+        }
+        return hash;
+    }
+}
@@ -1,47 +1,209 @@
-import java.util.Collections;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal.
- * The field stores three time periods that fluctuate at every simulation run.
+ * The field keeps a clock that advances once per step, and the time of day
+ * cycles through morning, afternoon and night with it.
+ *
+ * Positions are identified by their row-major cell index. Each has an entry
+ * in a species layer holding the species id of its occupant (0 when empty)
+ * and in an agent layer holding the index of the occupant in the field's
+ * occupant table. Scans and species tests only need to read the species
+ * layer; the occupant itself is looked up through the agent layer. The
+ * layers are kept by a CellStore: flat arrays for fields of ordinary size,
+ * or chunks allocated only where something lives for very large ones, so
+ * that a mostly empty world costs memory in proportion to what lives in it.
+ *
+ * A dense field also keeps an occupancy bitboard, one bit per cell, so that
+ * the free neighbours of a cell, the commonest question asked of the field,
+ * come from three row reads and a few shifts instead of eight cell reads.
+ *
+ * Different threads may update cells that are more than two cells apart at
+ * the same time (see TiledStepEngine). The occupant table and the population
+ * counts are shared by all cells, so they are only changed under the field's
+ * lock; moving an occupant does not touch them at all.
+ *
+ * Animals that sense further than their neighbours find what is around
+ * them through a SpatialIndex. The field indexes the species of such an
+ * animal and its prey, and keeps their positions in the index up to date
+ * as they are placed, moved and cleared. Species nothing looks for from
+ * afar are not indexed. Starting to index a species means scanning the
+ * field for it, which must not happen while other threads are updating
+ * it, so a SimulationContext indexes every species its animals look for
+ * as soon as it creates the field (see indexSensing). A field used on its
+ * own starts indexing them when such an animal is first placed.
+ *
+ * The field can also record which cells have changed, for a view that
+ * only redraws those or a history that only records those (see
+ * drainChanges). Each cell has its own flags, so threads updating
+ * different cells never share one, and flags per chunk of cells let a
+ * sparse set of changes be found without scanning them all. Each consumer
+ * of changes has its own bit in the flags, and drains them at its own
+ * pace.
  *
  * @author David J. Barnes and Michael Kölling, edited by Dylan Barker (k20001430) and Isaac Addo (k20034809)
  * @version 2020.03.03
  */
 public class Field {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
-    final String[] time = {"morning", "afternoon", "night"};
+    // The cell index returned when there is no suitable location.
+    public static final int NO_CELL = -1;
+    // The most consumers changes can be recorded for at once.
+    public static final int MAX_CHANGE_CONSUMERS = Byte.SIZE;
+    // A species mask matching a neighbour whatever its species.
+    private static final long ANY_SPECIES = -1L;
+    // The largest number of cells kept in flat arrays by default.
+    public static final int DENSE_LIMIT = 1 << 24;
+    // The log2 of the number of cells in a chunk of change flags.
+    private static final int CHUNK_SHIFT = 6;
+    // Row and column offsets of the eight neighbours of a location.
+    private static final int[] NEIGHBOUR_ROWS = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] NEIGHBOUR_COLS = {-1, 0, 1, -1, 1, -1, 0, 1};
+    // The bit of a cell itself in a 3x3 neighbourhood mask.
+    private static final int SELF_BIT = 1 << 4;
+    // Atomic access to the words of the occupancy bitboard.
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
     // The depth and width of the field.
     private final int depth;
     private final int width;
-    // Storage for the animals.
-    private final Object[][] field;
-    // Time of day
-    int period = 0;
+    // The species and agent layers.
+    private final CellStore cells;
+    // Dead animals kept to be brought back as newborns.
+    private final AnimalPool animalPool;
+    // One bit per cell, set while it is occupied, row by row with each row
+    // starting a new word; null if the field is sparse.
+    private final long[] occupancy;
+    // The number of bitboard words in each row.
+    private final int rowWords;
+    // Finds occupants near a cell; null until something needs it.
+    private volatile SpatialIndex index;
+    // The species recorded in the index, one bit per species id.
+    private volatile long indexedMask;
+    // The occupants of the field, indexed by the agent layer.
+    // Volatile so that a table grown by one thread is seen whole by others.
+    private volatile Object[] occupants;
+    // Occupant table slots that have been released and can be reused.
+    private int[] freeSlots;
+    private int freeCount;
+    // The number of occupant table slots handed out so far.
+    private int slotCount;
+    // The number of occupants of each species, indexed by species id.
+    // Kept up to date by place and clear.
+    private int[] population;
+    // The number of occupants of each species added to, removed from and
+    // eaten in the field since the counts were last taken, by species id.
+    private int[] added;
+    private int[] removed;
+    private int[] eaten;
+    // The same counts since the field was made, by species id.
+    private long[] addedTotals;
+    private long[] removedTotals;
+    private long[] eatenTotals;
+    // Cell index offsets of the eight neighbours of an interior location.
+    private final int[] neighbourOffsets;
+    // The Location object of each cell, created the first time it is
+    // needed; null if the field is sparse, when they are not kept.
+    private final Location[] locations;
+    // Whether each cell has changed since each consumer last drained
+    // changes, a bit per consumer, or null while nothing records them.
+    private byte[] changedCells;
+    // Whether each chunk of cells holds a cell changed for each consumer.
+    private byte[] changedChunks;
+    // The bits of the consumers changes are recorded for.
+    private byte changeConsumers;
+    // The number of times the clock has advanced; the time of day follows from it.
+    private int clock;
 
     /**
-     * Represent a field of the given dimensions.
+     * Represent a field of the given dimensions. A field of more than
+     * DENSE_LIMIT cells is sparse.
      *
      * @param depth The depth of the field.
      * @param width The width of the field.
      */
     public Field(int depth, int width) {
+        this(depth, width, (long) depth * width > DENSE_LIMIT);
+    }
+
+    /**
+     * Represent a field of the given dimensions, choosing how it is kept.
+     * A sparse field only holds memory for the chunks of cells that have
+     * something in them (see ChunkedCellStore); it behaves exactly as a
+     * dense one, a little more slowly.
+     *
+     * @param depth  The depth of the field.
+     * @param width  The width of the field.
+     * @param sparse Whether to allocate cells only where they are occupied.
+     * @throws IllegalArgumentException If the field has more cells than an int can index.
+     */
+    public Field(int depth, int width, boolean sparse) {
+        if ((long) depth * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A field can hold at most " + Integer.MAX_VALUE
+                    + " cells: " + depth + " x " + width);
+        }
         this.depth = depth;
         this.width = width;
-        field = new Object[depth][width];
+        cells = sparse ? new ChunkedCellStore(depth, width) : new DenseCellStore(depth * width);
+        animalPool = new AnimalPool();
+        rowWords = (width + Long.SIZE - 1) >>> 6;
+        occupancy = sparse ? null : new long[depth * rowWords];
+        occupants = new Object[16];
+        freeSlots = new int[16];
+        population = new int[Species.idRange()];
+        added = new int[population.length];
+        removed = new int[population.length];
+        eaten = new int[population.length];
+        addedTotals = new long[population.length];
+        removedTotals = new long[population.length];
+        eatenTotals = new long[population.length];
+        neighbourOffsets = new int[NEIGHBOUR_ROWS.length];
+        for (int i = 0; i < neighbourOffsets.length; i++) {
+            neighbourOffsets[i] = NEIGHBOUR_ROWS[i] * width + NEIGHBOUR_COLS[i];
+        }
+        locations = sparse ? null : new Location[depth * width];
     }
 
     /**
-     * Rotates the time array's index
+     * The periods of the day, in the order the clock passes through them.
      */
-    public void timeSkip() {
-        if (++period > 2) {
-            period = 0;
+    public enum TimeOfDay {
+        MORNING("morning"), AFTERNOON("afternoon"), NIGHT("night");
+
+        // Every time of day, indexed by ordinal.
+        private static final TimeOfDay[] VALUES = values();
+        // The number of times of day in a full day.
+        public static final int COUNT = VALUES.length;
+
+        // The name shown for the time of day.
+        private final String label;
+
+        /**
+         * @param label The name shown for the time of day.
+         */
+        TimeOfDay(String label) {
+            this.label = label;
         }
+
+        /**
+         * @return The name shown for the time of day, e.g. "night".
+         */
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Advance the clock by one step, moving on to the next time of day.
+     */
+    public void timeSkip() {
+        clock++;
     }
 
     /**
@@ -49,18 +211,68 @@ public class Field {
      * @return the time period
      */
     public String getTime() {
-        return time[period];
+        return getTimeOfDay().toString();
+    }
+
+    /**
+     * Return the current time of day.
+     *
+     * @return The time of day.
+     */
+    public TimeOfDay getTimeOfDay() {
+        return timeOfDayAt(clock);
+    }
+
+    /**
+     * Return the time of day at a given reading of the clock.
+     *
+     * @param clock The clock reading.
+     * @return The time of day.
+     */
+    public static TimeOfDay timeOfDayAt(int clock) {
+        return TimeOfDay.VALUES[clock % TimeOfDay.COUNT];
+    }
+
+    /**
+     * Return the number of times the clock has advanced.
+     *
+     * @return The clock reading.
+     */
+    public int getClock() {
+        return clock;
+    }
+
+    /**
+     * Set the clock, when resuming from a checkpoint.
+     *
+     * @param clock The clock reading.
+     */
+    void setClock(int clock) {
+        this.clock = clock;
     }
 
     /**
      * Empty the field.
      */
-    public void clear() {
-        for (int row = 0; row < depth; row++) {
-            for (int col = 0; col < width; col++) {
-                field[row][col] = null;
-            }
+    public synchronized void clear() {
+        if (changedCells != null) {
+            Arrays.fill(changedCells, changeConsumers);
+            Arrays.fill(changedChunks, changeConsumers);
         }
+        cells.clear();
+        if (occupancy != null) {
+            Arrays.fill(occupancy, 0);
+        }
+        if (index != null) {
+            index.clear();
+        }
+        Arrays.fill(occupants, 0, slotCount, null);
+        slotCount = 0;
+        freeCount = 0;
+        Arrays.fill(population, 0);
+        Arrays.fill(added, 0);
+        Arrays.fill(removed, 0);
+        Arrays.fill(eaten, 0);
     }
 
     /**
@@ -69,7 +281,7 @@ public class Field {
      * @param location The location to clear.
      */
     public void clear(Location location) {
-        field[location.getRow()][location.getCol()] = null;
+        clear(cellOf(location));
     }
 
     /**
@@ -82,7 +294,7 @@ public class Field {
      * @param col    Column coordinate of the location.
      */
     public void place(Object animal, int row, int col) {
-        place(animal, new Location(row, col));
+        place(animal, cellOf(row, col));
     }
 
     /**
@@ -94,21 +306,361 @@ public class Field {
      * @param location Where to place the animal.
      */
     public void place(Object animal, Location location) {
-        field[location.getRow()][location.getCol()] = animal;
+        place(animal, cellOf(location));
+    }
+
+    /**
+     * Place an animal in the given cell.
+     * If there is already an animal in the cell it will
+     * be lost.
+     *
+     * @param animal The animal to be placed.
+     * @param cell   The row-major index of the cell.
+     */
+    public void place(Object animal, int cell) {
+        // Whatever was here before is lost.
+        clear(cell);
+        int id = Species.idOf(animal);
+        if (animal instanceof Animal) {
+            Species kind = ((Animal) animal).getSpecies();
+            if (kind.getSensingRange() > 1) {
+                index(Species.maskOf(id) | kind.getPreyMask());
+            }
+        }
+        cells.set(cell, id, addOccupant(animal, id));
+        occupy(cell);
+        if ((indexedMask >>> id & 1) != 0) {
+            index.add(cell, SpatialIndex.layerOf(animal));
+        }
+        markChanged(cell);
+    }
+
+    /**
+     * Move whatever is in one cell to another, keeping its slot in the
+     * occupant table. If there is already an animal in the destination
+     * it will be lost.
+     *
+     * @param from The row-major index of the occupied cell.
+     * @param to   The row-major index of the destination.
+     */
+    public void move(int from, int to) {
+        if (from != to) {
+            clear(to);
+            int agent = cells.agentAt(from);
+            int id = cells.speciesAt(from);
+            cells.set(to, id, agent);
+            cells.empty(from);
+            occupy(to);
+            vacate(from);
+            if ((indexedMask >>> id & 1) != 0) {
+                int layer = SpatialIndex.layerOf(occupants[agent]);
+                index.remove(from, layer);
+                index.add(to, layer);
+            }
+            markChanged(from);
+            markChanged(to);
+        }
+    }
+
+    /**
+     * Clear the given cell, releasing its occupant's slot.
+     *
+     * @param cell The row-major index of the cell.
+     */
+    public void clear(int cell) {
+        int id = cells.speciesAt(cell);
+        if (id != Species.EMPTY) {
+            int agent = cells.agentAt(cell);
+            cells.empty(cell);
+            vacate(cell);
+            if ((indexedMask >>> id & 1) != 0) {
+                index.remove(cell, SpatialIndex.layerOf(occupants[agent]));
+            }
+            removeOccupant(agent, id);
+            markChanged(cell);
+        }
+    }
+
+    /**
+     * Pass every occupied cell to the consumer. A sparse field only visits
+     * the chunks that have something in them, so this costs time in
+     * proportion to what lives in the field rather than to its size. Must
+     * not be called while a step is in progress.
+     *
+     * @param occupied Receives the row-major index of each occupied cell.
+     */
+    public void forEachOccupied(IntConsumer occupied) {
+        cells.forEachOccupied(occupied);
+    }
+
+    /**
+     * Give back the memory of the chunks of a sparse field, and of the
+     * pages of its index, that have emptied. Must not be called while a
+     * step is in progress.
+     */
+    public void releaseEmptyChunks() {
+        cells.releaseEmpty();
+        SpatialIndex index = this.index;
+        if (index != null) {
+            index.releaseEmpty();
+        }
+    }
+
+    /**
+     * Return the pool of dead animals that newborns in the field are made
+     * from (see Animal.create).
+     *
+     * @return The pool.
+     */
+    public AnimalPool getAnimalPool() {
+        return animalPool;
+    }
+
+    /**
+     * Return whether the field only holds memory where something lives.
+     *
+     * @return true if the field is sparse.
+     */
+    public boolean isSparse() {
+        return cells instanceof ChunkedCellStore;
+    }
+
+    /**
+     * Return the number of cells the field currently holds memory for:
+     * all of them for a dense field, those of the allocated chunks for a
+     * sparse one.
+     *
+     * @return The number of cells allocated.
+     */
+    public long getAllocatedCells() {
+        return cells.getAllocatedCells();
+    }
+
+    /**
+     * Start recording which cells change for a new consumer of changes.
+     * Only changes made from now on are recorded for it. Recording needs
+     * a byte for every cell, even in a sparse field, shared by up to
+     * MAX_CHANGE_CONSUMERS consumers. Must not be called while a step is
+     * in progress.
+     *
+     * @return The consumer, to be passed to drainChanges.
+     * @throws IllegalStateException If there are already MAX_CHANGE_CONSUMERS.
+     */
+    public synchronized int startTrackingChanges() {
+        int consumer = Integer.numberOfTrailingZeros(~changeConsumers);
+        if (consumer >= MAX_CHANGE_CONSUMERS) {
+            throw new IllegalStateException("Changes are already recorded for "
+                    + MAX_CHANGE_CONSUMERS + " consumers");
+        }
+        if (changedCells == null) {
+            changedCells = new byte[depth * width];
+            changedChunks = new byte[(changedCells.length >>> CHUNK_SHIFT) + 1];
+        }
+        changeConsumers |= (byte) (1 << consumer);
+        return consumer;
+    }
+
+    /**
+     * Stop recording changes for a consumer. Once there are none left,
+     * the flags are given back. Must not be called while a step is in
+     * progress.
+     *
+     * @param consumer The consumer, as returned by startTrackingChanges.
+     */
+    public synchronized void stopTrackingChanges(int consumer) {
+        changeConsumers &= (byte) ~(1 << consumer);
+        if (changeConsumers == 0) {
+            changedCells = null;
+            changedChunks = null;
+        } else {
+            // Forget what was left undrained, in case the bit is reused.
+            drainChanges(consumer, cell -> { });
+        }
+    }
+
+    /**
+     * Return whether changes to cells are being recorded.
+     *
+     * @return true if they are, for any consumer.
+     */
+    public boolean isTrackingChanges() {
+        return changedCells != null;
+    }
+
+    /**
+     * Pass every cell that has changed since a consumer last drained
+     * changes, in row-major order, to the given consumer, and forget them
+     * for that consumer. Must not be called while a step is in progress.
+     *
+     * @param consumer The consumer, as returned by startTrackingChanges.
+     * @param changed  Receives the row-major index of each changed cell.
+     */
+    public void drainChanges(int consumer, IntConsumer changed) {
+        byte[] changedCells = this.changedCells;
+        byte[] changedChunks = this.changedChunks;
+        if (changedCells == null) {
+            return;
+        }
+        int bit = 1 << consumer;
+        for (int chunk = 0; chunk < changedChunks.length; chunk++) {
+            if ((changedChunks[chunk] & bit) != 0) {
+                changedChunks[chunk] &= (byte) ~bit;
+                int end = Math.min((chunk + 1) << CHUNK_SHIFT, changedCells.length);
+                for (int cell = chunk << CHUNK_SHIFT; cell < end; cell++) {
+                    if ((changedCells[cell] & bit) != 0) {
+                        changedCells[cell] &= (byte) ~bit;
+                        changed.accept(cell);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Record that a cell has changed, for every consumer of changes.
+     *
+     * @param cell The row-major index of the cell.
+     */
+    private void markChanged(int cell) {
+        byte[] changed = changedCells;
+        if (changed != null) {
+            // Every consumer's bit is set, so this needs no read.
+            changed[cell] = changeConsumers;
+            changedChunks[cell >>> CHUNK_SHIFT] = changeConsumers;
+        }
+    }
+
+    /**
+     * Put an occupant into a free slot of the occupant table, growing the
+     * table if needed, and count it.
+     *
+     * @param occupant The occupant.
+     * @param id       Its species id.
+     * @return The slot the occupant was given.
+     */
+    private synchronized int addOccupant(Object occupant, int id) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == occupants.length) {
+                occupants = Arrays.copyOf(occupants, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        occupants[slot] = occupant;
+        if (id >= population.length) {
+            population = Arrays.copyOf(population, Species.idRange());
+            added = Arrays.copyOf(added, population.length);
+            removed = Arrays.copyOf(removed, population.length);
+            eaten = Arrays.copyOf(eaten, population.length);
+            addedTotals = Arrays.copyOf(addedTotals, population.length);
+            removedTotals = Arrays.copyOf(removedTotals, population.length);
+            eatenTotals = Arrays.copyOf(eatenTotals, population.length);
+        }
+        population[id]++;
+        added[id]++;
+        addedTotals[id]++;
+        return slot;
+    }
+
+    /**
+     * Release a slot of the occupant table and uncount its occupant.
+     *
+     * @param slot The slot to release.
+     * @param id   The species id of its occupant.
+     */
+    private synchronized void removeOccupant(int slot, int id) {
+        occupants[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        population[id]--;
+        removed[id]++;
+        removedTotals[id]++;
+    }
+
+    /**
+     * Count an occupant of the given species as eaten. The occupant is
+     * removed from the field separately.
+     *
+     * @param speciesId The species id of the occupant.
+     */
+    public synchronized void countEaten(int speciesId) {
+        eaten[speciesId]++;
+        eatenTotals[speciesId]++;
+    }
+
+    /**
+     * Take the number of occupants of each species added, removed and
+     * eaten since the counts were last taken, and start counting again.
+     * Removals include the occupants that were eaten. The arrays are
+     * indexed by species id and should all be the same length; ids
+     * beyond their end are dropped.
+     *
+     * @param addedTo   Receives the number added.
+     * @param removedTo Receives the number removed.
+     * @param eatenTo   Receives the number eaten.
+     */
+    public synchronized void takeEventCounts(int[] addedTo, int[] removedTo, int[] eatenTo) {
+        for (int id = 0; id < addedTo.length; id++) {
+            boolean counted = id < population.length;
+            addedTo[id] = counted ? added[id] : 0;
+            removedTo[id] = counted ? removed[id] : 0;
+            eatenTo[id] = counted ? eaten[id] : 0;
+        }
+        Arrays.fill(added, 0);
+        Arrays.fill(removed, 0);
+        Arrays.fill(eaten, 0);
+    }
+
+    /**
+     * Copy the number of occupants of each species added, removed and
+     * eaten since the field was made. Unlike takeEventCounts this does not
+     * start counting again, so any number of observers can read them, and
+     * clearing the field does not reset them. The arrays are indexed by
+     * species id; ids beyond their end are dropped.
+     *
+     * @param addedTo   Receives the number added.
+     * @param removedTo Receives the number removed.
+     * @param eatenTo   Receives the number eaten.
+     */
+    public synchronized void getEventTotals(long[] addedTo, long[] removedTo, long[] eatenTo) {
+        for (int id = 0; id < addedTo.length; id++) {
+            boolean counted = id < population.length;
+            addedTo[id] = counted ? addedTotals[id] : 0;
+            removedTo[id] = counted ? removedTotals[id] : 0;
+            eatenTo[id] = counted ? eatenTotals[id] : 0;
+        }
+    }
+
+    /**
+     * Return the row-major cell index of the given position. Cells
+     * identify locations without creating Location objects.
+     *
+     * @param row The row.
+     * @param col The column.
+     * @return The index of the cell in the flat layers.
+     */
+    public int cellOf(int row, int col) {
+        return row * width + col;
     }
 
     /**
      * Generate a random location that is adjacent to the
-     * given location, or is the same location.
+     * given location, whether it is occupied or not. The
+     * location itself is never returned.
      * The returned location will be within the valid bounds
      * of the field.
      *
      * @param location The location from which to generate an adjacency.
-     * @return A valid location within the grid area.
+     * @return A valid location within the grid area, or null if the
+     * location has no neighbours (in a field of one cell).
      */
     public Location randomAdjacentLocation(Location location) {
-        List<Location> adjacent = adjacentLocations(location);
-        return adjacent.get(0);
+        int cell = chooseAdjacent(cellOf(location), ANY_SPECIES);
+        return cell == NO_CELL ? null : locationAt(cell);
     }
 
     /**
@@ -122,7 +674,7 @@ public class Field {
     public List<Location> adjacentLocations(Location location) {
         assert location != null : "Null location passed to adjacentLocations";
         // The list of locations to be returned.
-        List<Location> locations = new LinkedList<>();
+        List<Location> locations = new ArrayList<>(8);
         int row = location.getRow();
         int col = location.getCol();
         for (int roffset = -1; roffset <= 1; roffset++) {
@@ -132,15 +684,19 @@ public class Field {
                     int nextCol = col + coffset;
                     // Exclude invalid locations and the original location.
                     if (nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                        locations.add(new Location(nextRow, nextCol));
+                        locations.add(locationAt(nextRow, nextCol));
                     }
                 }
             }
         }
 
-        // Shuffle the list. Several other methods rely on the list
-        // being in a random order.
-        Collections.shuffle(locations, rand);
+        // Shuffle the list, as Collections.shuffle does but with the current
+        // generator. Several other methods rely on the list being in a
+        // random order.
+        RandomGenerator rand = Randomizer.current();
+        for (int i = locations.size(); i > 1; i--) {
+            locations.set(i - 1, locations.set(rand.nextInt(i), locations.get(i - 1)));
+        }
         return locations;
     }
 
@@ -154,15 +710,356 @@ public class Field {
      * @return A valid location within the grid area.
      */
     public Location freeAdjacentLocation(Location location) {
-        // The available free ones.
-        List<Location> free = getFreeAdjacentLocations(location);
-        if (free.size() > 0) {
-            return free.get(0);
+        int free = randomFreeAdjacentCell(cellOf(location));
+        if (free != NO_CELL) {
+            return locationAt(free);
         } else {
             return null;
         }
     }
 
+    /**
+     * Choose a free cell adjacent to the given one at random.
+     * Nothing is allocated.
+     *
+     * @param cell The cell from which to generate an adjacency.
+     * @return A free adjacent cell, or NO_CELL if there is none.
+     */
+    public int randomFreeAdjacentCell(int cell) {
+        if (occupancy == null) {
+            return chooseAdjacent(cell, Species.maskOf(Species.EMPTY));
+        }
+        int free = freeAround(cell);
+        if (free == 0) {
+            return NO_CELL;
+        }
+        // Drop the chosen number of lower free neighbours; the lowest left
+        // is the one picked. The bits run in the order of the neighbour
+        // offsets, so this picks what chooseAdjacent would.
+        for (int chosen = Randomizer.current().nextInt(Integer.bitCount(free)); chosen > 0; chosen--) {
+            free &= free - 1;
+        }
+        int bit = Integer.numberOfTrailingZeros(free);
+        return cell + (bit / 3 - 1) * width + bit % 3 - 1;
+    }
+
+    /**
+     * Find every free cell adjacent to the given one, in the order of the
+     * neighbour offsets. Nothing is drawn at random, so a caller can pick
+     * several of them without picking one twice.
+     *
+     * @param cell The cell whose neighbours are wanted.
+     * @param into Receives the free cells; at least eight long.
+     * @return The number of free cells found.
+     */
+    public int freeAdjacentCells(int cell, int[] into) {
+        int count = 0;
+        if (occupancy == null) {
+            int row = cell / width;
+            int col = cell - row * width;
+            for (int i = 0; i < neighbourOffsets.length; i++) {
+                int next = neighbour(row, col, i);
+                if (next != NO_CELL && cells.speciesAt(next) == Species.EMPTY) {
+                    into[count++] = next;
+                }
+            }
+            return count;
+        }
+        for (int free = freeAround(cell); free != 0; free &= free - 1) {
+            int bit = Integer.numberOfTrailingZeros(free);
+            into[count++] = cell + (bit / 3 - 1) * width + bit % 3 - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Return which cells of the 3x3 block around a cell are free, from
+     * the bitboard: bit 3 * r + c for row r and column c of the block.
+     * The cell itself never counts as free.
+     *
+     * @param cell The middle cell.
+     * @return The free cells, in bits 0 to 8.
+     */
+    private int freeAround(int cell) {
+        int row = cell / width;
+        int col = cell - row * width;
+        return ~(occupiedAround(row - 1, col) | occupiedAround(row, col) << 3
+                | occupiedAround(row + 1, col) << 6 | SELF_BIT) & 0x1FF;
+    }
+
+    /**
+     * Return which of three cells of a row, from the column before a
+     * given one to the column after it, are occupied or outside the field.
+     *
+     * @param row The row, which may lie outside the field.
+     * @param col The middle column.
+     * @return Bits 0 to 2 for the three columns, set if unavailable.
+     */
+    private int occupiedAround(int row, int col) {
+        if (row < 0 || row >= depth) {
+            return 0b111;
+        }
+        int base = row * rowWords;
+        long bits;
+        if (col == 0) {
+            bits = word(base) << 1 | 1;
+        } else {
+            int start = col - 1;
+            int shift = start & (Long.SIZE - 1);
+            bits = word(base + (start >>> 6)) >>> shift;
+            if (shift > Long.SIZE - 3 && (start >>> 6) + 1 < rowWords) {
+                bits |= word(base + (start >>> 6) + 1) << (Long.SIZE - shift);
+            }
+        }
+        if (col == width - 1) {
+            bits |= 0b100;
+        }
+        return (int) bits & 0b111;
+    }
+
+    /**
+     * @param index The index of a word of the occupancy bitboard.
+     * @return The word.
+     */
+    private long word(int index) {
+        return (long) WORDS.getOpaque(occupancy, index);
+    }
+
+    /**
+     * Mark a cell as occupied in the bitboard, if the field keeps one.
+     * Threads updating different tiles may share a word, so the update
+     * is atomic.
+     *
+     * @param cell The row-major index of the cell.
+     */
+    private void occupy(int cell) {
+        if (occupancy != null) {
+            int row = cell / width;
+            int col = cell - row * width;
+            WORDS.getAndBitwiseOr(occupancy, row * rowWords + (col >>> 6), 1L << col);
+        }
+    }
+
+    /**
+     * Mark a cell as free in the bitboard, if the field keeps one.
+     *
+     * @param cell The row-major index of the cell.
+     */
+    private void vacate(int cell) {
+        if (occupancy != null) {
+            int row = cell / width;
+            int col = cell - row * width;
+            WORDS.getAndBitwiseAnd(occupancy, row * rowWords + (col >>> 6), ~(1L << col));
+        }
+    }
+
+    /**
+     * Choose a cell adjacent to the given one, occupied by the given
+     * species, at random. Nothing is allocated.
+     *
+     * @param cell      The cell from which to generate an adjacency.
+     * @param speciesId The species to look for.
+     * @return An adjacent cell holding that species, or NO_CELL if there is none.
+     */
+    public int randomAdjacentCell(int cell, int speciesId) {
+        return chooseAdjacent(cell, Species.maskOf(speciesId));
+    }
+
+    /**
+     * Choose a cell adjacent to the given one, occupied by any of the
+     * species in a mask, at random. Nothing is allocated.
+     *
+     * @param cell        The cell from which to generate an adjacency.
+     * @param speciesMask The species to look for, one bit per species id.
+     * @return An adjacent cell holding one of those species, or NO_CELL if there is none.
+     */
+    public int randomAdjacentCellIn(int cell, long speciesMask) {
+        return chooseAdjacent(cell, speciesMask);
+    }
+
+    /**
+     * Choose uniformly among the neighbours of a cell that hold the given
+     * species. The matches are counted and the chosen one is found by its
+     * index among them, which picks each match with the same probability
+     * as shuffling the neighbours and taking the first match.
+     *
+     * @param cell      The cell from which to generate an adjacency.
+     * @param speciesMask The species to match, one bit per species id, or ANY_SPECIES.
+     * @return A matching adjacent cell, or NO_CELL if there is none.
+     */
+    private int chooseAdjacent(int cell, long speciesMask) {
+        int row = cell / width;
+        int col = cell - row * width;
+        boolean interior = row > 0 && row < depth - 1 && col > 0 && col < width - 1;
+        int matches = 0;
+        for (int i = 0; i < neighbourOffsets.length; i++) {
+            int next = interior ? cell + neighbourOffsets[i] : neighbour(row, col, i);
+            if (next != NO_CELL && (speciesMask >>> cells.speciesAt(next) & 1) != 0) {
+                matches++;
+            }
+        }
+        if (matches == 0) {
+            return NO_CELL;
+        }
+        int chosen = Randomizer.current().nextInt(matches);
+        for (int i = 0; i < neighbourOffsets.length; i++) {
+            int next = interior ? cell + neighbourOffsets[i] : neighbour(row, col, i);
+            if (next != NO_CELL && (speciesMask >>> cells.speciesAt(next) & 1) != 0 && chosen-- == 0) {
+                return next;
+            }
+        }
+        return NO_CELL;
+    }
+
+    /**
+     * Return the i'th neighbour of a location, checking the field's bounds.
+     *
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @param i   Which of the eight neighbours.
+     * @return The neighbour's cell, or NO_CELL if it lies outside the field.
+     */
+    private int neighbour(int row, int col, int i) {
+        int nextRow = row + NEIGHBOUR_ROWS[i];
+        int nextCol = col + NEIGHBOUR_COLS[i];
+        if (nextRow < 0 || nextRow >= depth || nextCol < 0 || nextCol >= width) {
+            return NO_CELL;
+        }
+        return nextRow * width + nextCol;
+    }
+
+    /**
+     * Find the nearest occupant of the given species and gender within a
+     * radius of a cell, other than one in the cell itself, choosing at
+     * random among those equally near. Distance is the number of steps
+     * between neighbours, so radius 1 covers the neighbours of the cell.
+     *
+     * @param cell        The cell to search around.
+     * @param radius      The greatest distance to search.
+     * @param speciesMask The species to look for, one bit per species id.
+     * @param gender      The gender to look for: 0, 1 or SpatialIndex.ANY_GENDER.
+     * @return The cell of the nearest match, or NO_CELL if there is none.
+     * @throws IllegalStateException If the species are not indexed.
+     */
+    public int nearestWithin(int cell, int radius, long speciesMask, int gender) {
+        requireIndexed(speciesMask);
+        return index.nearest(cell, radius, speciesMask, gender, Randomizer.current());
+    }
+
+    /**
+     * Return whether an occupant of the given species and gender, other
+     * than one in the cell itself, lies within a radius of a cell.
+     *
+     * @param cell        The cell to search around.
+     * @param radius      The greatest distance to search.
+     * @param speciesMask The species to look for, one bit per species id.
+     * @param gender      The gender to look for: 0, 1 or SpatialIndex.ANY_GENDER.
+     * @return true if there is one.
+     * @throws IllegalStateException If the species are not indexed.
+     */
+    public boolean anyWithin(int cell, int radius, long speciesMask, int gender) {
+        requireIndexed(speciesMask);
+        return index.anyWithin(cell, radius, speciesMask, gender);
+    }
+
+    /**
+     * Choose a free cell adjacent to one cell that is as near as possible
+     * to another, at random among the nearest. Nothing is allocated.
+     *
+     * @param cell   The cell to move from.
+     * @param target The cell to head for.
+     * @return The chosen free cell, or NO_CELL if no free cell is adjacent.
+     */
+    public int freeAdjacentCellToward(int cell, int target) {
+        int row = cell / width;
+        int col = cell - row * width;
+        int targetRow = target / width;
+        int targetCol = target - targetRow * width;
+        int best = Integer.MAX_VALUE;
+        int chosen = NO_CELL;
+        int ties = 0;
+        RandomGenerator rand = Randomizer.current();
+        for (int i = 0; i < neighbourOffsets.length; i++) {
+            int next = neighbour(row, col, i);
+            if (next != NO_CELL && cells.speciesAt(next) == Species.EMPTY) {
+                int distance = Math.max(Math.abs(row + NEIGHBOUR_ROWS[i] - targetRow),
+                        Math.abs(col + NEIGHBOUR_COLS[i] - targetCol));
+                if (distance < best) {
+                    best = distance;
+                    chosen = next;
+                    ties = 1;
+                } else if (distance == best && rand.nextInt(++ties) == 0) {
+                    chosen = next;
+                }
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Start indexing the species that any of the given species look for
+     * from afar: each one that senses further than its neighbours, and its
+     * prey. Must not be called while other threads are updating the field.
+     *
+     * @param table The species.
+     */
+    public void indexSensing(List<Species> table) {
+        long speciesMask = 0;
+        for (Species species : table) {
+            if (species.getSensingRange() > 1) {
+                speciesMask |= Species.maskOf(species.getId()) | species.getPreyMask();
+            }
+        }
+        index(speciesMask);
+    }
+
+    /**
+     * Check that the given species are in the spatial index, so that it
+     * can be searched for them.
+     *
+     * @param speciesMask The species, one bit per species id.
+     * @throws IllegalStateException If any of them is not.
+     */
+    private void requireIndexed(long speciesMask) {
+        if ((indexedMask & speciesMask) != speciesMask) {
+            throw new IllegalStateException("Species not in the spatial index: "
+                    + Long.toBinaryString(speciesMask & ~indexedMask));
+        }
+    }
+
+    /**
+     * Make sure the given species are in the spatial index, creating it
+     * if need be and recording the occupants of any species not yet in it.
+     *
+     * @param speciesMask The species, one bit per species id.
+     */
+    private void index(long speciesMask) {
+        if ((indexedMask & speciesMask) != speciesMask) {
+            addToIndex(speciesMask);
+        }
+    }
+
+    /**
+     * Start indexing the given species.
+     *
+     * @param speciesMask The species, one bit per species id.
+     */
+    private synchronized void addToIndex(long speciesMask) {
+        long added = speciesMask & ~indexedMask;
+        if (added == 0) {
+            return;
+        }
+        if (index == null) {
+            index = new SpatialIndex(depth, width, isSparse());
+        }
+        cells.forEachOccupied(cell -> {
+            if ((added >>> cells.speciesAt(cell) & 1) != 0) {
+                index.add(cell, SpatialIndex.layerOf(occupants[cells.agentAt(cell)]));
+            }
+        });
+        indexedMask |= added;
+    }
+
     /**
      * Get a shuffled list of the free adjacent locations.
      *
@@ -173,7 +1070,7 @@ public class Field {
         List<Location> free = new LinkedList<>();
         List<Location> adjacent = adjacentLocations(location);
         for (Location next : adjacent) {
-            if (getObjectAt(next) == null) {
+            if (isEmpty(next)) {
                 free.add(next);
             }
         }
@@ -198,7 +1095,125 @@ public class Field {
      * @return The animal at the given location, or null if there is none.
      */
     public Object getObjectAt(int row, int col) {
-        return field[row][col];
+        return getObjectAt(cellOf(row, col));
+    }
+
+    /**
+     * Return the animal in the given cell, if any.
+     *
+     * @param cell The row-major index of the cell.
+     * @return The animal in the cell, or null if there is none.
+     */
+    public Object getObjectAt(int cell) {
+        if (cells.speciesAt(cell) == Species.EMPTY) {
+            return null;
+        }
+        return occupants[cells.agentAt(cell)];
+    }
+
+    /**
+     * Return the row-major cell index of the given location.
+     *
+     * @param location The location.
+     * @return Its cell index.
+     */
+    public int cellOf(Location location) {
+        return cellOf(location.getRow(), location.getCol());
+    }
+
+    /**
+     * Return the canonical Location object for the given position.
+     * The same object is returned every time, so this does not allocate
+     * once the position has been seen.
+     *
+     * @param row The row.
+     * @param col The column.
+     * @return The location of the position.
+     */
+    public Location locationAt(int row, int col) {
+        return locationAt(cellOf(row, col));
+    }
+
+    /**
+     * Return the canonical Location object for the given cell. A sparse
+     * field does not keep them, and returns a new, equal Location each time.
+     *
+     * @param cell The row-major index of the cell.
+     * @return The location of the cell.
+     */
+    public Location locationAt(int cell) {
+        if (locations == null) {
+            return new Location(cell / width, cell % width);
+        }
+        Location location = locations[cell];
+        if (location == null) {
+            location = new Location(cell / width, cell % width);
+            locations[cell] = location;
+        }
+        return location;
+    }
+
+    /**
+     * Return the species id of whatever is at the given location.
+     *
+     * @param location Where in the field.
+     * @return The species id, or Species.EMPTY if there is nothing there.
+     */
+    public int getSpeciesAt(Location location) {
+        return getSpeciesAt(location.getRow(), location.getCol());
+    }
+
+    /**
+     * Return the species id of whatever is at the given location.
+     *
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species id, or Species.EMPTY if there is nothing there.
+     */
+    public int getSpeciesAt(int row, int col) {
+        return cells.speciesAt(cellOf(row, col));
+    }
+
+    /**
+     * Return the species id of whatever is in the given cell.
+     *
+     * @param cell The row-major index of the cell.
+     * @return The species id, or Species.EMPTY if there is nothing there.
+     */
+    public int getSpeciesAt(int cell) {
+        return cells.speciesAt(cell);
+    }
+
+    /**
+     * Return how many occupants of the given species are in the field.
+     * The counts are maintained as occupants are placed and cleared,
+     * so this does not scan the field.
+     *
+     * @param speciesId The species id.
+     * @return The number of occupants of that species.
+     */
+    public synchronized int getPopulation(int speciesId) {
+        return speciesId < population.length ? population[speciesId] : 0;
+    }
+
+    /**
+     * Return whether the given location is empty.
+     *
+     * @param location Where in the field.
+     * @return true if there is nothing at the location.
+     */
+    public boolean isEmpty(Location location) {
+        return isEmpty(cellOf(location));
+    }
+
+    /**
+     * Return whether the given cell is empty.
+     *
+     * @param cell The row-major index of the cell.
+     * @return true if there is nothing in the cell.
+     */
+    public boolean isEmpty(int cell) {
+        return cells.speciesAt(cell) == Species.EMPTY;
     }
 
     /**
@@ -0,0 +1,815 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Records what was in every cell of a field at every step, compactly
+ * enough that a long run can be played back, forwards or backwards, and
+ * any step of it shown again without running the simulation a second
+ * time. Add it to a Simulator as an observer; a Playback reads it back.
+ *
+ * The history keeps a copy of the field's species layer and, after each
+ * step, compares the cells the field has recorded as changed against it
+ * (see Field.drainChanges), so that the cost of a step is in proportion
+ * to what changed rather than to the size of the field. The cells that
+ * differ make that step's delta: each one's gap from the previous changed
+ * cell as a varint, followed by the species every changed cell held
+ * before and after the step as one varint pair code, before * range +
+ * after. A delta can therefore be undone as easily as applied. Coding the
+ * pair as one symbol lets the compressor see that a few transitions, such
+ * as a rat's cell being left empty, make up most of a step. It also holds
+ * the number of each species added to and removed from the field at the
+ * step, which the cells alone cannot tell apart from movement. Every
+ * keyframeInterval steps a keyframe holds the whole species layer as runs
+ * of equal species: the species, then the length of the run as a varint.
+ *
+ * Each record is compressed with a Deflater and appended to a log kept in
+ * blocks of LOG_BLOCK bytes. Reaching a step means decoding the nearest
+ * keyframe and the deltas between it and the step, or just the deltas
+ * from wherever the playback already is, whichever is less work. Once the
+ * log would grow past its limit, the oldest stretch from one keyframe to
+ * the next is dropped.
+ *
+ * Animals are not recorded, only their species, so a step can be looked
+ * at but not resumed from; a Checkpoint does that. The history starts
+ * again whenever the simulator is reset, changes field or skips a step.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class FieldHistory implements SimulatorObserver {
+    // The number of steps between keyframes by default.
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+    // The most bytes the log keeps by default.
+    public static final long DEFAULT_LIMIT = 512L << 20;
+    // The size of a block of the log.
+    private static final int LOG_BLOCK = 1 << 20;
+    // The cost of decoding a keyframe, in deltas, when choosing how to seek.
+    private static final int KEYFRAME_COST = 4;
+
+    // The number of steps between keyframes.
+    private final int keyframeInterval;
+    // The most bytes the log keeps.
+    private long limit;
+    // The field being recorded, and its species layer as recorded last.
+    private Field field;
+    private byte[] shadow;
+    // The history's consumer of the field's changes, or -1 while it is
+    // not recording.
+    private int changeConsumer;
+    // The cells changed at the step being recorded, in row-major order.
+    private int[] changed;
+    private int changedCount;
+    private int depth;
+    private int width;
+    // The number of species ids recorded in the last delta.
+    private int speciesRange;
+    // The field's totals of occupants added and removed at the last step.
+    private long[] addedTotals;
+    private long[] removedTotals;
+    // The blocks of the log, the offset of the first one in the log, and
+    // the offset of the end of the log.
+    private final List<byte[]> blocks;
+    private long base;
+    private long end;
+    // The first and last steps recorded.
+    private int firstStep;
+    private int lastStep;
+    // The offset in the log, compressed length and encoded length of the
+    // delta of each step from firstStep; that of firstStep is empty.
+    private long[] deltaOffsets;
+    private int[] deltaLengths;
+    private int[] deltaSizes;
+    // The same for each keyframe from firstStep.
+    private long[] keyOffsets;
+    private int[] keyLengths;
+    private int[] keySizes;
+    // The number of steps and keyframes held.
+    private int steps;
+    private int keyframes;
+    // Reused when encoding.
+    private final Deflater deflater;
+    private final Encoder raw;
+    private final Encoder packed;
+    // Bumped when the history starts again, so playbacks start again too.
+    private int generation;
+
+    /**
+     * Create a history with the default keyframe interval and limit.
+     */
+    public FieldHistory() {
+        this(DEFAULT_KEYFRAME_INTERVAL, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Create a history.
+     *
+     * @param keyframeInterval The number of steps between keyframes.
+     * @param limit            The most bytes the log keeps.
+     */
+    public FieldHistory(int keyframeInterval, long limit) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.limit = limit;
+        blocks = new ArrayList<>();
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        raw = new Encoder();
+        packed = new Encoder();
+        firstStep = -1;
+        lastStep = -1;
+        changeConsumer = -1;
+        changed = new int[1024];
+    }
+
+    /**
+     * Record the state of the field after a step.
+     *
+     * @param step  The step that has just been completed.
+     * @param field The field after the step.
+     * @param stats Statistics on the field.
+     */
+    @Override
+    public void stepCompleted(int step, Field field, FieldStats stats) {
+        if (field != this.field || step != lastStep + 1 || lastStep < 0 || changeConsumer < 0) {
+            start(step, field);
+            return;
+        }
+        encodeDelta();
+        int size = raw.length;
+        byte[] delta = compress();
+        synchronized (this) {
+            appendStep(size, delta);
+        }
+        if ((step - firstStep) % keyframeInterval == 0) {
+            encodeKeyframe();
+            size = raw.length;
+            byte[] keyframe = compress();
+            synchronized (this) {
+                appendKeyframe(size, keyframe);
+                trim();
+            }
+        }
+        synchronized (this) {
+            lastStep = step;
+        }
+    }
+
+    /**
+     * Forget everything and start again from a keyframe of the field.
+     *
+     * @param step  The step the field is at.
+     * @param field The field.
+     */
+    private void start(int step, Field field) {
+        long cells = (long) field.getDepth() * field.getWidth();
+        if (cells > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Field too large to record: " + cells + " cells");
+        }
+        if (field != this.field || shadow.length != cells) {
+            shadow = new byte[(int) cells];
+        }
+        if (field != this.field || changeConsumer < 0) {
+            stopRecording();
+            changeConsumer = field.startTrackingChanges();
+        } else {
+            // The keyframe taken below covers whatever changed before it.
+            field.drainChanges(changeConsumer, cell -> { });
+        }
+        speciesRange = Species.idRange();
+        addedTotals = new long[speciesRange];
+        removedTotals = new long[speciesRange];
+        field.getEventTotals(addedTotals, removedTotals, new long[speciesRange]);
+        for (int cell = 0; cell < shadow.length; cell++) {
+            shadow[cell] = (byte) field.getSpeciesAt(cell);
+        }
+        encodeKeyframe();
+        int size = raw.length;
+        byte[] keyframe = compress();
+        synchronized (this) {
+            this.field = field;
+            depth = field.getDepth();
+            width = field.getWidth();
+            generation++;
+            blocks.clear();
+            base = 0;
+            end = 0;
+            deltaOffsets = new long[64];
+            deltaLengths = new int[64];
+            deltaSizes = new int[64];
+            keyOffsets = new long[4];
+            keyLengths = new int[4];
+            keySizes = new int[4];
+            steps = 0;
+            keyframes = 0;
+            firstStep = step;
+            appendStep(0, new byte[0]);
+            appendKeyframe(size, keyframe);
+            lastStep = step;
+        }
+    }
+
+    /**
+     * Stop following the changes of the field. What has been recorded
+     * can still be played back, and the history starts again from a
+     * keyframe if it is told of another step.
+     */
+    public void stopRecording() {
+        if (changeConsumer >= 0) {
+            field.stopTrackingChanges(changeConsumer);
+            changeConsumer = -1;
+        }
+    }
+
+    /**
+     * Compare the cells of the field that have changed with the copy of
+     * its species layer, bring the copy up to date and encode the
+     * differences as a delta.
+     */
+    private void encodeDelta() {
+        // Species defined since the last step widen the range.
+        if (Species.idRange() > speciesRange) {
+            speciesRange = Species.idRange();
+            addedTotals = Arrays.copyOf(addedTotals, speciesRange);
+            removedTotals = Arrays.copyOf(removedTotals, speciesRange);
+        }
+        long[] added = new long[speciesRange];
+        long[] removed = new long[speciesRange];
+        field.getEventTotals(added, removed, new long[speciesRange]);
+
+        // Gather the changed cells first, as their number leads the delta.
+        // A cell can change and change back within a step; it is left out.
+        changedCount = 0;
+        field.drainChanges(changeConsumer, cell -> {
+            if (field.getSpeciesAt(cell) != shadow[cell]) {
+                if (changedCount == changed.length) {
+                    changed = Arrays.copyOf(changed, changedCount * 2);
+                }
+                changed[changedCount++] = cell;
+            }
+        });
+        Encoder gaps = packed;
+        gaps.length = 0;
+        int previous = -1;
+        for (int i = 0; i < changedCount; i++) {
+            gaps.putVarint(changed[i] - previous - 1);
+            previous = changed[i];
+        }
+
+        raw.length = 0;
+        raw.putVarint(changedCount);
+        raw.putVarint(speciesRange);
+        for (int id = 1; id < speciesRange; id++) {
+            raw.putVarint(added[id] - addedTotals[id]);
+            raw.putVarint(removed[id] - removedTotals[id]);
+        }
+        addedTotals = added;
+        removedTotals = removed;
+        raw.put(gaps.bytes, 0, gaps.length);
+        for (int i = 0; i < changedCount; i++) {
+            int cell = changed[i];
+            byte species = (byte) field.getSpeciesAt(cell);
+            raw.putVarint(shadow[cell] * speciesRange + species);
+            shadow[cell] = species;
+        }
+    }
+
+    /**
+     * Encode the copy of the species layer as a keyframe.
+     */
+    private void encodeKeyframe() {
+        raw.length = 0;
+        int cell = 0;
+        while (cell < shadow.length) {
+            byte species = shadow[cell];
+            int run = cell + 1;
+            while (run < shadow.length && shadow[run] == species) {
+                run++;
+            }
+            raw.ensure(1);
+            raw.bytes[raw.length++] = species;
+            raw.putVarint(run - cell);
+            cell = run;
+        }
+    }
+
+    /**
+     * Compress the encoded record.
+     *
+     * @return The compressed record.
+     */
+    private byte[] compress() {
+        deflater.reset();
+        deflater.setInput(raw.bytes, 0, raw.length);
+        deflater.finish();
+        packed.length = 0;
+        while (!deflater.finished()) {
+            packed.ensure(Math.max(4096, raw.length >>> 2));
+            packed.length += deflater.deflate(packed.bytes, packed.length,
+                    packed.bytes.length - packed.length);
+        }
+        return Arrays.copyOf(packed.bytes, packed.length);
+    }
+
+    /**
+     * Append the delta of the next step to the log.
+     *
+     * @param size       Its encoded length.
+     * @param compressed Its compressed bytes.
+     */
+    private void appendStep(int size, byte[] compressed) {
+        if (steps == deltaOffsets.length) {
+            deltaOffsets = Arrays.copyOf(deltaOffsets, steps * 2);
+            deltaLengths = Arrays.copyOf(deltaLengths, steps * 2);
+            deltaSizes = Arrays.copyOf(deltaSizes, steps * 2);
+        }
+        deltaOffsets[steps] = append(compressed);
+        deltaLengths[steps] = compressed.length;
+        deltaSizes[steps] = size;
+        steps++;
+    }
+
+    /**
+     * Append the next keyframe to the log.
+     *
+     * @param size       Its encoded length.
+     * @param compressed Its compressed bytes.
+     */
+    private void appendKeyframe(int size, byte[] compressed) {
+        if (keyframes == keyOffsets.length) {
+            keyOffsets = Arrays.copyOf(keyOffsets, keyframes * 2);
+            keyLengths = Arrays.copyOf(keyLengths, keyframes * 2);
+            keySizes = Arrays.copyOf(keySizes, keyframes * 2);
+        }
+        keyOffsets[keyframes] = append(compressed);
+        keyLengths[keyframes] = compressed.length;
+        keySizes[keyframes] = size;
+        keyframes++;
+    }
+
+    /**
+     * Append bytes to the log.
+     *
+     * @param bytes The bytes.
+     * @return The offset of the first of them in the log.
+     */
+    private long append(byte[] bytes) {
+        long offset = end;
+        int done = 0;
+        while (done < bytes.length) {
+            int inBlock = (int) ((end - base) % LOG_BLOCK);
+            if (inBlock == 0 && end - base == (long) blocks.size() * LOG_BLOCK) {
+                blocks.add(new byte[LOG_BLOCK]);
+            }
+            int n = Math.min(bytes.length - done, LOG_BLOCK - inBlock);
+            System.arraycopy(bytes, done, blocks.get(blocks.size() - 1), inBlock, n);
+            done += n;
+            end += n;
+        }
+        return offset;
+    }
+
+    /**
+     * Read bytes from the log.
+     *
+     * @param offset The offset of the first of them in the log.
+     * @param into   Receives them.
+     * @param length The number of bytes.
+     */
+    private void read(long offset, byte[] into, int length) {
+        int done = 0;
+        while (done < length) {
+            long at = offset + done - base;
+            int inBlock = (int) (at % LOG_BLOCK);
+            int n = Math.min(length - done, LOG_BLOCK - inBlock);
+            System.arraycopy(blocks.get((int) (at / LOG_BLOCK)), inBlock, into, done, n);
+            done += n;
+        }
+    }
+
+    /**
+     * Drop the oldest stretch from one keyframe to the next, as often as
+     * needed to bring the log within its limit. The newest keyframe is
+     * always kept.
+     */
+    private void trim() {
+        while (end - keyOffsets[0] > limit && keyframes > 1) {
+            long keep = keyOffsets[1];
+            System.arraycopy(deltaOffsets, keyframeInterval, deltaOffsets, 0, steps - keyframeInterval);
+            System.arraycopy(deltaLengths, keyframeInterval, deltaLengths, 0, steps - keyframeInterval);
+            System.arraycopy(deltaSizes, keyframeInterval, deltaSizes, 0, steps - keyframeInterval);
+            System.arraycopy(keyOffsets, 1, keyOffsets, 0, keyframes - 1);
+            System.arraycopy(keyLengths, 1, keyLengths, 0, keyframes - 1);
+            System.arraycopy(keySizes, 1, keySizes, 0, keyframes - 1);
+            steps -= keyframeInterval;
+            keyframes--;
+            firstStep += keyframeInterval;
+            // Everything before the new first keyframe is dropped, even
+            // the delta of its step, which is never read.
+            while (keep - base >= LOG_BLOCK) {
+                blocks.remove(0);
+                base += LOG_BLOCK;
+            }
+        }
+    }
+
+    /**
+     * Set the most bytes the log keeps. The oldest steps are dropped when
+     * the next keyframe is recorded.
+     *
+     * @param limit The limit, in bytes.
+     */
+    public synchronized void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return The most bytes the log keeps.
+     */
+    public synchronized long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return The number of steps between keyframes.
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * @return The first step that can be played back, or -1 if nothing has
+     * been recorded.
+     */
+    public synchronized int getFirstStep() {
+        return firstStep;
+    }
+
+    /**
+     * @return The last step recorded, or -1 if nothing has been recorded.
+     */
+    public synchronized int getLastStep() {
+        return lastStep;
+    }
+
+    /**
+     * @return The number of bytes of log held, in whole blocks.
+     */
+    public synchronized long getLogBytes() {
+        return (long) blocks.size() * LOG_BLOCK;
+    }
+
+    /**
+     * @return The number of bytes of records that can be played back,
+     * from the first keyframe on.
+     */
+    public synchronized long getRecordedBytes() {
+        return keyframes == 0 ? 0 : end - keyOffsets[0];
+    }
+
+    /**
+     * Create a playback of this history, at no step yet.
+     *
+     * @return The playback.
+     */
+    public Playback playback() {
+        return new Playback();
+    }
+
+    /**
+     * A position in the history: the species in every cell at one step,
+     * decoded from the log. A playback belongs to the thread that uses it,
+     * while the history goes on recording.
+     */
+    public class Playback {
+        // The species in each cell at the step reached.
+        private byte[] species;
+        // The number of each species in the field, by species id.
+        private int[] population;
+        // The number of each species added and removed at the step reached.
+        private long[] added;
+        private long[] removed;
+        // The step reached, or -1 for none, and the generation of the
+        // history it was reached in.
+        private int step;
+        private int generation;
+        // Reused when decoding.
+        private final Inflater inflater;
+        private byte[] compressed;
+        private byte[] decoded;
+
+        /**
+         * Create a playback at no step.
+         */
+        private Playback() {
+            species = new byte[0];
+            population = new int[Species.MAX_ID + 1];
+            added = new long[population.length];
+            removed = new long[population.length];
+            step = -1;
+            inflater = new Inflater();
+            compressed = new byte[0];
+            decoded = new byte[0];
+        }
+
+        /**
+         * Move to a step, or the nearest step recorded if it is out of
+         * range. Going one step either way from the step reached only
+         * decodes one delta.
+         *
+         * @param target The step to move to.
+         * @return The step reached, or -1 if nothing has been recorded.
+         */
+        public int seek(int target) {
+            synchronized (FieldHistory.this) {
+                if (lastStep < 0) {
+                    return step = -1;
+                }
+                target = Math.max(firstStep, Math.min(lastStep, target));
+                if (generation != FieldHistory.this.generation || step < firstStep
+                        || step > lastStep) {
+                    step = -1;
+                }
+                int key = (target - firstStep) / keyframeInterval;
+                int behind = target - (firstStep + key * keyframeInterval);
+                int ahead = key + 1 < keyframes ? keyframeInterval - behind : Integer.MAX_VALUE;
+                int cost = Math.min(behind, ahead) + KEYFRAME_COST;
+                if (step < 0 || Math.abs(target - step) > cost) {
+                    if (ahead < behind) {
+                        key++;
+                    }
+                    loadKeyframe(key);
+                }
+                while (step < target) {
+                    applyDelta(step + 1, true);
+                }
+                while (step > target) {
+                    applyDelta(step, false);
+                }
+                return step;
+            }
+        }
+
+        /**
+         * Move to a keyframe.
+         *
+         * @param key The keyframe, counted from the first held.
+         */
+        private void loadKeyframe(int key) {
+            if (species.length != depth * width) {
+                species = new byte[depth * width];
+            }
+            int size = decode(keyOffsets[key], keyLengths[key], keySizes[key]);
+            Arrays.fill(population, 0);
+            int at = 0;
+            int cell = 0;
+            while (at < size) {
+                byte id = decoded[at++];
+                long run = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = decoded[at++];
+                    run |= (long) (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                Arrays.fill(species, cell, cell + (int) run, id);
+                population[id] += (int) run;
+                cell += (int) run;
+            }
+            step = firstStep + key * keyframeInterval;
+            generation = FieldHistory.this.generation;
+            Arrays.fill(added, 0);
+            Arrays.fill(removed, 0);
+        }
+
+        /**
+         * Apply the delta of a step, or undo it.
+         *
+         * @param deltaStep The step whose delta it is.
+         * @param forward   true to apply it, false to undo it.
+         */
+        private void applyDelta(int deltaStep, boolean forward) {
+            int index = deltaStep - firstStep;
+            decode(deltaOffsets[index], deltaLengths[index], deltaSizes[index]);
+            int[] at = {0};
+            int changes = (int) readVarint(at);
+            int range = (int) readVarint(at);
+            // The counts belong to the step the delta leads to, so they are
+            // only known once it is reached.
+            Arrays.fill(added, 0);
+            Arrays.fill(removed, 0);
+            for (int id = 1; id < range; id++) {
+                long in = readVarint(at);
+                long out = readVarint(at);
+                if (forward && id < added.length) {
+                    added[id] = in;
+                    removed[id] = out;
+                }
+            }
+            int[] pairs = {at[0]};
+            for (int i = 0; i < changes; i++) {
+                while (decoded[pairs[0]++] < 0) {
+                    // Skip to the end of the gap.
+                }
+            }
+            int cell = -1;
+            for (int i = 0; i < changes; i++) {
+                cell += (int) readVarint(at) + 1;
+                int pair = (int) readVarint(pairs);
+                int before = pair / range;
+                int after = pair - before * range;
+                int from = forward ? before : after;
+                int to = forward ? after : before;
+                population[from]--;
+                population[to]++;
+                species[cell] = (byte) to;
+            }
+            step = forward ? deltaStep : deltaStep - 1;
+        }
+
+        /**
+         * Read a record from the log and inflate it.
+         *
+         * @param offset The offset of the record in the log.
+         * @param length Its compressed length.
+         * @param size   Its encoded length.
+         * @return The encoded length.
+         */
+        private int decode(long offset, int length, int size) {
+            if (compressed.length < length) {
+                compressed = new byte[length];
+            }
+            if (decoded.length < size) {
+                decoded = new byte[size];
+            }
+            read(offset, compressed, length);
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            try {
+                int done = 0;
+                while (done < size && !inflater.finished()) {
+                    done += inflater.inflate(decoded, done, size - done);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt history record at " + offset, e);
+            }
+            return size;
+        }
+
+        /**
+         * Read a varint from the decoded record.
+         *
+         * @param at The position of the varint, moved past it.
+         * @return Its value.
+         */
+        private long readVarint(int[] at) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = decoded[at[0]++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        /**
+         * @return The step reached, or -1 for none.
+         */
+        public int getStep() {
+            return step;
+        }
+
+        /**
+         * @return The depth of the field played back.
+         */
+        public int getDepth() {
+            return species.length == 0 ? 0 : species.length / getWidth();
+        }
+
+        /**
+         * @return The width of the field played back.
+         */
+        public int getWidth() {
+            synchronized (FieldHistory.this) {
+                return width;
+            }
+        }
+
+        /**
+         * Return the species id of whatever was in a cell at the step
+         * reached.
+         *
+         * @param cell The row-major index of the cell.
+         * @return The species id, or Species.EMPTY if there was nothing there.
+         */
+        public int getSpeciesAt(int cell) {
+            return species[cell];
+        }
+
+        /**
+         * Return how many of a species there were at the step reached.
+         *
+         * @param speciesId The species id.
+         * @return The population.
+         */
+        public int getPopulation(int speciesId) {
+            return population[speciesId];
+        }
+
+        /**
+         * Return how many of a species were added to the field at the
+         * step reached. Only known when the step was reached by playing
+         * forwards.
+         *
+         * @param speciesId The species id.
+         * @return The number added, births and moves between fields alike.
+         */
+        public long getAdded(int speciesId) {
+            return added[speciesId];
+        }
+
+        /**
+         * Return how many of a species were removed from the field at the
+         * step reached. Only known when the step was reached by playing
+         * forwards.
+         *
+         * @param speciesId The species id.
+         * @return The number removed, for whatever reason.
+         */
+        public long getRemoved(int speciesId) {
+            return removed[speciesId];
+        }
+
+        /**
+         * Get details of what was in the field at the step reached, as
+         * FieldStats does for a live field.
+         *
+         * @return A string describing the population.
+         */
+        public String getPopulationDetails() {
+            StringBuilder buffer = new StringBuilder();
+            for (int id = 1; id < Species.idRange(); id++) {
+                if (population[id] > 0) {
+                    buffer.append(Species.get(id).getName());
+                    buffer.append(": ");
+                    buffer.append(population[id]);
+                    buffer.append(' ');
+                }
+            }
+            return buffer.toString();
+        }
+    }
+
+    /**
+     * A growable byte buffer that records are encoded into.
+     */
+    private static class Encoder {
+        private byte[] bytes = new byte[4096];
+        private int length;
+
+        /**
+         * Make room for more bytes.
+         *
+         * @param extra The number of bytes about to be added.
+         */
+        void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        /**
+         * Add bytes.
+         *
+         * @param from   The bytes.
+         * @param offset The first of them.
+         * @param count  The number of them.
+         */
+        void put(byte[] from, int offset, int count) {
+            ensure(count);
+            System.arraycopy(from, offset, bytes, length, count);
+            length += count;
+        }
+
+        /**
+         * Add a value that is not negative, seven bits a byte, lowest
+         * first, with the top bit set on every byte but the last.
+         *
+         * @param value The value.
+         */
+        void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
@@ -1,103 +1,47 @@
-import java.util.HashMap;
-
 /**
- * This class collects and provides some statistical data on the state
- * of a field. It is flexible: it will create and maintain a counter
- * for any class of object that is found within the field.
+ * This class provides some statistical data on the state of a field.
+ * It is flexible: it reports on any species of object that has been
+ * placed within the field.
+ * The field keeps a count of each species up to date as occupants are
+ * placed and cleared, so every query here costs time proportional to
+ * the number of species rather than the size of the field.
  *
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class FieldStats {
-    // Counters for each type of entity (fox, rabbit, etc.) in the simulation.
-    private final HashMap<Class, Counter> counters;
-    // Whether the counters are currently up to date.
-    private boolean countsValid;
 
     /**
      * Construct a FieldStats object.
      */
     public FieldStats() {
-        // Set up a collection for counters for each type of animal that
-        // we might find
-        counters = new HashMap<>();
-        countsValid = true;
     }
 
     /**
-     * Get details of what is in the field.
+     * Get details of what is in the field, in species order.
      *
      * @return A string describing what is in the field.
      */
     public String getPopulationDetails(Field field) {
         StringBuilder buffer = new StringBuilder();
-        if (!countsValid) {
-            generateCounts(field);
-        }
-        for (Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            buffer.append(info.getName());
+        for (int id = 1; id < Species.idRange(); id++) {
+            buffer.append(Species.get(id).getName());
             buffer.append(": ");
-            buffer.append(info.getCount());
+            buffer.append(field.getPopulation(id));
             buffer.append(' ');
         }
         return buffer.toString();
     }
 
     /**
-     * Generate counts of the number of foxes and rabbits.
-     * These are not kept up to date as foxes and rabbits
-     * are placed in the field, but only when a request
-     * is made for the information.
+     * Return the number of occupants of one species in the field.
      *
-     * @param field The field to generate the stats for.
+     * @param field     The field to report on.
+     * @param speciesId The id of the species.
+     * @return The number of occupants of that species.
      */
-    private void generateCounts(Field field) {
-        reset();
-        for (int row = 0; row < field.getDepth(); row++) {
-            for (int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if (animal != null) {
-                    incrementCount(animal.getClass());
-                }
-            }
-        }
-        countsValid = true;
-    }
-
-    /**
-     * Invalidate the current set of statistics; reset all
-     * counts to zero.
-     */
-    public void reset() {
-        countsValid = false;
-        for (Class key : counters.keySet()) {
-            Counter count = counters.get(key);
-            count.reset();
-        }
-    }
-
-    /**
-     * Increment the count for one class of animal.
-     *
-     * @param animalClass The class of animal to increment.
-     */
-    public void incrementCount(Class animalClass) {
-        Counter count = counters.get(animalClass);
-        if (count == null) {
-            // We do not have a counter for this species yet.
-            // Create one.
-            count = new Counter(animalClass.getName());
-            counters.put(animalClass, count);
-        }
-        count.increment();
-    }
-
-    /**
-     * Indicate that an animal count has been completed.
-     */
-    public void countFinished() {
-        countsValid = true;
+    public int getCount(Field field, int speciesId) {
+        return field.getPopulation(speciesId);
     }
 
     /**
@@ -109,16 +53,11 @@ public class FieldStats {
     public boolean isViable(Field field) {
         // How many counts are non-zero.
         int nonZero = 0;
-        if (!countsValid) {
-            generateCounts(field);
-        }
-        for (Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            if (info.getCount() > 0) {
+        for (int id = 1; id < Species.idRange(); id++) {
+            if (field.getPopulation(id) > 0) {
                 nonZero++;
             }
         }
         return nonZero > 1;
     }
 }
-
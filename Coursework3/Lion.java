@@ -1,176 +0,0 @@
-import java.util.List;
-import java.util.Random;
-
-/**
- * A simple model of a lion.
- * Lions age, move, eat zebras, and die.
- *
- * @author (Isaac Addo)
- * @version (26.02.2021)
- */
-public class Lion extends Animal {
-    // Characteristics shared by all foxes (class variables).
-
-    // The age at which a lion can start to breed.
-    private static final int BREEDING_AGE = 18;
-    // The age to which a lion can live.
-    private static final int MAX_AGE = 180;
-    // The likelihood of a lion breeding.
-    private static final double BREEDING_PROBABILITY = 0.05;
-    // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 1;
-    // The food value of a single zebra. In effect, this is the
-    // number of steps a lion can go before it has to eat again.
-    private static final int LION_FOOD_VALUE = 18;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
-    // The lion's gender
-    
-    
-    // Individual characteristics (instance fields).
-    // The lion's age.
-    private int age;
-    // The lion's food level, which is increased by eating rabbits.
-    private int foodLevel;
-    private final boolean gender;
-    /**
-     * Constructor for objects of class Lion
-     */
-    public Lion(boolean randomAge, Field field, Location location) {
-        super(field, location);
-        gender = rand.nextBoolean();
-        if (randomAge) {
-            age = rand.nextInt(MAX_AGE);
-            foodLevel = rand.nextInt(LION_FOOD_VALUE);
-        } else {
-            age = 0;
-            foodLevel = LION_FOOD_VALUE;
-        }
-    }
-
-    /**
-     * This is what the lion does most of the time: it hunts for
-     * zebras. In the process, it might breed, die of hunger,
-     * or die of old age.
-     *
-     * @param newLions A list to return newly born lions.
-     */
-    public void act(List<Animal> newLions) {
-        incrementAge();
-        incrementHunger();
-        if (isAlive()) {
-            giveBirth(newLions);
-            // Move towards a source of food if found.
-            Location newLocation = findFood();
-            if (newLocation == null) {
-                // No food found - try to move to a free location.
-                newLocation = getField().freeAdjacentLocation(getLocation());
-            }
-            // See if it was possible to move.
-            if (newLocation != null) {
-                setLocation(newLocation);
-            } else {
-                // Overcrowding.
-                setDead();
-            }
-        }
-    }
-
-    /**
-     * Increase the age. This could result in the lion's death.
-     */
-    private void incrementAge() {
-        age++;
-        if (age > MAX_AGE) {
-            setDead();
-        }
-    }
-
-    /**
-     * Make this lion more hungry. This could result in the lion's death.
-     */
-    private void incrementHunger() {
-        foodLevel--;
-        if (foodLevel <= 0) {
-            setDead();
-        }
-    }
-
-    /**
-     * Check whether or not this lion is to give birth at this step.
-     * New births will be made into free adjacent locations.
-     *
-     * @param newLions A list to return newly born lions.
-     */
-    private void giveBirth(List<Animal> newLions) {
-        // New Lion are born into adjacent locations.
-        // Get a list of adjacent free locations.
-        List<Location> adjacent = getField().adjacentLocations(getLocation());
-        Field field = getField();
-        int births = 0;
-        for (Location space : adjacent) {
-            Object animal = field.getObjectAt(space);
-            if (field.getObjectAt(space) instanceof Lion) {
-                Lion lion = (Lion) animal;
-                if (gender ^ lion.getGender() && canBreed()) {
-                    births = breed();
-                }
-                break;
-            }
-            field.getObjectAt(space);
-        }
-
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        for (int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Lion young = new Lion(false, field, loc);
-            newLions.add(young);
-        }
-    }
-
-    /**
-     * Look for zebras adjacent to the current location.
-     * Only the first live zebra is eaten.
-     *
-     * @return Where food was found, or null if it wasn't.
-     */
-
-    private Location findFood() {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        for (Location where : adjacent) {
-            Object animal = field.getObjectAt(where);
-            if (animal instanceof Lion) {
-                Lion lion = (Lion) animal;
-                if (lion.isAlive()) {
-                    lion.setDead();
-                    foodLevel = LION_FOOD_VALUE;
-                    return where;
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * A lion can breed if it has reached the breeding age.
-     */
-    private boolean canBreed() {
-        return age >= BREEDING_AGE;
-    }
-
-    /**
-     * Generate a number representing the number of births,
-     * if it can breed.
-     *
-     * @return The number of births (may be zero).
-     */
-    private int breed() {
-        int births = 0;
-        if (canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
-        }
-        return births;
-    }
-
-}
\ No newline at end of file
@@ -21,14 +21,15 @@ public class Location {
     }
 
     /**
-     * Use the top 16 bits for the row value and the bottom for
-     * the column. Except for very big grids, this should give a
-     * unique hash code for each (row, col) pair.
+     * Multiply the row by a large odd constant before adding the
+     * column, so that both coordinates are spread over all 32 bits.
+     * Unlike packing the row into the top 16 bits, this keeps
+     * hash codes distinct on grids wider than 65,536 columns.
      *
      * @return A hashcode for the location.
      */
     public int hashCode() {
-        return (row << 16) + col;
+        return row * 0x9E3779B9 + col;
     }
 
     /**
@@ -0,0 +1,363 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves the state of a running simulation over HTTP, at /metrics on
+ * localhost, in the Prometheus text format, so that a long run can be
+ * monitored by scraping. It reports the steps simulated and their rate, a
+ * histogram of the time a step takes, the population of each species, the
+ * number of animals added, removed and eaten and their rate, the number of
+ * live animals and the rate at which the simulation allocates memory.
+ *
+ * The server is an observer of the simulator. After each step the
+ * simulation thread adds to counters kept in LongAdders and sets gauges
+ * held in volatile fields and atomic arrays; a scrape, on the server's own
+ * thread, only reads them, so it never takes a lock the simulation needs.
+ * The rates are worked out on the simulation thread about once every
+ * RATE_PERIOD, over the period since they were last worked out.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class MetricsServer implements SimulatorObserver, AutoCloseable {
+    // The path the metrics are served at.
+    public static final String PATH = "/metrics";
+    // The content type of the Prometheus text format.
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    // The least time between working out the rates, in nanoseconds.
+    private static final long RATE_PERIOD = 1_000_000_000L;
+    // The upper bounds of the buckets of the step time histogram, in seconds.
+    private static final double[] STEP_BUCKETS =
+            {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5};
+
+    // The simulation observed.
+    private final Simulator simulator;
+    // The server, bound to the loopback address.
+    private final HttpServer server;
+    // Allocation counters of every thread.
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // The number of steps observed.
+    private final LongAdder steps = new LongAdder();
+    // The number of steps in each bucket of the histogram, not cumulative;
+    // the last bucket is for steps longer than every bound.
+    private final LongAdder[] stepBuckets;
+    // The total time of the steps observed, in nanoseconds.
+    private final LongAdder stepNanos = new LongAdder();
+    // The number of animals of each species added, removed and eaten
+    // since the server started, by species id.
+    private final LongAdder[] added;
+    private final LongAdder[] removed;
+    private final LongAdder[] eaten;
+    // The population of each species after the last step, by species id.
+    private final AtomicLongArray population;
+    // The number of live animals after the last step.
+    private volatile long liveAgents;
+    // The rates worked out at the end of the last period, per second.
+    private volatile double stepsPerSecond;
+    private volatile double addedPerSecond;
+    private volatile double removedPerSecond;
+    private volatile double allocatedBytesPerSecond;
+
+    // The field's totals when last observed, owned by the simulation thread.
+    private final long[] lastAdded;
+    private final long[] lastRemoved;
+    private final long[] lastEaten;
+    private final long[] totalAdded;
+    private final long[] totalRemoved;
+    private final long[] totalEaten;
+    // The start of the current rate period, and the counts at its start.
+    private long periodStart;
+    private long periodSteps;
+    private long periodAdded;
+    private long periodRemoved;
+    private long periodAllocated;
+
+    /**
+     * Start serving the metrics of a simulation on a port of localhost.
+     * The server observes the simulator from now on.
+     *
+     * @param simulator The simulation to report on.
+     * @param port      The port, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public MetricsServer(Simulator simulator, int port) throws IOException {
+        this.simulator = simulator;
+        int species = Species.idRange();
+        stepBuckets = adders(STEP_BUCKETS.length + 1);
+        added = adders(species);
+        removed = adders(species);
+        eaten = adders(species);
+        population = new AtomicLongArray(species);
+        lastAdded = new long[species];
+        lastRemoved = new long[species];
+        lastEaten = new long[species];
+        totalAdded = new long[species];
+        totalRemoved = new long[species];
+        totalEaten = new long[species];
+        // Only what happens from now on is counted.
+        simulator.getField().getEventTotals(lastAdded, lastRemoved, lastEaten);
+        periodStart = System.nanoTime();
+        periodAllocated = allocatedBytes();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this::serve);
+        server.start();
+        simulator.addObserver(this);
+    }
+
+    /**
+     * Return the port the metrics are served on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop observing the simulation and stop serving.
+     */
+    @Override
+    public void close() {
+        simulator.removeObserver(this);
+        server.stop(0);
+    }
+
+    /**
+     * Count the step just completed and update the gauges. Runs on the
+     * simulation thread.
+     *
+     * @param step  The step that has just been completed.
+     * @param field The field after the step.
+     * @param stats Statistics on the field.
+     */
+    @Override
+    public void stepCompleted(int step, Field field, FieldStats stats) {
+        if (step > 0) {
+            long nanos = simulator.getLastStepNanos();
+            steps.increment();
+            stepNanos.add(nanos);
+            stepBuckets[bucketOf(nanos / 1e9)].increment();
+        }
+
+        field.getEventTotals(totalAdded, totalRemoved, totalEaten);
+        long live = 0;
+        for (int id = 1; id < population.length(); id++) {
+            // Clearing the field leaves the totals alone, so these only grow.
+            added[id].add(totalAdded[id] - lastAdded[id]);
+            removed[id].add(totalRemoved[id] - lastRemoved[id]);
+            eaten[id].add(totalEaten[id] - lastEaten[id]);
+            lastAdded[id] = totalAdded[id];
+            lastRemoved[id] = totalRemoved[id];
+            lastEaten[id] = totalEaten[id];
+            int count = stats.getCount(field, id);
+            population.set(id, count);
+            live += count;
+        }
+        liveAgents = live;
+
+        long now = System.nanoTime();
+        if (now - periodStart >= RATE_PERIOD) {
+            double seconds = (now - periodStart) / 1e9;
+            long stepCount = steps.sum();
+            long addedCount = sum(added);
+            long removedCount = sum(removed);
+            long allocated = allocatedBytes();
+            stepsPerSecond = (stepCount - periodSteps) / seconds;
+            addedPerSecond = (addedCount - periodAdded) / seconds;
+            removedPerSecond = (removedCount - periodRemoved) / seconds;
+            // Threads that have ended take their counts with them.
+            allocatedBytesPerSecond = Math.max(0, allocated - periodAllocated) / seconds;
+            periodStart = now;
+            periodSteps = stepCount;
+            periodAdded = addedCount;
+            periodRemoved = removedCount;
+            periodAllocated = allocated;
+        }
+    }
+
+    /**
+     * Answer a scrape. Runs on the server's thread.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Return the metrics in the Prometheus text format.
+     *
+     * @return The metrics.
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder();
+        header(out, "simulator_steps_total", "counter", "Steps simulated.");
+        sample(out, "simulator_steps_total", "", steps.sum());
+        header(out, "simulator_steps_per_second", "gauge", "Steps simulated per second, recently.");
+        sample(out, "simulator_steps_per_second", "", stepsPerSecond);
+
+        header(out, "simulator_step_duration_seconds", "histogram",
+                "Time taken by a step, not counting the observers.");
+        long cumulative = 0;
+        for (int bucket = 0; bucket < STEP_BUCKETS.length; bucket++) {
+            cumulative += stepBuckets[bucket].sum();
+            sample(out, "simulator_step_duration_seconds_bucket",
+                    "le=\"" + STEP_BUCKETS[bucket] + "\"", cumulative);
+        }
+        cumulative += stepBuckets[STEP_BUCKETS.length].sum();
+        sample(out, "simulator_step_duration_seconds_bucket", "le=\"+Inf\"", cumulative);
+        sample(out, "simulator_step_duration_seconds_sum", "", stepNanos.sum() / 1e9);
+        sample(out, "simulator_step_duration_seconds_count", "", cumulative);
+
+        header(out, "simulator_population", "gauge", "Animals of each species in the field.");
+        for (int id = 1; id < population.length(); id++) {
+            sample(out, "simulator_population", species(id), population.get(id));
+        }
+        header(out, "simulator_live_agents", "gauge", "Animals in the field.");
+        sample(out, "simulator_live_agents", "", liveAgents);
+
+        header(out, "simulator_births_total", "counter",
+                "Animals added to the field: births, and the animals of a new population.");
+        for (int id = 1; id < added.length; id++) {
+            sample(out, "simulator_births_total", species(id), added[id].sum());
+        }
+        header(out, "simulator_deaths_total", "counter", "Animals removed from the field, eaten or not.");
+        for (int id = 1; id < removed.length; id++) {
+            sample(out, "simulator_deaths_total", species(id), removed[id].sum());
+        }
+        header(out, "simulator_eaten_total", "counter", "Animals eaten.");
+        for (int id = 1; id < eaten.length; id++) {
+            sample(out, "simulator_eaten_total", species(id), eaten[id].sum());
+        }
+        header(out, "simulator_births_per_second", "gauge", "Animals added per second, recently.");
+        sample(out, "simulator_births_per_second", "", addedPerSecond);
+        header(out, "simulator_deaths_per_second", "gauge", "Animals removed per second, recently.");
+        sample(out, "simulator_deaths_per_second", "", removedPerSecond);
+
+        header(out, "simulator_allocated_bytes_per_second", "gauge",
+                "Heap memory allocated per second by every thread, recently.");
+        sample(out, "simulator_allocated_bytes_per_second", "", allocatedBytesPerSecond);
+        return out.toString();
+    }
+
+    /**
+     * Add the help and type lines of a metric.
+     *
+     * @param out  The output.
+     * @param name The metric.
+     * @param type Its type.
+     * @param help What it measures.
+     */
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Add a line with one value of a metric.
+     *
+     * @param out    The output.
+     * @param name   The metric.
+     * @param labels The labels, or "" for none.
+     * @param value  The value.
+     */
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * @param id A species id.
+     * @return The label naming the species.
+     */
+    private static String species(int id) {
+        return "species=\"" + Species.get(id).getName() + "\"";
+    }
+
+    /**
+     * Return the histogram bucket of a step time.
+     *
+     * @param seconds The time.
+     * @return The first bucket whose bound it does not exceed.
+     */
+    private static int bucketOf(double seconds) {
+        int bucket = 0;
+        while (bucket < STEP_BUCKETS.length && seconds > STEP_BUCKETS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * @return The bytes allocated so far by the live threads, or 0 if the
+     * virtual machine does not count them.
+     */
+    private long allocatedBytes() {
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // -1 for a thread that has ended since the ids were taken.
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /**
+     * @param adders Counters.
+     * @return Their sum.
+     */
+    private static long sum(LongAdder[] adders) {
+        long total = 0;
+        for (LongAdder adder : adders) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @param count The number of counters.
+     * @return New counters, all zero.
+     */
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
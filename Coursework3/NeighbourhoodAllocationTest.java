@@ -0,0 +1,123 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the neighbourhood queries of a Field, and whole steps of a
+ * simulation, allocate nothing once warmed up.
+ *
+ * The queries are asked about every cell of a populated field, first to
+ * warm them up and then while the bytes allocated by the thread are
+ * counted. The steps are those of a simulation in which no animal is
+ * born, so that none has to be made, and none dies of age or hunger, so
+ * that there is still something to do; it runs long enough for every
+ * buffer to reach its size before its steps are counted.
+ *
+ * Run main; it prints what it checked and exits with status 1 if anything
+ * allocated.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class NeighbourhoodAllocationTest {
+    // The number of passes over the field that are measured.
+    private static final int PASSES = 20;
+    // The steps run before measuring, and the steps measured.
+    private static final int WARMUP_STEPS = 200;
+    private static final int STEPS = 50;
+    // Longer than any run of the check, so that no animal dies of it.
+    private static final int FOREVER = 1_000_000;
+
+    // Allocation counters of the checking thread.
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Run the check.
+     *
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+        boolean ok = checkQueries();
+        ok &= checkSteps();
+        System.out.println(ok ? "ok" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Check that the neighbourhood queries allocate nothing.
+     *
+     * @return true if they allocated nothing.
+     */
+    private static boolean checkQueries() {
+        Simulator simulator = new Simulator(80, 120, false);
+        simulator.simulate(50);
+        Field field = simulator.getField();
+
+        long thread = Thread.currentThread().getId();
+        long sink = query(field);
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int pass = 0; pass < PASSES; pass++) {
+            sink += query(field);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        System.out.println("checksum " + sink);
+        System.out.println(allocated + " bytes allocated by " + PASSES + " passes over "
+                + field.getDepth() * field.getWidth() + " cells");
+        return allocated == 0;
+    }
+
+    /**
+     * Check that whole steps of a simulation with no births allocate
+     * nothing.
+     *
+     * @return true if they allocated nothing.
+     */
+    private static boolean checkSteps() {
+        List<Species> variants = new ArrayList<>();
+        for (Species species : Species.all()) {
+            Species variant = species.with(Species.Parameter.BREEDING_PROBABILITY, 0)
+                    .with(Species.Parameter.MAX_AGE, FOREVER);
+            if (variant.getPreyMask() != 0) {
+                variant = variant.with(Species.Parameter.FOOD_VALUE, FOREVER);
+            }
+            variants.add(variant);
+        }
+        Simulator simulator = new Simulator(
+                new SimulationContext(120, 160, Randomizer.getSeed(), variants), false);
+        simulator.simulate(WARMUP_STEPS);
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        simulator.simulate(STEPS);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        System.out.println(allocated + " bytes allocated by " + STEPS + " steps of "
+                + simulator.getStats().getPopulationDetails(simulator.getField()));
+        return allocated == 0;
+    }
+
+    /**
+     * Ask every neighbourhood query about every cell of a field.
+     *
+     * @param field The field.
+     * @return A sum of the answers, so that no query can be left out.
+     */
+    private static long query(Field field) {
+        long sum = 0;
+        int cells = field.getDepth() * field.getWidth();
+        for (int cell = 0; cell < cells; cell++) {
+            sum += field.randomFreeAdjacentCell(cell);
+            sum += field.randomAdjacentCell(cell, Species.EMPTY);
+            sum += field.randomAdjacentCellIn(cell, -1L);
+            Location location = field.locationAt(cell);
+            Location free = field.freeAdjacentLocation(location);
+            sum += free == null ? 0 : free.getRow();
+            sum += field.randomAdjacentLocation(location).getCol();
+        }
+        return sum;
+    }
+}
@@ -1,184 +0,0 @@
-import java.util.List;
-import java.util.Random;
-
- /**
-     * A simple model of an Owl.
-     * Owls age, move, eat rabbits, and die.
-     *
-     * @author (Isaac Addo)
-     * @version (26.02.2021)
-     */
-    public class Owl extends Animal {
-        // Characteristics shared by all owls (class variables).
-
-        // The age at which an owl can start to breed.
-        private static final int BREEDING_AGE = 15;
-        // The age to which an owl can live.
-        private static final int MAX_AGE = 150;
-        // The likelihood of an owl breeding.
-        private static final double BREEDING_PROBABILITY = 0.05;
-        // The maximum number of births.
-        private static final int MAX_LITTER_SIZE = 2;
-        // The food value of a single rabbit. In effect, this is the
-        // number of steps an owl can go before it has to eat again.
-        private static final int OWL_FOOD_VALUE = 9;
-        // A shared random number generator to control breeding.
-        private static final Random rand = Randomizer.getRandom();
-        // The owl's gender
-        private final boolean gender;
-        // Individual characteristics (instance fields).
-        // The owl's age.
-        private int age;
-        // The owl's food level, which is increased by eating rabbits.
-        private int foodLevel;
-
-        /**
-         * Create an owl. An owl can be created as a new born (age zero
-         * and not hungry) or with a random age and food level.
-         *
-         * @param randomAge If true, the owl will have random age and hunger level.
-         * @param field     The field currently occupied.
-         * @param location  The location within the field.
-         */
-        public Owl(boolean randomAge, Field field, Location location) {
-            super(field, location);
-            gender = rand.nextBoolean();
-            if (randomAge) {
-                age = rand.nextInt(MAX_AGE);
-                foodLevel = rand.nextInt(OWL_FOOD_VALUE);
-            } else {
-                age = 0;
-                foodLevel = OWL_FOOD_VALUE;
-            }
-        }
-
-        /**
-         * This is what the owl does most of the time: it hunts for
-         * rabbits. In the process, it might breed, die of hunger,
-         * or die of old age.
-         *
-         * @param newOwls A list to return newly born owls.
-         */
-        @Override
-        public void act(List<Animal> newOwls) {
-            incrementAge();
-            incrementHunger();
-            if (isAlive()) {
-                giveBirth(newOwls);
-
-                // Move towards a source of food if found.
-                Location newLocation = null;
-                if (getField().getTime().equals("night")) {
-                    newLocation = findFood();
-                }
-
-                if (newLocation == null) {
-                    // No food found - try to move to a free location.
-                    newLocation = getField().freeAdjacentLocation(getLocation());
-                }
-                // See if it was possible to move.
-                if (newLocation != null) {
-                    setLocation(newLocation);
-                } else {
-                    // Overcrowding.
-                    setDead();
-                }
-            }
-        }
-
-        /**
-         * Increase the age. This could result in the owl's death.
-         */
-        private void incrementAge() {
-            age++;
-            if (age > MAX_AGE) {
-                setDead();
-            }
-        }
-
-        /**
-         * Make this owl more hungry. This could result in the owl's death.
-         */
-        private void incrementHunger() {
-            foodLevel--;
-            if (foodLevel <= 0) {
-                setDead();
-            }
-        }
-
-        /**
-         * Check whether or not this owl is to give birth at this step.
-         * New births will be made into free adjacent locations.
-         *
-         * @param newOwls A list to return newly born owls.
-         */
-        private void giveBirth(List<Animal> newOwls) {
-            // New owls are born into adjacent locations.
-            // Get a list of adjacent free locations.
-            List<Location> adjacent = getField().adjacentLocations(getLocation());
-            Field field = getField();
-            int births = 0;
-            for (Location space : adjacent) {
-                Object animal = field.getObjectAt(space);
-                if (field.getObjectAt(space) instanceof Owl) {
-                    Owl owl = (Owl) animal;
-                    if (gender ^ owl.getGender() && canBreed()) {
-                        births = breed();
-                    }
-                    break;
-                }
-                field.getObjectAt(space);
-            }
-
-            List<Location> free = field.getFreeAdjacentLocations(getLocation());
-            for (int b = 0; b < births && free.size() > 0; b++) {
-                Location loc = free.remove(0);
-                Owl young = new Owl(false, field, loc);
-                newOwls.add(young);
-            }
-        }
-
-        /**
-         * Look for rabbits adjacent to the current location.
-         * Only the first live rabbit is eaten.
-         *
-         * @return Where food was found, or null if it wasn't.
-         */
-        private Location findFood() {
-            Field field = getField();
-            List<Location> adjacent = field.adjacentLocations(getLocation());
-            for (Location where : adjacent) {
-                Object animal = field.getObjectAt(where);
-                if (animal instanceof Owl) {
-                    Owl owl = (Owl) animal;
-                    if (owl.isAlive()) {
-                        owl.setDead();
-                        foodLevel = OWL_FOOD_VALUE;
-                        return where;
-                    }
-                }
-            }
-            return null;
-        }
-
-        /**
-         * A fox can breed if it has reached the breeding age.
-         */
-        private boolean canBreed() {
-            return age >= BREEDING_AGE;
-        }
-
-    /**
-     * Generate a number representing the number of births,
-     * if it can breed.
-     *
-     * @return The number of births (may be zero).
-     */
-    private int breed() {
-        int births = 0;
-        if (canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
-        }
-        return births;
-    }
-}
\ No newline at end of file
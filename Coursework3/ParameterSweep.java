@@ -0,0 +1,308 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a headless simulation for every combination of a grid of species
+ * parameters and a list of seeds, and writes one line of CSV per run: the
+ * parameters and seed, how many steps it lasted, the step at which the
+ * first species died out and the final population of each species.
+ *
+ * Each run has a SimulationContext of its own and is simulated on one
+ * thread with the classic update, so the runs share nothing and a fixed
+ * pool of threads, one per core by default, can work through them with
+ * little to slow each other down. A run gives the same line whichever
+ * thread runs it, but the lines are written in the order the runs finish.
+ * Runs are made as the threads become free, so a sweep of thousands of
+ * runs only ever holds as many fields as there are threads.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class ParameterSweep {
+    // The size of the field of each run.
+    private final int depth;
+    private final int width;
+    // The most steps a run lasts.
+    private final int maxSteps;
+    // The parameters varied, and the values each takes.
+    private final List<Axis> axes;
+    // The seed of each run of a combination of parameters.
+    private long[] seeds;
+
+    /**
+     * Create a sweep with no parameters varied and a single seed.
+     *
+     * @param depth    Depth of the field of each run.
+     * @param width    Width of the field of each run.
+     * @param maxSteps The most steps a run lasts; it stops sooner if it
+     *                 ceases to be viable.
+     */
+    public ParameterSweep(int depth, int width, int maxSteps) {
+        this.depth = depth;
+        this.width = width;
+        this.maxSteps = maxSteps;
+        axes = new ArrayList<>();
+        seeds = new long[]{Randomizer.getSeed()};
+    }
+
+    /**
+     * Run every combination so far once for each of the given values of a
+     * species parameter.
+     *
+     * @param species   The species.
+     * @param parameter The parameter varied.
+     * @param values    The values it takes.
+     */
+    public void vary(Species species, Species.Parameter parameter, double... values) {
+        for (double value : values) {
+            // Reject bad values now rather than part way through the sweep.
+            species.with(parameter, value);
+        }
+        axes.add(new Axis(species, parameter, values.clone()));
+    }
+
+    /**
+     * Set the seeds each combination of parameters is run with.
+     *
+     * @param seeds The seeds.
+     */
+    public void setSeeds(long... seeds) {
+        this.seeds = seeds.clone();
+    }
+
+    /**
+     * @return The number of runs in the sweep.
+     */
+    public long size() {
+        long size = seeds.length;
+        for (Axis axis : axes) {
+            size *= axis.values.length;
+        }
+        return size;
+    }
+
+    /**
+     * Carry out every run of the sweep and write its outcome to a file.
+     *
+     * @param threads The number of runs carried out at once.
+     * @param output  The CSV file, replaced if it exists.
+     * @throws IOException          If the file cannot be written.
+     * @throws InterruptedException If interrupted while waiting for the runs.
+     */
+    public void run(int threads, Path output) throws IOException, InterruptedException {
+        List<Species> table = Species.all();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            out.write(header(table));
+            out.newLine();
+            List<Future<?>> runs = new ArrayList<>();
+            long size = size();
+            for (long run = 0; run < size; run++) {
+                long index = run;
+                runs.add(pool.submit(() -> {
+                    String line = carryOut(index);
+                    synchronized (out) {
+                        try {
+                            out.write(line);
+                            out.newLine();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> run : runs) {
+                try {
+                    run.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    }
+                    throw new IllegalStateException("A run failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the column names of the output.
+     *
+     * @param table The species, in column order.
+     * @return The header line.
+     */
+    private String header(List<Species> table) {
+        StringBuilder line = new StringBuilder("run,seed");
+        for (Axis axis : axes) {
+            line.append(',').append(axis.species.getName()).append('_')
+                    .append(axis.parameter.name().toLowerCase());
+        }
+        line.append(",steps,extinction_step,extinct_species");
+        for (Species species : table) {
+            line.append(',').append(species.getName()).append("_population");
+        }
+        return line.toString();
+    }
+
+    /**
+     * Carry out one run of the sweep.
+     *
+     * @param run The index of the run: the seed varies fastest, then each
+     *            axis in the reverse of the order they were added.
+     * @return The line of output describing its outcome.
+     */
+    private String carryOut(long run) {
+        long seed = seeds[(int) (run % seeds.length)];
+        long rest = run / seeds.length;
+        double[] values = new double[axes.size()];
+        for (int i = axes.size() - 1; i >= 0; i--) {
+            double[] axisValues = axes.get(i).values;
+            values[i] = axisValues[(int) (rest % axisValues.length)];
+            rest /= axisValues.length;
+        }
+
+        // Later axes on the same species apply to the variant of earlier ones.
+        List<Species> table = Species.all();
+        for (int i = 0; i < axes.size(); i++) {
+            Axis axis = axes.get(i);
+            int index = axis.species.getId() - 1;
+            table.set(index, table.get(index).with(axis.parameter, values[i]));
+        }
+        SimulationContext context = new SimulationContext(depth, width, seed, table);
+        Simulator simulator = new Simulator(context, false);
+        ExtinctionObserver extinctions = new ExtinctionObserver(context.getSpecies(),
+                context.getField());
+        simulator.addObserver(extinctions);
+        simulator.simulate(maxSteps);
+
+        StringBuilder line = new StringBuilder();
+        line.append(run).append(',').append(seed);
+        for (double value : values) {
+            line.append(',').append(value);
+        }
+        line.append(',').append(simulator.getStep())
+                .append(',').append(extinctions.step)
+                .append(',').append(extinctions.species == null ? "" : extinctions.species.getName());
+        for (Species species : context.getSpecies()) {
+            line.append(',').append(context.getField().getPopulation(species.getId()));
+        }
+        return line.toString();
+    }
+
+    /**
+     * Run a sweep over the breeding probability of lions and the creation
+     * probability of zebras. Arguments, all optional: the output file, the
+     * number of seeds per combination, the most steps per run, the number
+     * of threads and the size of the field.
+     *
+     * @param args The output, seeds, steps, threads, depth and width.
+     * @throws IOException          If the output cannot be written.
+     * @throws InterruptedException If interrupted while waiting for the runs.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path output = Paths.get(args.length > 0 ? args[0] : "sweep.csv");
+        int seedCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 4 ? Integer.parseInt(args[4]) : 80;
+        int width = args.length > 5 ? Integer.parseInt(args[5]) : 120;
+
+        ParameterSweep sweep = new ParameterSweep(depth, width, steps);
+        sweep.vary(Species.LION, Species.Parameter.BREEDING_PROBABILITY, 0.03, 0.05, 0.07);
+        sweep.vary(Species.ZEBRA, Species.Parameter.CREATION_PROBABILITY, 0.2, 0.26, 0.32);
+        long[] seeds = new long[seedCount];
+        for (int i = 0; i < seedCount; i++) {
+            seeds[i] = Randomizer.getSeed() + i;
+        }
+        sweep.setSeeds(seeds);
+
+        long start = System.nanoTime();
+        sweep.run(threads, output);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d runs on %d threads in %.1f s (%.2f runs/sec)%n",
+                sweep.size(), threads, seconds, sweep.size() / seconds);
+    }
+
+    /**
+     * A species parameter varied by the sweep, and the values it takes.
+     */
+    private static class Axis {
+        // The species.
+        private final Species species;
+        // The parameter.
+        private final Species.Parameter parameter;
+        // The values it takes.
+        private final double[] values;
+
+        /**
+         * @param species   The species.
+         * @param parameter The parameter.
+         * @param values    The values it takes.
+         */
+        Axis(Species species, Species.Parameter parameter, double[] values) {
+            this.species = species;
+            this.parameter = parameter;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Notes the first step at which a species of a run has died out.
+     */
+    private static class ExtinctionObserver implements SimulatorObserver {
+        // The species of the run that were present at the start.
+        private final List<Species> watched;
+        // The step the first of them died out at, or -1.
+        private int step;
+        // The species that died out then.
+        private Species species;
+
+        /**
+         * @param table The species of the run.
+         * @param field The field at the start of the run.
+         */
+        ExtinctionObserver(List<Species> table, Field field) {
+            watched = new ArrayList<>();
+            for (Species candidate : table) {
+                if (field.getPopulation(candidate.getId()) > 0) {
+                    watched.add(candidate);
+                }
+            }
+            step = -1;
+        }
+
+        /**
+         * Note the first species to die out.
+         *
+         * @param step  The step that has just been completed.
+         * @param field The field after the step.
+         * @param stats Statistics on the field.
+         */
+        @Override
+        public void stepCompleted(int step, Field field, FieldStats stats) {
+            if (this.step >= 0) {
+                return;
+            }
+            for (Species candidate : watched) {
+                if (field.getPopulation(candidate.getId()) == 0) {
+                    this.step = step;
+                    species = candidate;
+                    return;
+                }
+            }
+        }
+    }
+}
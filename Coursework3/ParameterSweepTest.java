@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks that a ParameterSweep rejects points that cannot be simulated
+ * when they are added, rather than failing part way through the sweep,
+ * and that it still runs the smallest points it accepts.
+ *
+ * A maximum age or litter size of 0, and a food value of 0 for a species
+ * that eats others, must be rejected with an IllegalArgumentException, as
+ * must values that round down to 0. A sweep over the smallest accepted
+ * values must run to the end and write a line for every run.
+ *
+ * Run main; it prints what it checked and exits with status 1 if anything
+ * failed.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class ParameterSweepTest {
+    // The size of the field and the length of each run.
+    private static final int DEPTH = 40;
+    private static final int WIDTH = 60;
+    private static final int STEPS = 50;
+
+    // Whether every check so far has passed.
+    private static boolean ok = true;
+
+    /**
+     * Run the checks.
+     *
+     * @param args Not used.
+     * @throws IOException          If the output of the sweep cannot be used.
+     * @throws InterruptedException If interrupted while the sweep runs.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        checkRejected(Species.LION, Species.Parameter.MAX_AGE, 0);
+        checkRejected(Species.RAT, Species.Parameter.MAX_AGE, 0.5);
+        checkRejected(Species.LION, Species.Parameter.MAX_LITTER_SIZE, 0);
+        checkRejected(Species.ZEBRA, Species.Parameter.MAX_LITTER_SIZE, 0.9);
+        checkRejected(Species.LION, Species.Parameter.FOOD_VALUE, 0);
+        checkRejected(Species.OWL, Species.Parameter.FOOD_VALUE, 0.5);
+        checkSmallest();
+        System.out.println(ok ? "ok" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Check that a sweep rejects a point, along with the good values
+     * given with it.
+     *
+     * @param species   The species.
+     * @param parameter The parameter varied.
+     * @param value     The value that must be rejected.
+     */
+    private static void checkRejected(Species species, Species.Parameter parameter, double value) {
+        ParameterSweep sweep = new ParameterSweep(DEPTH, WIDTH, STEPS);
+        boolean rejected;
+        try {
+            sweep.vary(species, parameter, 2, value);
+            rejected = false;
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected, species.getName() + " " + parameter + " " + value + " rejected");
+    }
+
+    /**
+     * Check that a sweep over the smallest accepted values runs every
+     * point: a maximum age and litter size of 1, and a food value of 0
+     * for a species that eats nothing.
+     *
+     * @throws IOException          If the output of the sweep cannot be used.
+     * @throws InterruptedException If interrupted while the sweep runs.
+     */
+    private static void checkSmallest() throws IOException, InterruptedException {
+        ParameterSweep sweep = new ParameterSweep(DEPTH, WIDTH, STEPS);
+        sweep.vary(Species.LION, Species.Parameter.MAX_AGE, 1);
+        sweep.vary(Species.LION, Species.Parameter.MAX_LITTER_SIZE, 1);
+        sweep.vary(Species.LION, Species.Parameter.FOOD_VALUE, 1);
+        sweep.vary(Species.RAT, Species.Parameter.MAX_AGE, 1);
+        sweep.vary(Species.RAT, Species.Parameter.FOOD_VALUE, 0);
+        sweep.setSeeds(1, 2);
+        Path output = Files.createTempFile("sweep-test", ".csv");
+        try {
+            sweep.run(2, output);
+            long lines = Files.readAllLines(output).size();
+            check(lines == sweep.size() + 1, "smallest values swept");
+        } catch (IllegalStateException e) {
+            System.out.println("  " + e.getCause());
+            check(false, "smallest values swept");
+        } finally {
+            Files.delete(output);
+        }
+    }
+
+    /**
+     * Report one check.
+     *
+     * @param passed Whether it passed.
+     * @param what   What was checked.
+     */
+    private static void check(boolean passed, String what) {
+        System.out.println((passed ? "passed: " : "FAILED: ") + what);
+        ok &= passed;
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records a time series of the population of a simulation: for every
+ * step and every species, how many there are, how many were born, how
+ * many died and how many of those were eaten. Add it to a Simulator as an
+ * observer and close it when the run is over.
+ *
+ * The simulation thread only takes the counts from the field and puts
+ * them on a bounded queue; a background thread writes them out, as CSV,
+ * in a compact binary format or both. If the writer falls so far behind
+ * that the queue is full, steps are dropped rather than making the
+ * simulation wait, and getDropped says how many.
+ *
+ * The binary file starts with the magic number "FCTS", a version, the
+ * number of species and each species' name (a short length and UTF-8
+ * bytes). Each step follows as big-endian ints: the step, and then the
+ * population, births, deaths and eaten count of each species in turn.
+ * The record of step 0 counts the initial population as births.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class PopulationRecorder implements SimulatorObserver, AutoCloseable {
+    // Identifies a binary time series file: "FCTS".
+    private static final int MAGIC = 0x46435453;
+    // The version of the binary format.
+    private static final int VERSION = 1;
+    // The number of steps that can wait to be written.
+    private static final int QUEUE_CAPACITY = 4096;
+    // The size of the binary output buffer.
+    private static final int BUFFER_SIZE = 1 << 16;
+    // The counts kept for each species at each step.
+    private static final int COUNTS = 4;
+    // Marks the end of the series on the queue.
+    private static final Sample END = new Sample(-1, new int[0]);
+
+    // The species recorded, in column order.
+    private final List<Species> species;
+    // The steps waiting to be written.
+    private final BlockingQueue<Sample> queue;
+    // Writes the steps out.
+    private final Thread writer;
+    // The CSV output, or null.
+    private final BufferedWriter csv;
+    // The binary output, or null.
+    private final FileChannel binary;
+    private final ByteBuffer buffer;
+    // The event counts taken from the field, indexed by species id.
+    private final int[] added;
+    private final int[] removed;
+    private final int[] eaten;
+    // The number of steps dropped because the queue was full.
+    private int dropped;
+    // The first error met by the writer thread.
+    private volatile IOException failure;
+
+    /**
+     * Create a recorder writing to the given files, replacing them if they
+     * exist. The species recorded are those in the species table now.
+     *
+     * @param csvFile    The CSV file, or null for none.
+     * @param binaryFile The binary file, or null for none.
+     * @throws IOException If a file cannot be created.
+     */
+    public PopulationRecorder(Path csvFile, Path binaryFile) throws IOException {
+        species = Species.all();
+        queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        added = new int[Species.MAX_ID + 1];
+        removed = new int[added.length];
+        eaten = new int[added.length];
+
+        csv = csvFile == null ? null : Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8);
+        binary = binaryFile == null ? null : FileChannel.open(binaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        writeHeaders();
+
+        writer = new Thread(this::writeSamples, "population-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Take the counts of the step just completed and queue them to be
+     * written. Never waits for the writer.
+     *
+     * @param step  The step that has just been completed.
+     * @param field The field after the step.
+     * @param stats Statistics on the field.
+     */
+    @Override
+    public void stepCompleted(int step, Field field, FieldStats stats) {
+        field.takeEventCounts(added, removed, eaten);
+        int[] counts = new int[species.size() * COUNTS];
+        for (int i = 0; i < species.size(); i++) {
+            int id = species.get(i).getId();
+            counts[i * COUNTS] = field.getPopulation(id);
+            counts[i * COUNTS + 1] = added[id];
+            counts[i * COUNTS + 2] = removed[id];
+            counts[i * COUNTS + 3] = eaten[id];
+        }
+        if (!queue.offer(new Sample(step, counts))) {
+            dropped++;
+        }
+    }
+
+    /**
+     * Return the number of steps that were not recorded because the
+     * writer had fallen too far behind.
+     *
+     * @return The number of steps dropped.
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Write out every queued step and close the files.
+     *
+     * @throws IOException If the output could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (csv != null) {
+                csv.close();
+            }
+        } finally {
+            if (binary != null) {
+                binary.close();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Write the column names and the binary header.
+     *
+     * @throws IOException If the output cannot be written.
+     */
+    private void writeHeaders() throws IOException {
+        if (csv != null) {
+            csv.write("step");
+            for (Species s : species) {
+                csv.write("," + s.getName() + "_population," + s.getName() + "_births,"
+                        + s.getName() + "_deaths," + s.getName() + "_eaten");
+            }
+            csv.newLine();
+        }
+        if (binary != null) {
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(species.size());
+            for (Species s : species) {
+                byte[] name = s.getName().getBytes(StandardCharsets.UTF_8);
+                buffer.putShort((short) name.length).put(name);
+            }
+        }
+    }
+
+    /**
+     * Write queued steps until the end of the series. Runs on the writer
+     * thread.
+     */
+    private void writeSamples() {
+        StringBuilder line = new StringBuilder();
+        try {
+            while (true) {
+                Sample sample = queue.take();
+                if (sample == END) {
+                    break;
+                }
+                if (failure != null) {
+                    // Keep draining so that close() can finish.
+                    continue;
+                }
+                try {
+                    if (csv != null) {
+                        line.setLength(0);
+                        line.append(sample.step);
+                        for (int count : sample.counts) {
+                            line.append(',').append(count);
+                        }
+                        csv.append(line);
+                        csv.newLine();
+                    }
+                    if (binary != null) {
+                        if (buffer.remaining() < (sample.counts.length + 1) * Integer.BYTES) {
+                            flushBinary();
+                        }
+                        buffer.putInt(sample.step);
+                        for (int count : sample.counts) {
+                            buffer.putInt(count);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure == null && binary != null) {
+                flushBinary();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // Stop writing.
+        }
+    }
+
+    /**
+     * Write the buffered binary output to the file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private void flushBinary() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            binary.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * The counts of one step.
+     */
+    private static class Sample {
+        // The step.
+        private final int step;
+        // The counts of each species in turn.
+        private final int[] counts;
+
+        /**
+         * @param step   The step.
+         * @param counts The counts of each species in turn.
+         */
+        Sample(int step, int[] counts) {
+            this.step = step;
+            this.counts = counts;
+        }
+    }
+}
@@ -1,10 +1,25 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Provide control over the randomization of the simulation. By using the shared, fixed-seed
  * randomizer, repeated runs will perform exactly the same (which helps with testing). Set
  * 'useShared' to false to get different random behaviour every time.
  *
+ * Code that draws random numbers while the simulation is stepping asks for the current
+ * generator. Normally that is the generator of the run being stepped, but a TiledStepEngine
+ * makes each tile of the field use its own SplittableRandom stream, derived from the run's
+ * seed, the step and the tile. No stream is shared between threads, so there is no
+ * contention, and a run is reproducible for a given seed however many threads execute it.
+ *
+ * Each SimulationContext owns a StatefulRandom of its own, which the simulator makes the
+ * current generator of the thread running it, so that runs in the same JVM do not share a
+ * sequence. A StatefulRandom produces exactly the numbers a java.util.Random would, but its
+ * state can be read and restored, so that a checkpointed run can be resumed (see Checkpoint).
+ *
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
@@ -12,9 +27,12 @@ public class Randomizer {
     // The default seed for control of randomization.
     private static final int SEED = 1111;
     // A shared Random object, if required.
-    private static final Random rand = new Random(SEED);
+    private static final StatefulRandom rand = new StatefulRandom(SEED);
     // Determine whether a shared random generator is to be provided.
     private static final boolean useShared = true;
+    // The generator used by each thread while it is updating part of the field.
+    private static final ThreadLocal<RandomGenerator> current =
+            ThreadLocal.withInitial(Randomizer::getRandom);
 
     /**
      * Constructor for objects of class Randomizer
@@ -35,6 +53,57 @@ public class Randomizer {
         }
     }
 
+    /**
+     * Provide the generator the calling thread should draw from while
+     * stepping the simulation: the stream of the tile it is updating,
+     * the generator of the run it is stepping, or the shared generator
+     * otherwise.
+     *
+     * @return The current random generator.
+     */
+    public static RandomGenerator current() {
+        return current.get();
+    }
+
+    /**
+     * Set the generator the calling thread draws from.
+     *
+     * @param generator The generator, or null to go back to the shared one.
+     */
+    public static void setCurrent(RandomGenerator generator) {
+        if (generator == null) {
+            current.remove();
+        } else {
+            current.set(generator);
+        }
+    }
+
+    /**
+     * Create the random stream of one tile of the field at one step. The
+     * same seed, clock reading and tile always give the same stream, so
+     * the stream need not be saved to be recreated.
+     *
+     * @param seed  The master seed.
+     * @param clock The field's clock at the step.
+     * @param tile  The tile index.
+     * @return The stream.
+     */
+    public static SplittableRandom stream(long seed, int clock, int tile) {
+        long key = (seed * 0x9E3779B97F4A7C15L + clock) * 0x9E3779B97F4A7C15L + tile;
+        // Splitting hashes the key into both the seed and the gamma of the
+        // stream, so streams of nearby keys do not overlap.
+        return new SplittableRandom(key).split();
+    }
+
+    /**
+     * Return the master seed of the simulation.
+     *
+     * @return The seed.
+     */
+    public static long getSeed() {
+        return SEED;
+    }
+
     /**
      * Reset the randomization.
      * This will have no effect if randomization is not through
@@ -45,4 +114,85 @@ public class Randomizer {
             rand.setSeed(SEED);
         }
     }
+
+    /**
+     * The linear congruential generator of java.util.Random, with the
+     * state kept where it can be saved and restored. Like java.util.Random
+     * it updates the state atomically, so the shared generator can be
+     * drawn from by any thread.
+     */
+    static class StatefulRandom extends Random {
+        // The version of the serialized form, which adds the state.
+        private static final long serialVersionUID = 1L;
+
+        // The constants of java.util.Random.
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long ADDEND = 0xBL;
+        private static final long MASK = (1L << 48) - 1;
+        // Updates the state atomically.
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup()
+                        .findVarHandle(StatefulRandom.class, "state", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        // The 48-bit state.
+        private volatile long state;
+
+        /**
+         * Create a generator with the given seed.
+         *
+         * @param seed The seed.
+         */
+        StatefulRandom(long seed) {
+            super(seed);
+        }
+
+        /**
+         * Reseed the generator, exactly as java.util.Random does.
+         *
+         * @param seed The seed.
+         */
+        @Override
+        public synchronized void setSeed(long seed) {
+            super.setSeed(seed);
+            state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        /**
+         * Generate the next pseudorandom number, exactly as java.util.Random does.
+         *
+         * @param bits The number of random bits.
+         * @return The random bits.
+         */
+        @Override
+        protected int next(int bits) {
+            long current;
+            long next;
+            do {
+                current = state;
+                next = (current * MULTIPLIER + ADDEND) & MASK;
+            } while (!STATE.compareAndSet(this, current, next));
+            return (int) (next >>> (48 - bits));
+        }
+
+        /**
+         * @return The 48-bit state.
+         */
+        long getState() {
+            return state;
+        }
+
+        /**
+         * @param state The 48-bit state.
+         */
+        void setState(long state) {
+            this.state = state & MASK;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ * Compare how many random draws per second the simulation can make from
+ * the single shared java.util.Random with how many it can make from one
+ * SplittableRandom stream per thread, as Randomizer.stream gives each
+ * tile. Every thread makes the same number of nextInt(8) draws, the most
+ * common draw in the simulation. The draws are summed, and the sums of
+ * every measurement printed at the end as one checksum, so that none of
+ * the drawing can be optimised away.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class RandomizerBenchmark {
+    // The draws made by each thread in each measurement.
+    private static final int DRAWS_PER_THREAD = 20_000_000;
+    // The thread counts measured by default.
+    private static final int[] DEFAULT_THREADS = {1, 2, 4, 8, 16, 32};
+
+    // The sums of the draws of every measurement so far, combined.
+    private static long checksum;
+
+    /**
+     * Print draws/sec for both kinds of generator at each thread count.
+     *
+     * @param args Optional thread counts to measure.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int[] threads = DEFAULT_THREADS;
+        if (args.length > 0) {
+            threads = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                threads[i] = Integer.parseInt(args[i]);
+            }
+        }
+        // Warm up both paths before timing.
+        measure(1, false);
+        measure(1, true);
+        System.out.printf("%8s %18s %18s%n", "threads", "shared Random", "split streams");
+        for (int count : threads) {
+            System.out.printf("%8d %18.0f %18.0f%n", count, measure(count, false), measure(count, true));
+        }
+        System.out.printf("checksum %016x%n", checksum);
+    }
+
+    /**
+     * Measure the draw rate of several threads.
+     *
+     * @param threads The number of drawing threads.
+     * @param split   Whether each thread has its own stream, rather than
+     *                all sharing one Random.
+     * @return The total draws per second.
+     */
+    public static double measure(int threads, boolean split) throws InterruptedException {
+        Random shared = new Random(Randomizer.getSeed());
+        Thread[] workers = new Thread[threads];
+        long[] sums = new long[threads];
+        for (int i = 0; i < threads; i++) {
+            RandomGenerator rand = split ? Randomizer.stream(Randomizer.getSeed(), 0, i) : shared;
+            int worker = i;
+            workers[i] = new Thread(() -> {
+                long sum = 0;
+                for (int draw = 0; draw < DRAWS_PER_THREAD; draw++) {
+                    sum += rand.nextInt(8);
+                }
+                sums[worker] = sum;
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (long sum : sums) {
+            checksum = checksum * 31 + sum;
+        }
+        return (double) threads * DRAWS_PER_THREAD * 1e9 / elapsed;
+    }
+}
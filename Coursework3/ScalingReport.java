@@ -0,0 +1,76 @@
+/**
+ * Measure how the throughput of the tiled step engine scales with the
+ * number of threads. For each grid size and thread count a fresh headless
+ * simulation is warmed up and then timed, and a table of steps/sec and
+ * speedup over one thread is printed.
+ *
+ * Large grids need a large heap: a 4000x4000 field holds around nine
+ * million animals, so run with -Xmx4g or more.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class ScalingReport {
+    // The grid sizes measured by default, as {depth, width}.
+    private static final int[][] DEFAULT_GRIDS = {{1000, 1000}, {4000, 4000}};
+    // The thread counts measured by default.
+    private static final int[] DEFAULT_THREADS = {1, 2, 4, 8, 16, 32};
+    // Steps run before timing starts.
+    private static final int WARMUP_STEPS = 10;
+    // Steps timed for each measurement.
+    private static final int TIMED_STEPS = 20;
+
+    /**
+     * Print the scaling report. With no arguments, measure the default
+     * grids at 1 to 32 threads; otherwise the arguments are a depth and
+     * width followed by the thread counts to measure.
+     *
+     * @param args Optional depth, width and thread counts.
+     */
+    public static void main(String[] args) {
+        int[][] grids = DEFAULT_GRIDS;
+        int[] threads = DEFAULT_THREADS;
+        if (args.length >= 3) {
+            grids = new int[][]{{Integer.parseInt(args[0]), Integer.parseInt(args[1])}};
+            threads = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                threads[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("%-12s %8s %12s %8s%n", "grid", "threads", "steps/sec", "speedup");
+        for (int[] grid : grids) {
+            double base = 0;
+            for (int count : threads) {
+                double rate = measure(grid[0], grid[1], count);
+                if (base == 0) {
+                    base = rate;
+                }
+                System.out.printf("%-12s %8d %12.2f %7.2fx%n",
+                        grid[0] + "x" + grid[1], count, rate, rate / base);
+            }
+        }
+    }
+
+    /**
+     * Measure the throughput of one simulation.
+     *
+     * @param depth   The depth of the field.
+     * @param width   The width of the field.
+     * @param threads The number of threads to simulate on.
+     * @return The steps simulated per second once warmed up.
+     */
+    public static double measure(int depth, int width, int threads) {
+        Simulator simulator = new Simulator(depth, width, false);
+        simulator.setThreads(threads);
+        for (int step = 0; step < WARMUP_STEPS; step++) {
+            simulator.simulateOneStep();
+        }
+        long start = System.nanoTime();
+        for (int step = 0; step < TIMED_STEPS; step++) {
+            simulator.simulateOneStep();
+        }
+        long elapsed = System.nanoTime() - start;
+        simulator.setThreads(0);
+        return TIMED_STEPS * 1e9 / elapsed;
+    }
+}
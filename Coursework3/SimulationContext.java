@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything that belongs to one run of the simulation rather than to the
+ * program: the field, the seed, the random generator drawn from while the
+ * run is stepped, and the species it is run with. Runs with separate
+ * contexts share nothing that changes, so many of them can be simulated
+ * in the same JVM at once, on different threads.
+ *
+ * The species are the rows of the species table, except for any variants
+ * given in their place (see Species.with).
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class SimulationContext {
+    // The master seed of the run.
+    private final long seed;
+    // The generator of the run.
+    private final Randomizer.StatefulRandom random;
+    // The field of the run.
+    private final Field field;
+    // The species of the run, in id order.
+    private final List<Species> species;
+
+    /**
+     * Create a context for a run of the species table as it is.
+     *
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param seed  The master seed of the run.
+     */
+    public SimulationContext(int depth, int width, long seed) {
+        this(depth, width, seed, Collections.emptyList());
+    }
+
+    /**
+     * Create a context for a run in which some species are replaced by
+     * variants.
+     *
+     * @param depth    Depth of the field. Must be greater than zero.
+     * @param width    Width of the field. Must be greater than zero.
+     * @param seed     The master seed of the run.
+     * @param variants Variants of species in the table, each used in place
+     *                 of the species with the same id.
+     */
+    public SimulationContext(int depth, int width, long seed, List<Species> variants) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("The dimensions must be greater than zero: "
+                    + depth + " x " + width);
+        }
+        this.seed = seed;
+        random = new Randomizer.StatefulRandom(seed);
+        field = new Field(depth, width);
+        List<Species> table = Species.all();
+        for (Species variant : variants) {
+            int index = variant.getId() - 1;
+            if (index >= table.size() || !table.get(index).getName().equals(variant.getName())) {
+                throw new IllegalArgumentException("Not a variant of a species in the table: "
+                        + variant);
+            }
+            table.set(index, variant);
+        }
+        species = Collections.unmodifiableList(new ArrayList<>(table));
+        // Before anything is placed, let alone stepped on several threads.
+        field.indexSensing(species);
+    }
+
+    /**
+     * @return The master seed of the run.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return The generator the run draws from when stepped on one thread.
+     */
+    Randomizer.StatefulRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * @return The field of the run.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Return the species of the run, in id order. Locations are populated
+     * by trying each in turn.
+     *
+     * @return An unmodifiable list of the species.
+     */
+    public List<Species> getSpecies() {
+        return species;
+    }
+}
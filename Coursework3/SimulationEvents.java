@@ -0,0 +1,245 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events the simulation emits, so that what the
+ * animals are doing can be lined up with garbage collections, CPU load
+ * and the rest of a recording. simulation.jfc enables them alongside the
+ * JDK's default settings:
+ *
+ *     java -XX:StartFlightRecording:settings=default,settings=simulation.jfc,filename=run.jfr Simulator
+ *
+ * Every step is recorded as a SimulationStep. Births, deaths and
+ * predation happen far too often to record each one, so only a sample of
+ * them is: those whose cell and clock reading hash to one in SAMPLE_RATE.
+ * The hash draws nothing from the simulation's random generators, so
+ * recording never changes a run, and each sampled event carries the
+ * SAMPLE_RATE as its weight, so that totals can be estimated from it. An
+ * event that is not sampled costs a few arithmetic operations, and one
+ * that is sampled while nothing is recording is dropped as soon as it is
+ * found to be disabled.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public final class SimulationEvents {
+    // One in this many births, deaths and predations is recorded; a power of two.
+    public static final int SAMPLE_RATE = 64;
+
+    /**
+     * What an animal died of.
+     */
+    public enum DeathCause {
+        AGE("age"), HUNGER("hunger"), OVERCROWDING("overcrowding"), EATEN("eaten");
+
+        // The name recorded for the cause.
+        private final String label;
+
+        /**
+         * @param label The name recorded for the cause.
+         */
+        DeathCause(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return The name recorded for the cause, e.g. "hunger".
+         */
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Nothing to create: the class only groups the events.
+     */
+    private SimulationEvents() {
+    }
+
+    /**
+     * Start timing a step, if anything could record it. Until the Flight
+     * Recorder has been started no event can be enabled, so no event is
+     * made, and a step allocates nothing.
+     *
+     * @return The event, begun, or null if the Flight Recorder has not
+     *         been started.
+     */
+    static Step beginStep() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Step event = new Step();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Record a litter, if it is in the sample.
+     *
+     * @param species The species of the parent.
+     * @param cell    The parent's cell.
+     * @param clock   The field's clock.
+     * @param litter  The number of young placed in the field.
+     */
+    static void birth(Species species, int cell, int clock, int litter) {
+        if (sampled(cell, clock)) {
+            Birth event = new Birth();
+            if (event.isEnabled()) {
+                event.species = species.getName();
+                event.litterSize = litter;
+                event.sampleWeight = SAMPLE_RATE;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Record a death, if it is in the sample.
+     *
+     * @param species The species of the animal.
+     * @param cell    The cell it died in.
+     * @param clock   The field's clock.
+     * @param cause   What it died of.
+     * @param age     Its age.
+     */
+    static void death(Species species, int cell, int clock, DeathCause cause, int age) {
+        if (sampled(cell, clock)) {
+            Death event = new Death();
+            if (event.isEnabled()) {
+                event.species = species.getName();
+                event.cause = cause.toString();
+                event.age = age;
+                event.sampleWeight = SAMPLE_RATE;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Record one animal eating another, if it is in the sample.
+     *
+     * @param predator The species of the hunter.
+     * @param prey     The species of the animal eaten.
+     * @param cell     The cell of the animal eaten.
+     * @param clock    The field's clock.
+     */
+    static void predation(Species predator, Species prey, int cell, int clock) {
+        if (sampled(cell, clock)) {
+            Predation event = new Predation();
+            if (event.isEnabled()) {
+                event.predator = predator.getName();
+                event.prey = prey.getName();
+                event.sampleWeight = SAMPLE_RATE;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Return whether an event at a cell and clock reading is in the
+     * sample, by mixing the two into a hash.
+     *
+     * @param cell  The cell.
+     * @param clock The field's clock.
+     * @return true for about one in SAMPLE_RATE of them.
+     */
+    private static boolean sampled(int cell, int clock) {
+        int hash = cell * 0x9E3779B9 + clock;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return (hash & (SAMPLE_RATE - 1)) == 0;
+    }
+
+    /**
+     * A step of the simulation.
+     */
+    @Name("foodchain.SimulationStep")
+    @Label("Simulation Step")
+    @Category("Food Chain")
+    @Description("One step of the simulation, from advancing the clock to notifying the observers")
+    @StackTrace(false)
+    public static class Step extends Event {
+        @Label("Step")
+        int step;
+
+        @Label("Clock")
+        int clock;
+
+        @Label("Animals Due")
+        @Description("The animals that had something to do at the step")
+        int due;
+
+        @Label("Population")
+        @Description("The number of animals in the field after the step")
+        long population;
+    }
+
+    /**
+     * A sampled litter.
+     */
+    @Name("foodchain.Birth")
+    @Label("Birth")
+    @Category("Food Chain")
+    @Description("A litter born into the field, recorded for one in a sample of litters")
+    @StackTrace(false)
+    public static class Birth extends Event {
+        @Label("Species")
+        String species;
+
+        @Label("Litter Size")
+        int litterSize;
+
+        @Label("Sample Weight")
+        @Description("The number of litters this one stands for")
+        int sampleWeight;
+    }
+
+    /**
+     * A sampled death.
+     */
+    @Name("foodchain.Death")
+    @Label("Death")
+    @Category("Food Chain")
+    @Description("An animal dying, recorded for one in a sample of deaths")
+    @StackTrace(false)
+    public static class Death extends Event {
+        @Label("Species")
+        String species;
+
+        @Label("Cause")
+        String cause;
+
+        @Label("Age")
+        int age;
+
+        @Label("Sample Weight")
+        @Description("The number of deaths this one stands for")
+        int sampleWeight;
+    }
+
+    /**
+     * A sampled kill.
+     */
+    @Name("foodchain.Predation")
+    @Label("Predation")
+    @Category("Food Chain")
+    @Description("One animal eating another, recorded for one in a sample of kills")
+    @StackTrace(false)
+    public static class Predation extends Event {
+        @Label("Predator")
+        String predator;
+
+        @Label("Prey")
+        String prey;
+
+        @Label("Sample Weight")
+        @Description("The number of kills this one stands for")
+        int sampleWeight;
+    }
+}
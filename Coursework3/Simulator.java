@@ -1,8 +1,15 @@
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
@@ -17,25 +24,42 @@ public class Simulator {
     private static final int DEFAULT_WIDTH = 120;
     // The default depth of the grid.
     private static final int DEFAULT_DEPTH = 80;
-    // The probability that a snake will be created in any given grid position.
-    private static final double SNAKE_CREATION_PROBABILITY = 0.02;
-    // The probability that a rat will be created in any given grid position.
-    private static final double RAT_CREATION_PROBABILITY = 0.08;
-    // The probability that an owl will be created in any given grid position.
-    private static final double OWL_CREATION_PROBABILITY = 0.14;
-    // The probability that a lion will be created in any given grid position.
-    private static final double LION_CREATION_PROBABILITY = 0.2;
-    // The probability that a zebra will be created in any given grid position.
-    private static final double ZEBRA_CREATION_PROBABILITY = 0.26;
-
-    // List of animals in the field.
-    private final List<Animal> animals;
+    // The pause between steps when the simulation is being watched.
+    private static final int DEFAULT_DELAY = 60;
+
+    // The animals in the field.
+    private final AgentStore animals;
+    // Decides which animals act at each step.
+    private final ActivityScheduler scheduler;
+    // The run being simulated.
+    private final SimulationContext context;
     // The current state of the field.
     private final Field field;
-    // A graphical view of the simulation.
-    private final SimulatorView view;
+    // Statistics on the field.
+    private final FieldStats stats;
+    // Observers notified after every step, e.g. a graphical view.
+    private final List<SimulatorObserver> observers;
     // The current step of the simulation.
     private int step;
+    // The pause in milliseconds after each step of simulate().
+    private int delay;
+    // The throughput of the most recent call to simulate().
+    private double stepsPerSecond;
+    // The time the most recent step took, up to notifying the observers.
+    private long lastStepNanos;
+    // Updates the animals on several threads; null to update them on this one.
+    private TiledStepEngine tiledEngine;
+    // Updates the animals synchronously; null unless synchronous is set.
+    private SynchronousStepEngine synchronousEngine;
+    // Whether every animal acts on the field as it was at the start of the step.
+    private boolean synchronous;
+    // Times the phases of each step; null when steps are not timed.
+    private StepProfiler profiler;
+    // The time the animals of each species spent acting this step, by
+    // species id, while profiling.
+    private long[] actNanos;
+    // Records every step for replay; null when steps are not recorded.
+    private FieldHistory history;
 
     /**
      * Construct a simulation field with default size.
@@ -45,32 +69,103 @@ public class Simulator {
     }
 
     /**
-     * Create a simulation field with the given size.
+     * Create a simulation field with the given size, shown in a window.
      *
      * @param depth Depth of the field. Must be greater than zero.
      * @param width Width of the field. Must be greater than zero.
      */
     public Simulator(int depth, int width) {
+        this(depth, width, true);
+    }
+
+    /**
+     * Create a simulation field with the given size.
+     * A headless simulation has no window and does not pause between
+     * steps; observers may still be added to it.
+     *
+     * @param depth    Depth of the field. Must be greater than zero.
+     * @param width    Width of the field. Must be greater than zero.
+     * @param showView Whether to display the simulation in a window.
+     */
+    public Simulator(int depth, int width, boolean showView) {
+        this(contextFor(depth, width), showView);
+    }
+
+    /**
+     * Create a simulation of the given run, which owns the field, the
+     * random generator and the species. Simulators of different contexts
+     * can be run on different threads at the same time.
+     *
+     * @param context  The run to simulate.
+     * @param showView Whether to display the simulation in a window.
+     */
+    public Simulator(SimulationContext context, boolean showView) {
+        this(context, showView, true);
+    }
+
+    /**
+     * Create a simulation of the given run, either populated with a
+     * starting position or left empty for a checkpoint to be loaded into.
+     *
+     * @param context  The run to simulate.
+     * @param showView Whether to display the simulation in a window.
+     * @param populate Whether to set up a starting position.
+     */
+    private Simulator(SimulationContext context, boolean showView, boolean populate) {
+        this.context = context;
+        field = context.getField();
+        animals = new AgentStore(field.getAnimalPool());
+        scheduler = new ActivityScheduler();
+        stats = new FieldStats();
+        observers = new ArrayList<>();
+
+        if (showView) {
+            // Create a view of the state of each location in the field.
+            SimulatorView view = new SimulatorView(field.getDepth(), field.getWidth());
+            view.setColor(Species.RAT, Color.ORANGE);
+            view.setColor(Species.SNAKE, Color.BLUE);
+            view.setColor(Species.ZEBRA, Color.GREEN);
+            view.setColor(Species.LION, Color.RED);
+            view.setColor(Species.OWL, Color.PINK);
+            observers.add(view);
+            delay = DEFAULT_DELAY;
+        }
+
+        // Setup a valid starting point.
+        if (populate) {
+            reset();
+        }
+    }
+
+    /**
+     * Create an empty simulation of the given run for a checkpoint to be
+     * loaded into (see beginRestore). Its field is not populated and its
+     * observers are told nothing until endRestore.
+     *
+     * @param context  The run to simulate.
+     * @param showView Whether to display the simulation in a window.
+     * @return The simulation.
+     */
+    static Simulator forRestore(SimulationContext context, boolean showView) {
+        return new Simulator(context, showView, false);
+    }
+
+    /**
+     * Return the context of a run of the species table on a field of the
+     * given size, or of the default size if it is not valid.
+     *
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @return The context.
+     */
+    private static SimulationContext contextFor(int depth, int width) {
         if (width <= 0 || depth <= 0) {
             System.out.println("The dimensions must be greater than zero.");
             System.out.println("Using default values.");
             depth = DEFAULT_DEPTH;
             width = DEFAULT_WIDTH;
         }
-
-        animals = new ArrayList<>();
-        field = new Field(depth, width);
-
-        // Create a view of the state of each location in the field.
-        view = new SimulatorView(depth, width);
-        view.setColor(Rat.class, Color.ORANGE);
-        view.setColor(Snake.class, Color.BLUE);
-        view.setColor(Zebra.class, Color.GREEN);
-        view.setColor(Lion.class, Color.RED);
-        view.setColor(Owl.class, Color.PINK);
-
-        // Setup a valid starting point.
-        reset();
+        return new SimulationContext(depth, width, Randomizer.getSeed());
     }
 
     /**
@@ -79,40 +174,216 @@ public class Simulator {
     public void reset() {
         step = 0;
         animals.clear();
-        populate();
+        scheduler.clear();
+        RandomGenerator previous = Randomizer.current();
+        Randomizer.setCurrent(context.getRandom());
+        try {
+            populate();
+        } finally {
+            Randomizer.setCurrent(previous);
+        }
+
+        // Show the starting state to the observers.
+        notifyObservers();
+    }
+
+    /**
+     * Register an observer to be notified after every step.
+     *
+     * @param observer The observer to add.
+     */
+    public void addObserver(SimulatorObserver observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Stop notifying the given observer, and tell it so.
+     *
+     * @param observer The observer to remove.
+     */
+    public void removeObserver(SimulatorObserver observer) {
+        if (observers.remove(observer)) {
+            observer.removed();
+        }
+    }
+
+    /**
+     * Set the number of threads each step is simulated on. The field is
+     * then updated a tile at a time by a TiledStepEngine, with a random
+     * stream per tile, so a run gives the same result for any number of
+     * threads. Zero returns to the classic update of every animal in list
+     * order on the calling thread, using the run's random generator. In
+     * synchronous mode the threads plan the animals instead, and zero
+     * means one.
+     *
+     * @param threads The number of threads, or zero for the classic update.
+     */
+    public void setThreads(int threads) {
+        if (tiledEngine != null) {
+            tiledEngine.shutdown();
+            tiledEngine = null;
+        }
+        if (synchronousEngine != null) {
+            synchronousEngine.shutdown();
+            synchronousEngine = null;
+        }
+        if (synchronous) {
+            synchronousEngine = new SynchronousStepEngine(field, Math.max(1, threads),
+                    context.getSeed());
+            synchronousEngine.setProfiling(profiler != null);
+        } else if (threads > 0) {
+            int reach = 1;
+            for (Species species : context.getSpecies()) {
+                reach = Math.max(reach, species.getSensingRange());
+            }
+            tiledEngine = new TiledStepEngine(field, threads, TiledStepEngine.tileSizeFor(reach),
+                    context.getSeed());
+            tiledEngine.setProfiling(profiler != null);
+        }
+    }
+
+    /**
+     * Return the number of threads each step is simulated on.
+     *
+     * @return The number of threads, or zero for the classic update.
+     */
+    public int getThreads() {
+        if (synchronousEngine != null) {
+            return synchronousEngine.getThreads();
+        }
+        return tiledEngine == null ? 0 : tiledEngine.getThreads();
+    }
+
+    /**
+     * Choose between updating the animals in list order, where each sees
+     * what those before it did in the same step, and updating them
+     * synchronously, where every animal acts on the field as it was at the
+     * start of the step and conflicts are settled afterwards (see
+     * SynchronousStepEngine). A synchronous run gives the same result for
+     * any number of threads, but not the same result as a run in list
+     * order. The number of threads is kept.
+     *
+     * @param synchronous Whether to update the animals synchronously.
+     */
+    public void setSynchronous(boolean synchronous) {
+        if (synchronous != this.synchronous) {
+            int threads = getThreads();
+            this.synchronous = synchronous;
+            setThreads(threads);
+        }
+    }
+
+    /**
+     * Return whether the animals are updated synchronously.
+     *
+     * @return true if every animal acts on the field as it was at the
+     * start of the step.
+     */
+    public boolean isSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Start timing the phases of every step with the given profiler, which
+     * is also added as an observer so that it can report as it goes, or
+     * stop timing them. While no profiler is set the steps are not timed.
+     *
+     * @param profiler The profiler, or null to stop profiling.
+     */
+    public void setProfiler(StepProfiler profiler) {
+        if (this.profiler != null) {
+            observers.remove(this.profiler);
+        }
+        this.profiler = profiler;
+        if (profiler != null) {
+            observers.add(profiler);
+            actNanos = new long[Species.idRange()];
+        }
+        if (tiledEngine != null) {
+            tiledEngine.setProfiling(profiler != null);
+        }
+        if (synchronousEngine != null) {
+            synchronousEngine.setProfiling(profiler != null);
+        }
+        for (SimulatorObserver observer : observers) {
+            if (observer instanceof SimulatorView) {
+                ((SimulatorView) observer).setProfiler(profiler);
+            }
+        }
+    }
+
+    /**
+     * Start recording every step in the given history, replacing any
+     * history being recorded, or stop recording. The history starts from
+     * the current step, and a view, if there is one, offers to replay it.
+     *
+     * @param history The history, or null to stop recording.
+     */
+    public void setHistory(FieldHistory history) {
+        if (this.history != null) {
+            observers.remove(this.history);
+            this.history.stopRecording();
+        }
+        this.history = history;
+        if (history != null) {
+            // Record each step before the view is told of it.
+            observers.add(0, history);
+            history.stepCompleted(step, field, stats);
+        }
+        for (SimulatorObserver observer : observers) {
+            if (observer instanceof SimulatorView) {
+                ((SimulatorView) observer).setHistory(history);
+            }
+        }
+    }
+
+    /**
+     * Return the history the steps are recorded in.
+     *
+     * @return The history, or null if the steps are not recorded.
+     */
+    public FieldHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Return the profiler timing the steps.
+     *
+     * @return The profiler, or null if the steps are not timed.
+     */
+    public StepProfiler getProfiler() {
+        return profiler;
+    }
 
-        // Show the starting state in the view.
-        view.showStatus(step, field);
+    /**
+     * Set the pause after each step of simulate().
+     *
+     * @param delay The pause in milliseconds; zero for no pause.
+     */
+    public void setDelay(int delay) {
+        this.delay = Math.max(0, delay);
     }
 
     /**
-     * Randomly populate the field with foxes and rabbits.
+     * Randomly populate the field with animals. Each location is given
+     * the first species, in table order, whose creation probability it
+     * passes, or left empty.
      */
     private void populate() {
-        Random rand = Randomizer.getRandom();
+        Random rand = context.getRandom();
+        List<Species> table = context.getSpecies();
         field.clear();
         for (int row = 0; row < field.getDepth(); row++) {
             for (int col = 0; col < field.getWidth(); col++) {
-                if (rand.nextDouble() <= SNAKE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Snake snake = new Snake(true, field, location);
-                    animals.add(snake);
-                } else if (rand.nextDouble() <= RAT_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Rat rat = new Rat(true, field, location);
-                    animals.add(rat);
-                } else if (rand.nextDouble() <= ZEBRA_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Zebra zebra = new Zebra(true, field, location);
-                    animals.add(zebra);
-                } else if (rand.nextDouble() <= OWL_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Owl owl = new Owl(true, field, location);
-                    animals.add(owl);
-                } else if (rand.nextDouble() <= LION_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Lion lion = new Lion(true, field, location);
-                    animals.add(lion);
+                for (Species species : table) {
+                    if (species.getCreationProbability() > 0
+                            && rand.nextDouble() <= species.getCreationProbability()) {
+                        Location location = field.locationAt(row, col);
+                        Animal animal = Animal.create(species, true, field, location);
+                        animals.add(animal);
+                        scheduler.schedule(animal);
+                        break;
+                    }
                 }
                 // else leave the location empty.
             }
@@ -134,36 +405,249 @@ public class Simulator {
      * @param numSteps The number of steps to run for.
      */
     public void simulate(int numSteps) {
-        for (int step = 1; step <= numSteps && view.isViable(field); step++) {
+        long start = System.nanoTime();
+        int completed = 0;
+        for (int step = 1; step <= numSteps && isViable(); step++) {
             simulateOneStep();
-            delay();   // uncomment this to run more slowly
-
+            completed++;
+            if (delay > 0) {
+                delay();
+            }
         }
+        long elapsed = System.nanoTime() - start;
+        stepsPerSecond = elapsed > 0 ? completed * 1e9 / elapsed : 0;
     }
 
     /**
      * Run the simulation from its current state for a single step.
-     * Iterate over the whole field updating the state of each
-     * fox and rabbit.
+     * Every animal with something to do at this step acts; the others
+     * sleep until they next have (see ActivityScheduler).
      */
     public void simulateOneStep() {
+        SimulationEvents.Step event = SimulationEvents.beginStep();
+        long start = System.nanoTime();
+        long time = start;
         step++;
         field.timeSkip();
-        // Provide space for newborn animals.
-        List<Animal> newAnimals = new ArrayList<>();
-        // Let all rabbits act.
-        for (Iterator<Animal> it = animals.iterator(); it.hasNext(); ) {
-            Animal animal = it.next();
-            animal.act(newAnimals);
-            if (!animal.isAlive()) {
-                it.remove();
+        scheduler.beginStep(field.getClock());
+        int due = scheduler.dueCount();
+        time = lap(StepProfiler.Phase.SCHEDULE, time);
+        // Newborn animals go into the store's buffer.
+        List<Animal> newAnimals = animals.newborns();
+        if (synchronousEngine != null) {
+            synchronousEngine.step(scheduler, newAnimals);
+            if (profiler != null) {
+                synchronousEngine.takeActNanos(actNanos);
+            }
+        } else if (tiledEngine != null) {
+            tiledEngine.step(scheduler, newAnimals);
+            if (profiler != null) {
+                tiledEngine.takeActNanos(actNanos);
+            }
+        } else {
+            RandomGenerator previous = Randomizer.current();
+            Randomizer.setCurrent(context.getRandom());
+            try {
+                if (profiler == null) {
+                    for (int i = 0; i < scheduler.dueCount(); i++) {
+                        Animal animal = scheduler.due(i);
+                        // It may have been eaten earlier in the step.
+                        if (animal.isAlive()) {
+                            animal.act(newAnimals);
+                        }
+                    }
+                } else {
+                    actTimed(newAnimals);
+                }
+            } finally {
+                Randomizer.setCurrent(previous);
+            }
+        }
+        time = lap(StepProfiler.Phase.ACT, time);
+        if (profiler != null) {
+            profiler.recordActs(actNanos);
+        }
+        scheduler.endStep(newAnimals);
+        time = lap(StepProfiler.Phase.BIRTHS, time);
+
+        // Drop the dead and add the newly born animals.
+        animals.endStep();
+        // Give back the parts of a sparse field that emptied.
+        field.releaseEmptyChunks();
+        time = lap(StepProfiler.Phase.REMOVE_DEAD, time);
+
+        lastStepNanos = System.nanoTime() - start;
+        notifyObservers();
+        lap(StepProfiler.Phase.OBSERVERS, time);
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.step = step;
+                event.clock = field.getClock();
+                event.due = due;
+                for (int id = 1; id < Species.idRange(); id++) {
+                    event.population += field.getPopulation(id);
+                }
+                event.commit();
             }
         }
+    }
+
+    /**
+     * Make the animals due at this step act, as simulateOneStep does, and
+     * add up the time the animals of each species take.
+     *
+     * @param newAnimals A list to receive newly born animals.
+     */
+    private void actTimed(List<Animal> newAnimals) {
+        Arrays.fill(actNanos, 0);
+        for (int i = 0; i < scheduler.dueCount(); i++) {
+            Animal animal = scheduler.due(i);
+            if (animal.isAlive()) {
+                long start = System.nanoTime();
+                animal.act(newAnimals);
+                int id = animal.getSpeciesId();
+                if (id < actNanos.length) {
+                    actNanos[id] += System.nanoTime() - start;
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the time since the start of a phase, if profiling.
+     *
+     * @param phase The phase that has just finished.
+     * @param start The time it started, from System.nanoTime().
+     * @return The time now, when the next phase starts.
+     */
+    private long lap(StepProfiler.Phase phase, long start) {
+        if (profiler == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        profiler.record(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Return whether the simulation is still viable, timing the check if
+     * profiling.
+     *
+     * @return true if it should continue to run.
+     */
+    private boolean isViable() {
+        long start = profiler == null ? 0 : System.nanoTime();
+        boolean viable = stats.isViable(field);
+        lap(StepProfiler.Phase.STATS, start);
+        return viable;
+    }
+
+    /**
+     * Return the number of steps simulated so far.
+     *
+     * @return The current step.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Return the field being simulated.
+     *
+     * @return The field.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Return the run being simulated.
+     *
+     * @return The context of the run.
+     */
+    public SimulationContext getContext() {
+        return context;
+    }
+
+    /**
+     * Return the statistics on the field.
+     *
+     * @return The field statistics.
+     */
+    public FieldStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Return the throughput of the most recent call to simulate(),
+     * including any delay between steps.
+     *
+     * @return Steps simulated per second.
+     */
+    public double getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    /**
+     * Return how long the most recent step took, not counting the time
+     * spent notifying the observers. Observers see the step they are
+     * being notified of.
+     *
+     * @return The time, in nanoseconds.
+     */
+    public long getLastStepNanos() {
+        return lastStepNanos;
+    }
+
+    /**
+     * Return the scheduler of the animals, for saving them.
+     *
+     * @return The scheduler.
+     */
+    ActivityScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Start loading a checkpoint into a simulation made by forRestore.
+     *
+     * @param step  The step the checkpoint was taken after.
+     * @param clock The field's clock at that step.
+     */
+    void beginRestore(int step, int clock) {
+        this.step = step;
+        field.setClock(clock);
+    }
 
-        // Add the newly born foxes and rabbits to the main lists.
-        animals.addAll(newAnimals);
+    /**
+     * Add an animal loaded from a checkpoint.
+     *
+     * @param animal  The animal, already placed in the field.
+     * @param wake    The clock reading it next acts at.
+     * @param isAwake Whether it was in the scheduler's awake list.
+     */
+    void restoreAnimal(Animal animal, int wake, boolean isAwake) {
+        animals.add(animal);
+        scheduler.restore(animal, wake, isAwake);
+    }
 
-        view.showStatus(step, field);
+    /**
+     * Finish loading a checkpoint and show the result to the observers.
+     */
+    void endRestore() {
+        notifyObservers();
+    }
+
+    /**
+     * Tell every observer about the current state.
+     */
+    private void notifyObservers() {
+        // Indexed, so that no iterator is made at every step.
+        for (int i = 0; i < observers.size(); i++) {
+            observers.get(i).stepCompleted(step, field, stats);
+        }
     }
 
     /**
@@ -171,9 +655,186 @@ public class Simulator {
      */
     private void delay() {
         try {
-            Thread.sleep(60);
+            Thread.sleep(delay);
         } catch (InterruptedException ie) {
             // wake up
         }
     }
+
+    /**
+     * Run a headless simulation from the command line and report its
+     * throughput. Every option is optional:
+     *
+     *   --steps=N            the step to run to (4000)
+     *   --depth=N --width=N  the size of the field (80 by 120)
+     *   --threads=N          the threads to step on; zero for the classic
+     *                        single-threaded update (0)
+     *   --sync               update synchronously (see setSynchronous)
+     *   --checkpoint=FILE    save the run to FILE, resuming from it if it
+     *                        exists (see Checkpoint)
+     *   --checkpoint-every=N the steps between checkpoints (1000)
+     *   --profile-every=N    the steps between lines of a profile of the
+     *                        steps; zero for none (0)
+     *   --metrics-port=N     the port of localhost to serve metrics on
+     *                        while the run lasts (see MetricsServer); zero
+     *                        for none (0)
+     *   --history-mb=N       the megabytes of FieldHistory to record the
+     *                        run in; zero for none (0)
+     *
+     * A resumed run keeps the size, threads and kind of update it was
+     * saved with, unless --threads or --sync is given, and finishes the
+     * remaining steps. A profiled run ends with a table of the time taken
+     * by each phase of a step.
+     *
+     * @param args The options, each as --name=value, or --sync.
+     * @throws IOException If the checkpoint cannot be read or the metrics
+     *                     port cannot be bound.
+     * @throws IllegalArgumentException If an option is not recognised, or
+     *                                  its value is missing or malformed.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args, "steps", "depth", "width", "threads",
+                "sync", "checkpoint", "checkpoint-every", "profile-every", "metrics-port",
+                "history-mb");
+        int numSteps = intOption(options, "steps", 4000);
+        int depth = intOption(options, "depth", DEFAULT_DEPTH);
+        int width = intOption(options, "width", DEFAULT_WIDTH);
+        int threads = intOption(options, "threads", 0);
+        boolean synchronous = flagOption(options, "sync");
+        String checkpointName = stringOption(options, "checkpoint");
+        Path checkpoint = checkpointName == null ? null : Paths.get(checkpointName);
+        int interval = intOption(options, "checkpoint-every", 1000);
+        int profileInterval = intOption(options, "profile-every", 0);
+        int metricsPort = intOption(options, "metrics-port", 0);
+        int historyMegabytes = intOption(options, "history-mb", 0);
+        Simulator simulator;
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            // Keep the threads it was saved with unless told otherwise.
+            simulator = Checkpoint.read(checkpoint, false);
+            System.out.println("Resumed at step " + simulator.getStep());
+            if (synchronous) {
+                simulator.setSynchronous(true);
+            }
+            if (options.containsKey("threads")) {
+                simulator.setThreads(threads);
+            }
+        } else {
+            simulator = new Simulator(depth, width, false);
+            simulator.setSynchronous(synchronous);
+            simulator.setThreads(threads);
+        }
+        if (checkpoint != null) {
+            simulator.addObserver(Checkpoint.every(simulator, interval, checkpoint));
+        }
+        if (profileInterval > 0) {
+            StepProfiler profiler = new StepProfiler();
+            profiler.setReport(profileInterval, System.out::println);
+            simulator.setProfiler(profiler);
+        }
+        if (historyMegabytes > 0) {
+            simulator.setHistory(new FieldHistory(FieldHistory.DEFAULT_KEYFRAME_INTERVAL,
+                    (long) historyMegabytes << 20));
+        }
+        MetricsServer metrics = null;
+        if (metricsPort > 0) {
+            metrics = new MetricsServer(simulator, metricsPort);
+            System.out.println("Metrics at http://localhost:" + metrics.getPort() + MetricsServer.PATH);
+        }
+        try {
+            simulator.simulate(numSteps - simulator.getStep());
+        } finally {
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+        System.out.println("Steps: " + simulator.getStep());
+        System.out.printf("Steps/sec: %.1f%n", simulator.getStepsPerSecond());
+        System.out.println("Population: "
+                + simulator.getStats().getPopulationDetails(simulator.getField()));
+        System.out.println("Pooled: " + simulator.getField().getAnimalPool().getPoolDetails());
+        if (simulator.getHistory() != null) {
+            FieldHistory history = simulator.getHistory();
+            System.out.printf("History: steps %d to %d, %.1f MB%n", history.getFirstStep(),
+                    history.getLastStep(), history.getRecordedBytes() / 1048576.0);
+        }
+        if (simulator.getProfiler() != null) {
+            System.out.print(simulator.getProfiler().summary());
+        }
+    }
+
+    /**
+     * Read command line options of the form --name=value, or --name for
+     * an option without a value.
+     *
+     * @param args  The command line.
+     * @param names The options recognised.
+     * @return The value of each option given, or null if it has none.
+     * @throws IllegalArgumentException If an argument is not a recognised option.
+     */
+    private static Map<String, String> parseOptions(String[] args, String... names) {
+        List<String> known = Arrays.asList(names);
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            int end = equals < 0 ? arg.length() : equals;
+            if (!arg.startsWith("--") || !known.contains(arg.substring(2, end))) {
+                throw new IllegalArgumentException("Unknown option " + arg
+                        + "; expected one of --" + String.join(", --", known));
+            }
+            options.put(arg.substring(2, end), equals < 0 ? null : arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Return whether an option that takes no value was given.
+     *
+     * @param options The options given.
+     * @param name    The option.
+     * @return true if it was given.
+     * @throws IllegalArgumentException If it was given a value.
+     */
+    private static boolean flagOption(Map<String, String> options, String name) {
+        if (options.get(name) != null) {
+            throw new IllegalArgumentException("--" + name + " takes no value: " + options.get(name));
+        }
+        return options.containsKey(name);
+    }
+
+    /**
+     * Return the value of an option that needs one.
+     *
+     * @param options The options given.
+     * @param name    The option.
+     * @return Its value, or null if it was not given.
+     * @throws IllegalArgumentException If it was given without a value.
+     */
+    private static String stringOption(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (options.containsKey(name) && (value == null || value.isEmpty())) {
+            throw new IllegalArgumentException("--" + name + " needs a value");
+        }
+        return value;
+    }
+
+    /**
+     * Return the value of a whole-number option.
+     *
+     * @param options      The options given.
+     * @param name         The option.
+     * @param defaultValue Its value if it was not given.
+     * @return Its value.
+     * @throws IllegalArgumentException If the value is missing or not a number.
+     */
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = stringOption(options, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " needs a whole number: " + value);
+        }
+    }
 }
@@ -0,0 +1,27 @@
+/**
+ * An observer of a running simulation. The simulator notifies every
+ * registered observer after the field has been reset and after each
+ * completed step. The graphical SimulatorView is one such observer; a
+ * simulation with no observers runs headless.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public interface SimulatorObserver {
+    /**
+     * Called after the simulation has reached a new state.
+     *
+     * @param step  The step that has just been completed.
+     * @param field The field after the step.
+     * @param stats Statistics on the field.
+     */
+    void stepCompleted(int step, Field field, FieldStats stats);
+
+    /**
+     * Called when the observer is removed from the simulator, so that it
+     * can let go of whatever it holds while observing. Does nothing by
+     * default.
+     */
+    default void removed() {
+    }
+}
@@ -1,7 +1,12 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A graphical view of the simulation grid.
@@ -10,16 +15,47 @@ import java.util.Map;
  * Colors for each type of species can be defined using the
  * setColor method.
  *
- * @author David J. Barnes and Michael Kölling
- * @version 2016.02.29
+ * Each step is drawn by the simulation thread into an image with one
+ * pixel per location, written directly as packed RGB ints, with the rows
+ * split between threads. Finished frames are handed to the Swing event
+ * thread through a lock-free exchange, and the event thread shows the
+ * newest one at most MAX_FPS times a second, scaled up to the window.
+ * Neither thread ever waits for the other; frames the event thread has
+ * no time to show are dropped.
+ *
+ * Only the cells that have changed are drawn. The field records them, and
+ * each frame keeps a list of the cells that have changed since it was last
+ * drawn, as the three frames take turns. Likewise only the part of the
+ * window covering the cells that changed since the last frame shown is
+ * repainted.
+ *
+ * Given a FieldHistory, the view also shows a replay bar: a slider to seek
+ * to any recorded step and buttons to play backwards or forwards from it,
+ * drawn from the history on the event thread. Steps the simulation
+ * completes meanwhile are not drawn, and going back to live starts again
+ * from a whole frame.
+ *
+ * @author David J. Barnes and Michael Kölling, edited by Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
  */
-public class SimulatorView extends JFrame {
+public class SimulatorView extends JFrame implements SimulatorObserver {
     // Colors used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
 
     // Color used for objects that have no defined color.
     private static final Color UNKNOWN_COLOR = Color.gray;
 
+    // The most frames shown per second.
+    private static final int MAX_FPS = 30;
+    // The number of rows drawn by one task when drawing a frame.
+    private static final int ROWS_PER_TASK = 64;
+    // The number of steps whose changed area is remembered.
+    private static final int HISTORY = 64;
+    // The number of steps between profile lines shown in the info label.
+    private static final int PROFILE_INTERVAL = 50;
+    // The number of steps a replay moves per second.
+    private static final int REPLAY_STEPS_PER_SECOND = 20;
+
     private final String STEP_PREFIX = "Step: ";
     private final String POPULATION_PREFIX = "Population: ";
     private final JLabel stepLabel;
@@ -27,10 +63,53 @@ public class SimulatorView extends JFrame {
     private final JLabel infoLabel;
     private final FieldView fieldView;
 
-    // A map for storing colors for participants in the simulation
-    private final Map<Class, Color> colors;
-    // A statistics object computing and storing simulation information
-    private final FieldStats stats;
+    // RGB values for participants in the simulation, indexed by species id.
+    private int[] colors;
+    // The threads that draw the rows of a frame.
+    private final ForkJoinPool pool;
+    // The frame being drawn by the simulation thread.
+    private Frame back;
+    // The newest finished frame, or a spare one already shown.
+    private final AtomicReference<Frame> exchange;
+    // The frame on screen, owned by the event thread.
+    private Frame front;
+    // All three frames.
+    private final Frame[] frames;
+    // The number of frames drawn so far.
+    private int frameCount;
+    // The field whose changes are being drawn, and the view's consumer of
+    // its changes.
+    private Field trackedField;
+    private int changeConsumer;
+    // Whether the next frame must be drawn whole, whatever has changed.
+    private boolean drawWhole;
+    // The rows and columns changed at each of the last HISTORY frames, as
+    // top, left, bottom and right; an empty area has top > bottom.
+    private final int[] changedAreas;
+    // The number of the last frame put on screen.
+    private volatile int shownSequence;
+    // Times drawing and painting; null when they are not timed.
+    private volatile StepProfiler profiler;
+    // Held while drawing a frame, by the simulation thread or, when
+    // replaying, the event thread.
+    private final Object drawLock;
+    // The history replayed, or null; the playback and the replay bar are
+    // used only on the event thread.
+    private FieldHistory history;
+    private FieldHistory.Playback playback;
+    private final JPanel replayBar;
+    private JSlider replaySlider;
+    // Whether a replay is on screen instead of the live field.
+    private volatile boolean replaying;
+    // Moves the replay one step per tick, in replayDirection.
+    private final Timer replayTimer;
+    private int replayDirection;
+    // Set while the slider is moved by the view rather than the user.
+    private boolean movingSlider;
+    // Puts the newest frame on screen, while the view is observing.
+    private final Timer repaintTimer;
+    // Set once the window is disposed of; guarded by drawLock.
+    private boolean disposed;
 
     /**
      * Create a view of the given width and height.
@@ -39,8 +118,18 @@ public class SimulatorView extends JFrame {
      * @param width  The simulation's width.
      */
     public SimulatorView(int height, int width) {
-        stats = new FieldStats();
-        colors = new LinkedHashMap<>();
+        colors = new int[Species.idRange()];
+        Arrays.fill(colors, UNKNOWN_COLOR.getRGB());
+        colors[Species.EMPTY] = EMPTY_COLOR.getRGB();
+        pool = ForkJoinPool.commonPool();
+        back = new Frame(height, width);
+        exchange = new AtomicReference<>(new Frame(height, width));
+        front = new Frame(height, width);
+        frames = new Frame[]{back, exchange.get(), front};
+        changedAreas = new int[HISTORY * 4];
+        drawLock = new Object();
+        replayTimer = new Timer(1000 / REPLAY_STEPS_PER_SECOND, e -> replayStep());
+        repaintTimer = new Timer(1000 / MAX_FPS, e -> showNewestFrame());
 
         setTitle("Snake and Rat Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
@@ -48,6 +137,8 @@ public class SimulatorView extends JFrame {
         population = new JLabel(POPULATION_PREFIX, JLabel.CENTER);
 
         setLocation(100, 50);
+        // Closing the window disposes of it, which stops its timers.
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
         fieldView = new FieldView(height, width);
 
@@ -58,9 +149,16 @@ public class SimulatorView extends JFrame {
         infoPane.add(infoLabel, BorderLayout.CENTER);
         contents.add(infoPane, BorderLayout.NORTH);
         contents.add(fieldView, BorderLayout.CENTER);
-        contents.add(population, BorderLayout.SOUTH);
+        JPanel southPane = new JPanel(new BorderLayout());
+        southPane.add(population, BorderLayout.NORTH);
+        replayBar = new JPanel(new BorderLayout());
+        replayBar.setVisible(false);
+        southPane.add(replayBar, BorderLayout.SOUTH);
+        contents.add(southPane, BorderLayout.SOUTH);
         pack();
         setVisible(true);
+
+        repaintTimer.start();
     }
 
     /**
@@ -70,7 +168,32 @@ public class SimulatorView extends JFrame {
      * @param color       The color to be used for the given class.
      */
     public void setColor(Class animalClass, Color color) {
-        colors.put(animalClass, color);
+        setColor(Species.forClass(animalClass), color);
+    }
+
+    /**
+     * Define a color to be used for a given species.
+     *
+     * @param species The species.
+     * @param color   The color to be used for the given species.
+     */
+    public void setColor(Species species, Color color) {
+        setColor(species.getId(), color);
+    }
+
+    /**
+     * Define a color to be used for the species with the given id.
+     *
+     * @param species The species id.
+     * @param color   The color to be used for that species.
+     */
+    private void setColor(int species, Color color) {
+        if (species >= colors.length) {
+            int oldLength = colors.length;
+            colors = Arrays.copyOf(colors, species + 1);
+            Arrays.fill(colors, oldLength, colors.length, UNKNOWN_COLOR.getRGB());
+        }
+        colors[species] = color.getRGB();
     }
 
     /**
@@ -81,58 +204,470 @@ public class SimulatorView extends JFrame {
     }
 
     /**
-     * Show the current status of the field.
+     * Start timing the drawing of frames and their painting on screen with
+     * the given profiler, or stop timing them. The profiler's report is
+     * replaced with a line in the info label every PROFILE_INTERVAL steps.
+     *
+     * @param profiler The profiler, or null to stop timing.
+     */
+    public void setProfiler(StepProfiler profiler) {
+        this.profiler = profiler;
+        if (profiler != null) {
+            profiler.setReport(PROFILE_INTERVAL,
+                    line -> SwingUtilities.invokeLater(() -> setInfoText(line)));
+        }
+    }
+
+    /**
+     * Show the state of the field once the simulator has completed a step.
      *
      * @param step  Which iteration step it is.
      * @param field The field whose status is to be displayed.
+     * @param stats Statistics on the field.
+     */
+    @Override
+    public void stepCompleted(int step, Field field, FieldStats stats) {
+        StepProfiler timer = profiler;
+        if (timer == null) {
+            showStatus(step, field, stats);
+        } else {
+            long start = System.nanoTime();
+            showStatus(step, field, stats);
+            timer.record(StepProfiler.Phase.DRAW, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Show the current status of the field. The frame is drawn on the
+     * calling thread and shown by the event thread when it next can.
+     *
+     * @param step  Which iteration step it is.
+     * @param field The field whose status is to be displayed.
+     * @param stats Statistics on the field.
+     */
+    public void showStatus(int step, Field field, FieldStats stats) {
+        if (replaying) {
+            return;
+        }
+        synchronized (drawLock) {
+            if (!replaying && !disposed) {
+                if (!repaintTimer.isRunning()) {
+                    // Observing again after being removed.
+                    repaintTimer.start();
+                }
+                drawStatus(step, field, stats);
+            }
+        }
+    }
+
+    /**
+     * Stop showing steps once the simulator no longer sends them: stop
+     * the timers and stop tracking the changes to the field. The window
+     * stays open, and shows steps again if the view is added back.
      */
-    public void showStatus(int step, Field field) {
-        if (!isVisible()) {
-            setVisible(true);
+    @Override
+    public void removed() {
+        synchronized (drawLock) {
+            release();
         }
+    }
 
-        stepLabel.setText(STEP_PREFIX + step);
-        stats.reset();
+    /**
+     * Close the window, stopping its timers and the tracking of changes to
+     * the field. Steps sent to the view after this are ignored.
+     */
+    @Override
+    public void dispose() {
+        synchronized (drawLock) {
+            disposed = true;
+            release();
+        }
+        super.dispose();
+    }
 
-        fieldView.preparePaint();
+    /**
+     * Stop the timers and stop tracking the changes to the field. Must be
+     * called holding the drawLock.
+     */
+    private void release() {
+        repaintTimer.stop();
+        replayTimer.stop();
+        if (trackedField != null) {
+            trackedField.stopTrackingChanges(changeConsumer);
+            trackedField = null;
+        }
+    }
 
-        for (int row = 0; row < field.getDepth(); row++) {
-            for (int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if (animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
-                } else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
+    /**
+     * Draw the current status of the field into the back frame and
+     * publish it.
+     *
+     * @param step  Which iteration step it is.
+     * @param field The field whose status is to be displayed.
+     * @param stats Statistics on the field.
+     */
+    private void drawStatus(int step, Field field, FieldStats stats) {
+        int sequence = ++frameCount;
+        int area = (sequence % HISTORY) * 4;
+        if (field != trackedField || drawWhole) {
+            // Start again from a blank picture of the field.
+            if (field != trackedField) {
+                if (trackedField != null) {
+                    trackedField.stopTrackingChanges(changeConsumer);
                 }
+                trackedField = field;
+                changeConsumer = field.startTrackingChanges();
+            } else {
+                field.drainChanges(changeConsumer, cell -> { });
             }
+            drawWhole = false;
+            for (Frame frame : frames) {
+                frame.redrawAll = true;
+            }
+            setArea(area, 0, 0, field.getDepth() - 1, field.getWidth() - 1);
+        } else {
+            setArea(area, Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1);
+            int width = field.getWidth();
+            field.drainChanges(changeConsumer, cell -> {
+                for (Frame frame : frames) {
+                    frame.addStale(cell);
+                }
+                int row = cell / width;
+                int col = cell - row * width;
+                changedAreas[area] = Math.min(changedAreas[area], row);
+                changedAreas[area + 1] = Math.min(changedAreas[area + 1], col);
+                changedAreas[area + 2] = Math.max(changedAreas[area + 2], row);
+                changedAreas[area + 3] = Math.max(changedAreas[area + 3], col);
+            });
         }
-        stats.countFinished();
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
-        fieldView.repaint();
+        back.sequence = sequence;
+        back.step = step;
+        back.population = stats.getPopulationDetails(field);
+        if (back.redrawAll) {
+            pool.invoke(new RowTask(back.pixels, colors, field::getSpeciesAt, field.getWidth(),
+                    0, field.getDepth()));
+        } else {
+            int unknown = UNKNOWN_COLOR.getRGB();
+            for (int i = 0; i < back.staleCount; i++) {
+                int species = field.getSpeciesAt(back.stale[i]);
+                back.pixels[back.stale[i]] = species < colors.length ? colors[species] : unknown;
+            }
+        }
+        back.redrawAll = false;
+        back.staleCount = 0;
+        setRepaintArea(back, field.getDepth(), field.getWidth());
+        // Publish the frame and take back whichever one it replaces.
+        back = exchange.getAndSet(back);
     }
 
     /**
-     * @return The color to be used for a given class of animal.
+     * Show a replay bar for a history of the field, or take it away. The
+     * history must be recording the field this view shows.
+     *
+     * @param history The history, or null for none.
      */
-    private Color getColor(Class animalClass) {
-        Color col = colors.get(animalClass);
-        if (col == null) {
-            // no color defined for this class
-            return UNKNOWN_COLOR;
-        } else {
-            return col;
+    public void setHistory(FieldHistory history) {
+        SwingUtilities.invokeLater(() -> {
+            goLive();
+            this.history = history;
+            playback = history == null ? null : history.playback();
+            replayBar.removeAll();
+            if (history != null) {
+                replaySlider = new JSlider(0, 0, 0);
+                replaySlider.addChangeListener(e -> {
+                    if (!movingSlider) {
+                        replayTimer.stop();
+                        showReplay(replaySlider.getValue());
+                    }
+                });
+                JPanel buttons = new JPanel();
+                buttons.add(replayButton("<<", () -> play(-1)));
+                buttons.add(replayButton("||", replayTimer::stop));
+                buttons.add(replayButton(">>", () -> play(1)));
+                buttons.add(replayButton("Live", this::goLive));
+                replayBar.add(buttons, BorderLayout.WEST);
+                replayBar.add(replaySlider, BorderLayout.CENTER);
+            }
+            replayBar.setVisible(history != null);
+            pack();
+        });
+    }
+
+    /**
+     * @param label  The label of a button of the replay bar.
+     * @param action What it does.
+     * @return The button.
+     */
+    private static JButton replayButton(String label, Runnable action) {
+        JButton button = new JButton(label);
+        button.addActionListener(e -> action.run());
+        return button;
+    }
+
+    /**
+     * Play the replay one step at a time from the step shown, or from the
+     * latest step if the live field is shown.
+     *
+     * @param direction 1 to play forwards, -1 to play backwards.
+     */
+    private void play(int direction) {
+        if (!replaying) {
+            showReplay(history.getLastStep());
+        }
+        replayDirection = direction;
+        replayTimer.start();
+    }
+
+    /**
+     * Move the replay one step on, stopping at either end of the history.
+     */
+    private void replayStep() {
+        int step = playback.getStep();
+        if (showReplay(step + replayDirection) == step) {
+            replayTimer.stop();
+        }
+    }
+
+    /**
+     * Stop replaying and show the live field again from its next step.
+     */
+    private void goLive() {
+        replayTimer.stop();
+        if (replaying) {
+            // Show the latest step recorded until the simulation moves on.
+            showReplay(history.getLastStep());
+            synchronized (drawLock) {
+                drawWhole = true;
+                replaying = false;
+            }
         }
     }
 
     /**
-     * Determine whether the simulation should continue to run.
+     * Draw a step of the history into the back frame and publish it.
+     * Runs on the event thread.
      *
-     * @return true If there is more than one species alive.
+     * @param step The step to show.
+     * @return The step shown, which is the nearest recorded.
      */
-    public boolean isViable(Field field) {
-        return stats.isViable(field);
+    private int showReplay(int step) {
+        int shown = playback.seek(step);
+        if (shown < 0) {
+            return shown;
+        }
+        synchronized (drawLock) {
+            replaying = true;
+            int depth = playback.getDepth();
+            int width = playback.getWidth();
+            int sequence = ++frameCount;
+            setArea((sequence % HISTORY) * 4, 0, 0, depth - 1, width - 1);
+            back.sequence = sequence;
+            back.step = shown;
+            back.population = playback.getPopulationDetails();
+            pool.invoke(new RowTask(back.pixels, colors, playback::getSpeciesAt, width, 0, depth));
+            // The live frames must be drawn whole once the replay is over.
+            back.redrawAll = true;
+            back.staleCount = 0;
+            setRepaintArea(back, depth, width);
+            back = exchange.getAndSet(back);
+        }
+        movingSlider = true;
+        replaySlider.setMinimum(history.getFirstStep());
+        replaySlider.setMaximum(history.getLastStep());
+        replaySlider.setValue(shown);
+        movingSlider = false;
+        return shown;
+    }
+
+    /**
+     * Set one of the remembered changed areas.
+     *
+     * @param area   The index of the area's top in changedAreas.
+     * @param top    The top row.
+     * @param left   The left column.
+     * @param bottom The bottom row.
+     * @param right  The right column.
+     */
+    private void setArea(int area, int top, int left, int bottom, int right) {
+        changedAreas[area] = top;
+        changedAreas[area + 1] = left;
+        changedAreas[area + 2] = bottom;
+        changedAreas[area + 3] = right;
+    }
+
+    /**
+     * Work out which part of the field must be repainted when a frame is
+     * put on screen: everything that changed after the last frame known to
+     * be on screen, up to this one. The frame on screen by the time this
+     * one is shown can only be newer, so this covers it.
+     *
+     * @param frame The frame about to be published.
+     * @param depth The depth of the field drawn.
+     * @param width The width of the field drawn.
+     */
+    private void setRepaintArea(Frame frame, int depth, int width) {
+        int shown = shownSequence;
+        if (frame.sequence - shown > HISTORY) {
+            frame.top = 0;
+            frame.left = 0;
+            frame.bottom = depth - 1;
+            frame.right = width - 1;
+            return;
+        }
+        frame.top = Integer.MAX_VALUE;
+        frame.left = Integer.MAX_VALUE;
+        frame.bottom = -1;
+        frame.right = -1;
+        for (int sequence = shown + 1; sequence <= frame.sequence; sequence++) {
+            int area = (sequence % HISTORY) * 4;
+            frame.top = Math.min(frame.top, changedAreas[area]);
+            frame.left = Math.min(frame.left, changedAreas[area + 1]);
+            frame.bottom = Math.max(frame.bottom, changedAreas[area + 2]);
+            frame.right = Math.max(frame.right, changedAreas[area + 3]);
+        }
+    }
+
+    /**
+     * Put the newest finished frame on screen, if there is one that has
+     * not been shown yet. Runs on the event thread.
+     */
+    private void showNewestFrame() {
+        // Only a thread drawing under drawLock changes the exchange, and
+        // only to a newer frame, so it is safe to look before taking.
+        if (exchange.get().sequence > front.sequence) {
+            front = exchange.getAndSet(front);
+            shownSequence = front.sequence;
+            if (!isVisible()) {
+                setVisible(true);
+            }
+            stepLabel.setText(STEP_PREFIX + front.step);
+            population.setText(POPULATION_PREFIX + front.population);
+            if (front.top <= front.bottom) {
+                fieldView.repaintCells(front.top, front.left, front.bottom, front.right);
+            }
+        }
+        if (history != null && !replaying) {
+            movingSlider = true;
+            replaySlider.setMinimum(Math.max(0, history.getFirstStep()));
+            replaySlider.setMaximum(Math.max(0, history.getLastStep()));
+            replaySlider.setValue(replaySlider.getMaximum());
+            movingSlider = false;
+        }
+    }
+
+    /**
+     * One drawn state of the field, with the labels that go with it.
+     */
+    private static class Frame {
+        // The field drawn with one pixel per location.
+        private final BufferedImage image;
+        // The pixels of the image, row-major.
+        private final int[] pixels;
+        // The number of the frame; 0 for one never drawn. Volatile as the
+        // event thread may look at it while the frame is being reused.
+        private volatile int sequence;
+        // The step shown.
+        private int step;
+        // The population details shown.
+        private String population = "";
+        // The rows and columns to repaint when the frame is put on screen.
+        private int top;
+        private int left;
+        private int bottom;
+        private int right;
+        // The cells that have changed since the frame was last drawn. Only
+        // the simulation thread uses these.
+        private final int[] stale;
+        private int staleCount;
+        // Whether so much has changed that the whole frame must be drawn.
+        private boolean redrawAll = true;
+
+        /**
+         * Create a blank frame.
+         *
+         * @param height The simulation's height.
+         * @param width  The simulation's width.
+         */
+        Frame(int height, int width) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            Arrays.fill(pixels, EMPTY_COLOR.getRGB());
+            // Past this many changes it is cheaper to draw every cell.
+            stale = new int[Math.max(1, pixels.length / 8)];
+        }
+
+        /**
+         * Record that a cell has changed since the frame was last drawn.
+         *
+         * @param cell The row-major index of the cell.
+         */
+        void addStale(int cell) {
+            if (staleCount < stale.length) {
+                stale[staleCount++] = cell;
+            } else {
+                redrawAll = true;
+            }
+        }
+    }
+
+    /**
+     * Draws a range of rows of the field, or of a step of its history,
+     * into a frame, splitting the range between threads.
+     */
+    private static class RowTask extends RecursiveAction {
+        // A task only lives for the frame it draws and is never serialized.
+        private static final long serialVersionUID = 1L;
+
+        // The pixels of the frame.
+        private final int[] pixels;
+        // The RGB value of each species id.
+        private final int[] colors;
+        // The species id in each cell of what is being drawn.
+        private final IntUnaryOperator speciesAt;
+        // The width of the field.
+        private final int width;
+        // The range of rows handled by this task.
+        private final int from;
+        private final int to;
+
+        /**
+         * Create a task for rows from to to - 1.
+         *
+         * @param pixels    The pixels of the frame.
+         * @param colors    The RGB value of each species id.
+         * @param speciesAt The species id in each cell.
+         * @param width     The width of the field.
+         * @param from      The first row to draw.
+         * @param to        One past the last row to draw.
+         */
+        RowTask(int[] pixels, int[] colors, IntUnaryOperator speciesAt, int width, int from, int to) {
+            this.pixels = pixels;
+            this.colors = colors;
+            this.speciesAt = speciesAt;
+            this.width = width;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Draw the rows, or split them between two tasks.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                int unknown = UNKNOWN_COLOR.getRGB();
+                int end = to * width;
+                for (int cell = from * width; cell < end; cell++) {
+                    int species = speciesAt.applyAsInt(cell);
+                    pixels[cell] = species < colors.length ? colors[species] : unknown;
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowTask(pixels, colors, speciesAt, width, from, middle),
+                        new RowTask(pixels, colors, speciesAt, width, middle, to));
+            }
+        }
     }
 
     /**
@@ -145,12 +680,10 @@ public class SimulatorView extends JFrame {
      */
     private class FieldView extends JPanel {
         private final int GRID_VIEW_SCALING_FACTOR = 6;
+        // The smallest scale at which locations are separated by grid lines.
+        private final int GRID_LINE_SCALE = 3;
         private final int gridWidth;
         private final int gridHeight;
-        Dimension size;
-        private int xScale, yScale;
-        private Graphics g;
-        private Image fieldImage;
 
         /**
          * Create a new FieldView component.
@@ -158,50 +691,56 @@ public class SimulatorView extends JFrame {
         public FieldView(int height, int width) {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
         }
 
         /**
-         * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
+         * Repaint the part of the component showing a block of locations.
+         *
+         * @param top    The top row.
+         * @param left   The left column.
+         * @param bottom The bottom row.
+         * @param right  The right column.
          */
-        public void preparePaint() {
-            if (!size.equals(getSize())) {  // if the size has changed...
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
-
-                xScale = size.width / gridWidth;
-                if (xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
-                }
-                yScale = size.height / gridHeight;
-                if (yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
-                }
-            }
+        public void repaintCells(int top, int left, int bottom, int right) {
+            Dimension size = getSize();
+            int xScale = Math.max(1, size.width / gridWidth);
+            int yScale = Math.max(1, size.height / gridHeight);
+            repaint(left * xScale, top * yScale,
+                    (right - left + 1) * xScale, (bottom - top + 1) * yScale);
         }
 
         /**
-         * Paint on grid location on this field in a given color.
+         * The field view component needs to be redisplayed. Scale the
+         * frame on screen up to the component, with a line between
+         * locations when they are large enough.
          */
-        public void drawMark(int x, int y, Color color) {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale - 1, yScale - 1);
+        public void paintComponent(Graphics g) {
+            StepProfiler timer = profiler;
+            long start = timer == null ? 0 : System.nanoTime();
+            paintFrame(g);
+            if (timer != null) {
+                timer.record(StepProfiler.Phase.PAINT, System.nanoTime() - start);
+            }
         }
 
         /**
-         * The field view component needs to be redisplayed. Copy the
-         * internal image to screen.
+         * Scale the frame on screen up to the component.
+         *
+         * @param g The graphics to paint with.
          */
-        public void paintComponent(Graphics g) {
-            if (fieldImage != null) {
-                Dimension currentSize = getSize();
-                if (size.equals(currentSize)) {
-                    g.drawImage(fieldImage, 0, 0, null);
-                } else {
-                    // Rescale the previous image.
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
+        private void paintFrame(Graphics g) {
+            super.paintComponent(g);
+            Dimension size = getSize();
+            int xScale = Math.max(1, size.width / gridWidth);
+            int yScale = Math.max(1, size.height / gridHeight);
+            g.drawImage(front.image, 0, 0, gridWidth * xScale, gridHeight * yScale, null);
+            if (xScale >= GRID_LINE_SCALE && yScale >= GRID_LINE_SCALE) {
+                g.setColor(EMPTY_COLOR);
+                for (int x = 1; x <= gridWidth; x++) {
+                    g.fillRect(x * xScale - 1, 0, 1, gridHeight * yScale);
+                }
+                for (int y = 1; y <= gridHeight; y++) {
+                    g.fillRect(0, y * yScale - 1, gridWidth * xScale, 1);
                 }
             }
         }
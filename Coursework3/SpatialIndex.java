@@ -0,0 +1,491 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+
+/**
+ * Finds occupants of given species near a cell without looking at every
+ * cell in range. The index keeps a layer for each species and gender:
+ * a bitmap with one bit per cell, a row of the field at a time, and a
+ * count of the occupants in each square bucket of BUCKET_SIZE cells
+ * across. A query first checks the bucket counts around the cell, and
+ * then reads the bitmaps of only the rows that could hold a nearer match,
+ * 64 cells at a time.
+ *
+ * The index of a sparse field would waste most of the memory of whole
+ * field bitmaps, so it keeps them in pages of PAGE_SIZE by PAGE_SIZE cells
+ * instead, allocated the first time something is indexed in them and
+ * released, between steps, once they are empty (see releaseEmpty). A page
+ * is one bitmap word wide, and holds, for each layer used in it, a word
+ * for each of its rows followed by the counts of its buckets.
+ *
+ * Distances are measured in steps of the eight-cell neighbourhood, so the
+ * cells within radius 1 of a cell are its neighbours. Updates are atomic,
+ * as threads updating different tiles may change bits of the same word or
+ * counts of the same bucket.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class SpatialIndex {
+    // Matches occupants of either gender.
+    public static final int ANY_GENDER = -1;
+    // The log2 of the width and depth of a bucket, in cells.
+    private static final int BUCKET_SHIFT = 4;
+    // The width and depth of a bucket, in cells.
+    public static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+    // The log2 of the width and depth of a page, in cells: one word wide.
+    private static final int PAGE_SHIFT = 6;
+    // The width and depth of a page, in cells.
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    // The number of buckets across a page.
+    private static final int PAGE_BUCKETS = PAGE_SIZE >>> BUCKET_SHIFT;
+    // The number of layers a page has room for.
+    private static final int LAYERS = Species.MAX_ID + 1 << 1;
+    // Atomic access to the words of a bitmap and the counts of a layer.
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // The depth and width of the field.
+    private final int depth;
+    private final int width;
+    // The number of bitmap words in each row of the field.
+    private final int rowWords;
+    // The number of buckets across the field.
+    private final int bucketCols;
+    // The number of buckets in the field.
+    private final int buckets;
+    // The bitmap of each layer, row by row; null until the layer is used.
+    private volatile long[][] bits;
+    // The bucket counts of each layer; null until the layer is used.
+    private volatile int[][] counts;
+    // The page at each position, row-major by page, for a sparse field;
+    // null if the field is dense, and a page is null until it is used.
+    private final Page[] pages;
+    // The number of pages across the field.
+    private final int pageCols;
+    // The directory index of every allocated page, in no particular order.
+    private int[] allocated;
+    private int allocatedCount;
+
+    /**
+     * Create an empty index for a field of the given size.
+     *
+     * @param depth  The depth of the field.
+     * @param width  The width of the field.
+     * @param sparse Whether to allocate pages only where occupants are.
+     */
+    public SpatialIndex(int depth, int width, boolean sparse) {
+        this.depth = depth;
+        this.width = width;
+        rowWords = (width + Long.SIZE - 1) >>> 6;
+        bucketCols = (width + BUCKET_SIZE - 1) >>> BUCKET_SHIFT;
+        buckets = ((depth + BUCKET_SIZE - 1) >>> BUCKET_SHIFT) * bucketCols;
+        bits = new long[0][];
+        counts = new int[0][];
+        pageCols = rowWords;
+        pages = sparse ? new Page[((depth + PAGE_SIZE - 1) >>> PAGE_SHIFT) * pageCols] : null;
+        allocated = new int[16];
+    }
+
+    /**
+     * Return the layer an occupant belongs in.
+     *
+     * @param occupant An occupant of the field.
+     * @return Its layer: its species id and, for an animal, its gender.
+     */
+    public static int layerOf(Object occupant) {
+        if (occupant instanceof Animal) {
+            Animal animal = (Animal) occupant;
+            return animal.getSpeciesId() << 1 | (animal.getGender() ? 1 : 0);
+        }
+        return Species.idOf(occupant) << 1;
+    }
+
+    /**
+     * Record an occupant in a cell.
+     *
+     * @param cell  The row-major index of the cell.
+     * @param layer The occupant's layer.
+     */
+    public void add(int cell, int layer) {
+        if (pages != null) {
+            int row = cell / width;
+            int col = cell - row * width;
+            int index = (row >>> PAGE_SHIFT) * pageCols + (col >>> PAGE_SHIFT);
+            Page page = pages[index];
+            long[] words = page == null ? null : page.layers[layer];
+            if (words == null) {
+                words = allocate(index, layer);
+                page = pages[index];
+            }
+            WORDS.getAndBitwiseOr(words, row & (PAGE_SIZE - 1), 1L << col);
+            WORDS.getAndAdd(words, PAGE_SIZE + pageBucket(row, col), 1L);
+            page.occupied.incrementAndGet();
+            return;
+        }
+        if (layer >= bits.length || bits[layer] == null) {
+            grow(layer);
+        }
+        WORDS.getAndBitwiseOr(bits[layer], wordOf(cell), 1L << cell % width);
+        COUNTS.getAndAdd(counts[layer], bucketOf(cell), 1);
+    }
+
+    /**
+     * Forget an occupant of a cell.
+     *
+     * @param cell  The row-major index of the cell.
+     * @param layer The occupant's layer.
+     */
+    public void remove(int cell, int layer) {
+        if (pages != null) {
+            int row = cell / width;
+            int col = cell - row * width;
+            Page page = pages[(row >>> PAGE_SHIFT) * pageCols + (col >>> PAGE_SHIFT)];
+            long[] words = page.layers[layer];
+            WORDS.getAndBitwiseAnd(words, row & (PAGE_SIZE - 1), ~(1L << col));
+            WORDS.getAndAdd(words, PAGE_SIZE + pageBucket(row, col), -1L);
+            page.occupied.decrementAndGet();
+            return;
+        }
+        WORDS.getAndBitwiseAnd(bits[layer], wordOf(cell), ~(1L << cell % width));
+        COUNTS.getAndAdd(counts[layer], bucketOf(cell), -1);
+    }
+
+    /**
+     * Forget every occupant.
+     */
+    public synchronized void clear() {
+        bits = new long[0][];
+        counts = new int[0][];
+        for (int i = 0; i < allocatedCount; i++) {
+            pages[allocated[i]] = null;
+        }
+        allocatedCount = 0;
+    }
+
+    /**
+     * Release the pages of a sparse index that no longer hold anything.
+     * Must not be called while a step is in progress.
+     */
+    public synchronized void releaseEmpty() {
+        int kept = 0;
+        for (int i = 0; i < allocatedCount; i++) {
+            int index = allocated[i];
+            if (pages[index].occupied.get() == 0) {
+                pages[index] = null;
+            } else {
+                allocated[kept++] = index;
+            }
+        }
+        allocatedCount = kept;
+    }
+
+    /**
+     * Return the number of pages a sparse index holds.
+     *
+     * @return The number of pages allocated, or 0 if the field is dense.
+     */
+    public synchronized int getAllocatedPages() {
+        return allocatedCount;
+    }
+
+    /**
+     * Return whether any occupant of the given species and gender, other
+     * than one in the cell itself, lies within a radius of a cell.
+     *
+     * @param cell        The cell to search around.
+     * @param radius      The greatest distance to search.
+     * @param speciesMask The species to look for, one bit per species id.
+     * @param gender      The gender to look for: 0, 1 or ANY_GENDER.
+     * @return true if there is one.
+     */
+    public boolean anyWithin(int cell, int radius, long speciesMask, int gender) {
+        return search(cell, radius, speciesMask, gender, null) != Field.NO_CELL;
+    }
+
+    /**
+     * Find the nearest occupant of the given species and gender within a
+     * radius of a cell, other than one in the cell itself, choosing at
+     * random among those equally near.
+     *
+     * @param cell        The cell to search around.
+     * @param radius      The greatest distance to search.
+     * @param speciesMask The species to look for, one bit per species id.
+     * @param gender      The gender to look for: 0, 1 or ANY_GENDER.
+     * @param rand        Breaks ties.
+     * @return The cell of the nearest match, or Field.NO_CELL if there is none.
+     */
+    public int nearest(int cell, int radius, long speciesMask, int gender, RandomGenerator rand) {
+        return search(cell, radius, speciesMask, gender, rand);
+    }
+
+    /**
+     * Search the rows around a cell outwards, stopping once no row left
+     * could hold a nearer match.
+     *
+     * @param cell        The cell to search around.
+     * @param radius      The greatest distance to search.
+     * @param speciesMask The species to look for.
+     * @param gender      The gender to look for.
+     * @param rand        Breaks ties, or null to stop at the first match.
+     * @return A matching cell, or Field.NO_CELL.
+     */
+    private int search(int cell, int radius, long speciesMask, int gender, RandomGenerator rand) {
+        int row = cell / width;
+        int col = cell - row * width;
+        int top = Math.max(0, row - radius);
+        int bottom = Math.min(depth - 1, row + radius);
+        int left = Math.max(0, col - radius);
+        int right = Math.min(width - 1, col + radius);
+        long[][] layerBits = bits;
+        int[][] layerCounts = counts;
+        if (!anyInBuckets(top, left, bottom, right, speciesMask, gender, layerCounts)) {
+            return Field.NO_CELL;
+        }
+
+        int best = radius + 1;
+        int found = Field.NO_CELL;
+        int ties = 0;
+        for (int d = 0; d <= radius && d <= best; d++) {
+            for (int side = d == 0 ? 1 : 0; side < 2; side++) {
+                int r = side == 0 ? row - d : row + d;
+                if (r < top || r > bottom
+                        || !anyInBuckets(r, left, r, right, speciesMask, gender, layerCounts)) {
+                    continue;
+                }
+                for (int w = left >>> 6; w <= right >>> 6; w++) {
+                    long word;
+                    if (pages == null) {
+                        word = wordAt(layerBits, r * rowWords + w, speciesMask, gender);
+                    } else {
+                        Page page = pages[(r >>> PAGE_SHIFT) * pageCols + w];
+                        if (page == null) {
+                            continue;
+                        }
+                        word = wordAt(page.layers, r & (PAGE_SIZE - 1), speciesMask, gender);
+                    }
+                    int base = w << 6;
+                    if (base < left) {
+                        word &= -1L << (left - base);
+                    }
+                    if (right - base < Long.SIZE - 1) {
+                        word &= -1L >>> (Long.SIZE - 1 - (right - base));
+                    }
+                    while (word != 0) {
+                        int c = base + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        if (r == row && c == col) {
+                            continue;
+                        }
+                        if (rand == null) {
+                            return r * width + c;
+                        }
+                        int distance = Math.max(d, Math.abs(c - col));
+                        if (distance < best) {
+                            best = distance;
+                            found = r * width + c;
+                            ties = 1;
+                        } else if (distance == best && rand.nextInt(++ties) == 0) {
+                            found = r * width + c;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Return whether any bucket overlapping a rectangle holds an occupant
+     * of the given species and gender.
+     *
+     * @param top         The top row of the rectangle.
+     * @param left        The left column.
+     * @param bottom      The bottom row.
+     * @param right       The right column.
+     * @param speciesMask The species to look for.
+     * @param gender      The gender to look for.
+     * @param layerCounts The bucket counts of each layer.
+     * @return false if the rectangle certainly holds none.
+     */
+    private boolean anyInBuckets(int top, int left, int bottom, int right, long speciesMask,
+                                 int gender, int[][] layerCounts) {
+        for (int br = top >>> BUCKET_SHIFT; br <= bottom >>> BUCKET_SHIFT; br++) {
+            for (int bc = left >>> BUCKET_SHIFT; bc <= right >>> BUCKET_SHIFT; bc++) {
+                if (pages != null) {
+                    if (anyInPageBucket(br, bc, speciesMask, gender)) {
+                        return true;
+                    }
+                    continue;
+                }
+                int bucket = br * bucketCols + bc;
+                for (long mask = speciesMask; mask != 0; mask &= mask - 1) {
+                    int layer = Long.numberOfTrailingZeros(mask) << 1;
+                    if (gender != 1 && countAt(layerCounts, layer, bucket) > 0
+                            || gender != 0 && countAt(layerCounts, layer | 1, bucket) > 0) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return whether a bucket of a sparse index holds an occupant of the
+     * given species and gender.
+     *
+     * @param br          The row of the bucket.
+     * @param bc          The column of the bucket.
+     * @param speciesMask The species to look for.
+     * @param gender      The gender to look for.
+     * @return true if it holds one.
+     */
+    private boolean anyInPageBucket(int br, int bc, long speciesMask, int gender) {
+        int shift = PAGE_SHIFT - BUCKET_SHIFT;
+        Page page = pages[(br >>> shift) * pageCols + (bc >>> shift)];
+        if (page == null) {
+            return false;
+        }
+        int count = PAGE_SIZE + (br & (PAGE_BUCKETS - 1)) * PAGE_BUCKETS + (bc & (PAGE_BUCKETS - 1));
+        for (long mask = speciesMask; mask != 0; mask &= mask - 1) {
+            int layer = Long.numberOfTrailingZeros(mask) << 1;
+            if (gender != 1 && pageCount(page.layers[layer], count) > 0
+                    || gender != 0 && pageCount(page.layers[layer | 1], count) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param words The words of a layer of a page, or null if it is unused.
+     * @param count The index of a bucket count among them.
+     * @return The count, or 0 if the layer is unused.
+     */
+    private static long pageCount(long[] words, int count) {
+        return words == null ? 0 : (long) WORDS.getOpaque(words, count);
+    }
+
+    /**
+     * Return the union of the bitmap words of the given species and gender.
+     *
+     * @param layerBits   The bitmap of each layer.
+     * @param index       The index of the word in a bitmap.
+     * @param speciesMask The species to look for.
+     * @param gender      The gender to look for.
+     * @return The bits of the cells holding a match.
+     */
+    private static long wordAt(long[][] layerBits, int index, long speciesMask,
+                               int gender) {
+        long word = 0;
+        for (long mask = speciesMask; mask != 0; mask &= mask - 1) {
+            int layer = Long.numberOfTrailingZeros(mask) << 1;
+            if (gender != 1 && layer < layerBits.length && layerBits[layer] != null) {
+                word |= (long) WORDS.getOpaque(layerBits[layer], index);
+            }
+            if (gender != 0 && (layer | 1) < layerBits.length && layerBits[layer | 1] != null) {
+                word |= (long) WORDS.getOpaque(layerBits[layer | 1], index);
+            }
+        }
+        return word;
+    }
+
+    /**
+     * @param layerCounts The bucket counts of each layer.
+     * @param layer       The layer.
+     * @param bucket      The bucket.
+     * @return The count of the layer in the bucket, or 0 if the layer is unused.
+     */
+    private static int countAt(int[][] layerCounts, int layer, int bucket) {
+        return layer < layerCounts.length && layerCounts[layer] != null
+                ? (int) COUNTS.getOpaque(layerCounts[layer], bucket) : 0;
+    }
+
+    /**
+     * Make room for a layer.
+     *
+     * @param layer The layer about to be used.
+     */
+    private synchronized void grow(int layer) {
+        if (layer < bits.length && bits[layer] != null) {
+            return;
+        }
+        long[][] newBits = Arrays.copyOf(bits, Math.max(bits.length, layer + 1));
+        int[][] newCounts = Arrays.copyOf(counts, newBits.length);
+        newBits[layer] = new long[depth * rowWords];
+        newCounts[layer] = new int[buckets];
+        // Publish the counts first, so that a reader that sees the bits
+        // also sees the counts.
+        counts = newCounts;
+        bits = newBits;
+    }
+
+    /**
+     * Return the words of a layer of a page of a sparse index, allocating
+     * the page or the layer if no other thread has yet.
+     *
+     * @param index The directory index of the page.
+     * @param layer The layer.
+     * @return The words of the layer in the page.
+     */
+    private synchronized long[] allocate(int index, int layer) {
+        Page page = pages[index];
+        if (page == null) {
+            page = new Page();
+            pages[index] = page;
+            if (allocatedCount == allocated.length) {
+                allocated = Arrays.copyOf(allocated, allocatedCount * 2);
+            }
+            allocated[allocatedCount++] = index;
+        }
+        long[] words = page.layers[layer];
+        if (words == null) {
+            words = new long[PAGE_SIZE + PAGE_BUCKETS * PAGE_BUCKETS];
+            page.layers[layer] = words;
+        }
+        return words;
+    }
+
+    /**
+     * @param row The row of a cell.
+     * @param col The column of a cell.
+     * @return The index of its bucket within its page.
+     */
+    private static int pageBucket(int row, int col) {
+        return (row >>> BUCKET_SHIFT & (PAGE_BUCKETS - 1)) * PAGE_BUCKETS
+                + (col >>> BUCKET_SHIFT & (PAGE_BUCKETS - 1));
+    }
+
+    /**
+     * @param cell The row-major index of a cell.
+     * @return The index of its bitmap word.
+     */
+    private int wordOf(int cell) {
+        int row = cell / width;
+        return row * rowWords + ((cell - row * width) >>> 6);
+    }
+
+    /**
+     * @param cell The row-major index of a cell.
+     * @return The index of its bucket.
+     */
+    private int bucketOf(int cell) {
+        int row = cell / width;
+        int col = cell - row * width;
+        return (row >>> BUCKET_SHIFT) * bucketCols + (col >>> BUCKET_SHIFT);
+    }
+
+    /**
+     * The layers of one page of a sparse index.
+     */
+    private static class Page {
+        // The words of each layer: a bitmap word per row of the page, then
+        // the count of each bucket of the page; null until the layer is used.
+        private final long[][] layers = new long[LAYERS][];
+        // The number of occupants indexed in the page.
+        private final AtomicInteger occupied = new AtomicInteger();
+    }
+}
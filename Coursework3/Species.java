@@ -0,0 +1,412 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A species of participant in the simulation. Each species is given a
+ * small, dense id, so that the field can store what occupies each location
+ * as a single byte and statistics can be kept in arrays indexed by species.
+ * Id 0 is reserved to mean an empty location.
+ *
+ * The animal species are rows of a table: each row holds the parameters
+ * every Animal of the species is run with, including how far away it
+ * notices prey and mates, what it preys on as a mask with one bit per
+ * species id, and in which periods of the day it hunts and moves. Adding
+ * a species means adding a row, not writing a class. Other classes of
+ * participant are given a row of their own, with no behaviour, the first
+ * time they are seen.
+ *
+ * A run can change the parameters of a species without touching the table:
+ * with() makes a variant of a row, with the same id, name and behaviour, to
+ * be handed to a SimulationContext.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class Species {
+    // The id stored in the field for an empty location.
+    public static final int EMPTY = 0;
+    // The largest id that fits in a species mask.
+    public static final int MAX_ID = Long.SIZE - 1;
+
+    // Activity masks, one bit per Field.TimeOfDay ordinal.
+    public static final int NEVER = 0;
+    public static final int BY_DAY = 1 << Field.TimeOfDay.MORNING.ordinal()
+            | 1 << Field.TimeOfDay.AFTERNOON.ordinal();
+    public static final int AT_NIGHT = 1 << Field.TimeOfDay.NIGHT.ordinal();
+    public static final int ALWAYS = BY_DAY | AT_NIGHT;
+
+    // Every species seen so far, indexed by id.
+    private static final List<Species> table = new ArrayList<>();
+    // The species of each class of participant.
+    private static final Map<Class<?>, Species> byClass = new HashMap<>();
+    // The size of the table, readable without taking the lock, as every
+    // simulation running asks for it at every step.
+    private static volatile int size;
+
+    static {
+        // Nothing lives at id 0.
+        table.add(null);
+        size = 1;
+    }
+
+    // The animal species. A food value of 0 means the species never goes
+    // hungry; a sensing range of 1 means it only notices its neighbours.
+    // Locations are populated by trying each species in this order.
+    //                                           breeding  max  breeding  max     food   creation  sensing
+    //                                           age       age  prob.     litter  value  prob.     range
+    public static final Species SNAKE = define("Snake",  15, 150, 0.08,   2,      9,     0.02,     5);
+    public static final Species RAT   = define("Rat",     5,  40, 0.12,   4,      0,     0.08,     1);
+    public static final Species ZEBRA = define("Zebra",   6,  48, 0.075,  2,      0,     0.26,     1);
+    public static final Species OWL   = define("Owl",    15, 150, 0.05,   2,      9,     0.14,    20);
+    public static final Species LION  = define("Lion",   18, 180, 0.05,   1,     18,     0.2,     12);
+
+    static {
+        // When each species hunts and moves, and what it eats. The predators
+        // hunt their own kind, as they always have. Rats stay where they are
+        // born; zebras rest at night.
+        SNAKE.setBehaviour(ALWAYS, ALWAYS, SNAKE);
+        RAT.setBehaviour(NEVER, NEVER);
+        ZEBRA.setBehaviour(NEVER, BY_DAY);
+        OWL.setBehaviour(AT_NIGHT, ALWAYS, OWL);
+        LION.setBehaviour(ALWAYS, ALWAYS, LION);
+    }
+
+    // The dense id of the species.
+    private final int id;
+    // The name of the species, e.g. "Snake".
+    private final String name;
+    // The age at which an animal of the species can start to breed.
+    private final int breedingAge;
+    // The age to which an animal of the species can live.
+    private final int maxAge;
+    // The likelihood of an animal of the species breeding.
+    private final double breedingProbability;
+    // The maximum number of births.
+    private final int maxLitterSize;
+    // The number of steps an animal can go after eating before it has to
+    // eat again, or 0 if it never goes hungry.
+    private final int foodValue;
+    // The likelihood of a location being populated with the species.
+    private final double creationProbability;
+    // How far away an animal of the species notices prey and mates.
+    private final int sensingRange;
+    // The species it eats, one bit per species id.
+    private long preyMask;
+    // The periods of the day in which it hunts and moves.
+    private int huntPeriods;
+    private int movePeriods;
+
+    /**
+     * Create a species with the given id, name and parameters.
+     *
+     * @param id                  The dense id of the species.
+     * @param name                The name of the species.
+     * @param breedingAge         The age at which it can start to breed.
+     * @param maxAge              The age to which it can live.
+     * @param breedingProbability The likelihood of it breeding.
+     * @param maxLitterSize       The maximum number of births.
+     * @param foodValue           Steps it can go without eating, or 0.
+     * @param creationProbability The likelihood of populating a location with it.
+     * @param sensingRange        How far away it notices prey and mates.
+     */
+    private Species(int id, String name, int breedingAge, int maxAge, double breedingProbability,
+                    int maxLitterSize, int foodValue, double creationProbability,
+                    int sensingRange) {
+        this.id = id;
+        this.name = name;
+        this.breedingAge = breedingAge;
+        this.maxAge = maxAge;
+        this.breedingProbability = breedingProbability;
+        this.maxLitterSize = maxLitterSize;
+        this.foodValue = foodValue;
+        this.creationProbability = creationProbability;
+        this.sensingRange = sensingRange;
+    }
+
+    /**
+     * The parameters of a species that can be varied from run to run.
+     */
+    public enum Parameter {
+        BREEDING_AGE, MAX_AGE, BREEDING_PROBABILITY, MAX_LITTER_SIZE, FOOD_VALUE,
+        CREATION_PROBABILITY, SENSING_RANGE
+    }
+
+    /**
+     * Add an animal species to the table, giving it the next free id.
+     *
+     * @param name                The name of the species.
+     * @param breedingAge         The age at which it can start to breed.
+     * @param maxAge              The age to which it can live.
+     * @param breedingProbability The likelihood of it breeding.
+     * @param maxLitterSize       The maximum number of births.
+     * @param foodValue           Steps it can go without eating, or 0.
+     * @param creationProbability The likelihood of populating a location with it.
+     * @param sensingRange        How far away it notices prey and mates.
+     * @return The new species.
+     */
+    private static synchronized Species define(String name, int breedingAge, int maxAge,
+                                               double breedingProbability, int maxLitterSize,
+                                               int foodValue, double creationProbability,
+                                               int sensingRange) {
+        if (table.size() > MAX_ID) {
+            throw new IllegalStateException("Too many species: " + name);
+        }
+        Species species = new Species(table.size(), name, breedingAge, maxAge,
+                breedingProbability, maxLitterSize, foodValue, creationProbability, sensingRange);
+        table.add(species);
+        size = table.size();
+        return species;
+    }
+
+    /**
+     * Set when the species hunts and moves, and what it eats.
+     *
+     * @param huntPeriods The periods of the day in which it hunts.
+     * @param movePeriods The periods of the day in which it moves.
+     * @param prey        The species it eats.
+     */
+    private void setBehaviour(int huntPeriods, int movePeriods, Species... prey) {
+        this.huntPeriods = huntPeriods;
+        this.movePeriods = movePeriods;
+        for (Species species : prey) {
+            preyMask |= maskOf(species.getId());
+        }
+    }
+
+    /**
+     * Return a variant of this species with one parameter changed. The
+     * variant is not added to the table: it has the same id, name and
+     * behaviour as this species.
+     *
+     * @param parameter The parameter to change.
+     * @param value     Its new value; rounded down for the whole-number parameters.
+     * @return The variant.
+     * @throws IllegalArgumentException If the value is negative, a probability
+     *         above 1, or rounds down to 0 for the maximum age, the maximum
+     *         litter size or, if the species eats others, the food value.
+     */
+    public Species with(Parameter parameter, double value) {
+        boolean probability = parameter == Parameter.BREEDING_PROBABILITY
+                || parameter == Parameter.CREATION_PROBABILITY;
+        // Ages and litter sizes are drawn below these bounds, and a hunter
+        // with no food value would never go hungry.
+        boolean positive = parameter == Parameter.MAX_AGE
+                || parameter == Parameter.MAX_LITTER_SIZE
+                || parameter == Parameter.FOOD_VALUE && preyMask != 0;
+        if (value < 0 || probability && value > 1 || positive && (int) value < 1) {
+            throw new IllegalArgumentException("Bad value for " + name + " " + parameter
+                    + ": " + value);
+        }
+        return withParameters(
+                parameter == Parameter.BREEDING_AGE ? (int) value : breedingAge,
+                parameter == Parameter.MAX_AGE ? (int) value : maxAge,
+                parameter == Parameter.BREEDING_PROBABILITY ? value : breedingProbability,
+                parameter == Parameter.MAX_LITTER_SIZE ? (int) value : maxLitterSize,
+                parameter == Parameter.FOOD_VALUE ? (int) value : foodValue,
+                parameter == Parameter.CREATION_PROBABILITY ? value : creationProbability,
+                parameter == Parameter.SENSING_RANGE ? (int) value : sensingRange);
+    }
+
+    /**
+     * Return a variant of this species with the given parameters and the
+     * same id, name and behaviour. The variant is not added to the table.
+     *
+     * @param breedingAge         The age at which it can start to breed.
+     * @param maxAge              The age to which it can live.
+     * @param breedingProbability The likelihood of it breeding.
+     * @param maxLitterSize       The maximum number of births.
+     * @param foodValue           Steps it can go without eating, or 0.
+     * @param creationProbability The likelihood of populating a location with it.
+     * @param sensingRange        How far away it notices prey and mates.
+     * @return The variant.
+     */
+    Species withParameters(int breedingAge, int maxAge, double breedingProbability,
+                           int maxLitterSize, int foodValue, double creationProbability,
+                           int sensingRange) {
+        Species variant = new Species(id, name, breedingAge, maxAge, breedingProbability,
+                maxLitterSize, foodValue, creationProbability, sensingRange);
+        variant.preyMask = preyMask;
+        variant.huntPeriods = huntPeriods;
+        variant.movePeriods = movePeriods;
+        return variant;
+    }
+
+    /**
+     * Return the species of the given class of participant, giving it
+     * the next free id if it has not been seen before.
+     *
+     * @param type The class of participant.
+     * @return The species of that class.
+     */
+    public static synchronized Species forClass(Class<?> type) {
+        Species species = byClass.get(type);
+        if (species == null) {
+            species = define(type.getName(), 0, 0, 0, 0, 0, 0, 0);
+            byClass.put(type, species);
+        }
+        return species;
+    }
+
+    /**
+     * Return the mask with only the given species' bit set.
+     *
+     * @param id The species id.
+     * @return The species mask.
+     */
+    public static long maskOf(int id) {
+        return 1L << id;
+    }
+
+    /**
+     * Return the species id of the given participant.
+     *
+     * @param occupant A participant in the simulation.
+     * @return Its species id.
+     */
+    public static int idOf(Object occupant) {
+        if (occupant instanceof Animal) {
+            return ((Animal) occupant).getSpeciesId();
+        }
+        return forClass(occupant.getClass()).getId();
+    }
+
+    /**
+     * Return the species with the given id.
+     *
+     * @param id The species id.
+     * @return The species, or null for EMPTY or an unused id.
+     */
+    public static synchronized Species get(int id) {
+        return id > 0 && id < table.size() ? table.get(id) : null;
+    }
+
+    /**
+     * Return one more than the largest id given out so far, so that
+     * arrays of that length can be indexed by any species id.
+     *
+     * @return The size of the species id range.
+     */
+    public static int idRange() {
+        return size;
+    }
+
+    /**
+     * Return every species in the table, in id order.
+     *
+     * @return A new list of the species.
+     */
+    public static synchronized List<Species> all() {
+        return new ArrayList<>(table.subList(1, table.size()));
+    }
+
+    /**
+     * @return The dense id of this species.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The name of this species.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The age at which an animal of this species can start to breed.
+     */
+    public int getBreedingAge() {
+        return breedingAge;
+    }
+
+    /**
+     * @return The age to which an animal of this species can live.
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * @return The likelihood of an animal of this species breeding.
+     */
+    public double getBreedingProbability() {
+        return breedingProbability;
+    }
+
+    /**
+     * @return The maximum number of births.
+     */
+    public int getMaxLitterSize() {
+        return maxLitterSize;
+    }
+
+    /**
+     * @return The steps an animal can go after eating, or 0 if it never goes hungry.
+     */
+    public int getFoodValue() {
+        return foodValue;
+    }
+
+    /**
+     * @return The likelihood of populating a location with this species.
+     */
+    public double getCreationProbability() {
+        return creationProbability;
+    }
+
+    /**
+     * @return How far away an animal of this species notices prey and mates;
+     * 1 or less if only its neighbours.
+     */
+    public int getSensingRange() {
+        return sensingRange;
+    }
+
+    /**
+     * @return The species this species eats, one bit per species id.
+     */
+    public long getPreyMask() {
+        return preyMask;
+    }
+
+    /**
+     * Return whether this species hunts at the given time of day.
+     *
+     * @param time The time of day.
+     * @return true if it hunts then.
+     */
+    public boolean huntsIn(Field.TimeOfDay time) {
+        return (huntPeriods >>> time.ordinal() & 1) != 0;
+    }
+
+    /**
+     * Return whether this species moves at the given time of day.
+     *
+     * @param time The time of day.
+     * @return true if it moves then.
+     */
+    public boolean movesIn(Field.TimeOfDay time) {
+        return (movePeriods >>> time.ordinal() & 1) != 0;
+    }
+
+    /**
+     * Return whether this species does anything but age at the given time
+     * of day, other than breed.
+     *
+     * @param time The time of day.
+     * @return true if it hunts or moves then.
+     */
+    public boolean isActiveIn(Field.TimeOfDay time) {
+        return ((huntPeriods | movePeriods) >>> time.ordinal() & 1) != 0;
+    }
+
+    /**
+     * @return The name of this species.
+     */
+    public String toString() {
+        return name;
+    }
+}
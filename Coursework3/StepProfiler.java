@@ -0,0 +1,348 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Records how long each phase of a step takes, and how long the animals
+ * of each species spend acting, so that a slow step can be traced to its
+ * cause. A simulator only times its steps while a profiler is attached
+ * (see Simulator.setProfiler); without one the timing code is skipped.
+ *
+ * Each phase keeps a histogram of its time per step in the manner of
+ * HdrHistogram: buckets are spaced by powers of two and each power is
+ * split into SUB_BUCKETS linear buckets, so a percentile is read to
+ * within an eighth of its value over any range of times, in a fixed
+ * amount of memory. The time of the acts of a species is summed over a
+ * step before it is recorded. With several threads it is the time spent
+ * on all of them, so it may add up to more than the act phase.
+ *
+ * A profiler is also an observer: every so many steps it passes a line
+ * with the mean time of each phase since the last line to a report,
+ * such as the log or the view's information label. summary() gives the
+ * whole run as a table.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class StepProfiler implements SimulatorObserver {
+    // The log2 of the number of linear buckets in each power of two.
+    private static final int SUB_BUCKET_BITS = 3;
+    // The number of linear buckets in each power of two.
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // The number of buckets needed for any positive long.
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    // The percentiles shown in the summary.
+    private static final double[] PERCENTILES = {50, 99};
+
+    /**
+     * The parts of a step that are timed.
+     */
+    public enum Phase {
+        // Advancing the clock and finding the animals due to act.
+        SCHEDULE("schedule"),
+        // Making the animals act; see also the time of each species.
+        ACT("act"),
+        // Scheduling the survivors and the newborns for their next act.
+        BIRTHS("births"),
+        // Dropping the dead from the animals and the empty chunks of a field.
+        REMOVE_DEAD("remove dead"),
+        // Checking whether the run is still viable.
+        STATS("stats"),
+        // Notifying the observers, including the view.
+        OBSERVERS("observers"),
+        // Drawing a frame of the view, part of notifying it.
+        DRAW("view draw"),
+        // Putting a frame on screen, on the event thread.
+        PAINT("view paint");
+
+        // The name shown for the phase.
+        private final String label;
+
+        /**
+         * @param label The name shown for the phase.
+         */
+        Phase(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return The name shown for the phase.
+         */
+        public String toString() {
+            return label;
+        }
+    }
+
+    // The time per step of each phase, indexed by ordinal.
+    private final Histogram[] phases;
+    // The time per step of the acts of each species, indexed by species id;
+    // null for a species not yet seen.
+    private Histogram[] species;
+    // The total time of each phase and species since the last report, and
+    // the number of steps since then.
+    private final long[] windowPhases;
+    private long[] windowSpecies;
+    private int windowSteps;
+    // The number of steps between reports; zero for none.
+    private int interval;
+    // Receives each report.
+    private Consumer<String> report;
+
+    /**
+     * Create a profiler that has recorded nothing and makes no reports.
+     */
+    public StepProfiler() {
+        phases = new Histogram[Phase.values().length];
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new Histogram();
+        }
+        species = new Histogram[Species.idRange()];
+        windowPhases = new long[phases.length];
+        windowSpecies = new long[species.length];
+    }
+
+    /**
+     * Pass a line with the mean time of each phase to a report every so
+     * many steps.
+     *
+     * @param interval The number of steps between reports; zero for none.
+     * @param report   Receives each line, on the simulation thread.
+     */
+    public synchronized void setReport(int interval, Consumer<String> report) {
+        this.interval = Math.max(0, interval);
+        this.report = report;
+    }
+
+    /**
+     * Record the time a phase took at one step.
+     *
+     * @param phase The phase.
+     * @param nanos The time it took, in nanoseconds.
+     */
+    public synchronized void record(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+        windowPhases[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Record the time the animals of each species spent acting at one
+     * step. Species that did not act are not recorded.
+     *
+     * @param nanos The time of each species, indexed by species id, in
+     *              nanoseconds.
+     */
+    public synchronized void recordActs(long[] nanos) {
+        if (nanos.length > species.length) {
+            species = Arrays.copyOf(species, nanos.length);
+            windowSpecies = Arrays.copyOf(windowSpecies, nanos.length);
+        }
+        for (int id = 0; id < nanos.length; id++) {
+            if (nanos[id] > 0) {
+                if (species[id] == null) {
+                    species[id] = new Histogram();
+                }
+                species[id].record(nanos[id]);
+                windowSpecies[id] += nanos[id];
+            }
+        }
+    }
+
+    /**
+     * Forget everything recorded.
+     */
+    public synchronized void clear() {
+        for (Histogram histogram : phases) {
+            histogram.clear();
+        }
+        Arrays.fill(species, null);
+        Arrays.fill(windowPhases, 0);
+        Arrays.fill(windowSpecies, 0);
+        windowSteps = 0;
+    }
+
+    /**
+     * Report the mean time of each phase since the last report, if a
+     * report is due.
+     *
+     * @param step  The step that has just been completed.
+     * @param field The field after the step.
+     * @param stats Statistics on the field.
+     */
+    @Override
+    public void stepCompleted(int step, Field field, FieldStats stats) {
+        String line = null;
+        Consumer<String> to;
+        synchronized (this) {
+            windowSteps++;
+            to = report;
+            if (interval > 0 && to != null && step % interval == 0) {
+                line = "Step " + step + ": " + window();
+                Arrays.fill(windowPhases, 0);
+                Arrays.fill(windowSpecies, 0);
+                windowSteps = 0;
+            }
+        }
+        if (line != null) {
+            to.accept(line);
+        }
+    }
+
+    /**
+     * Return the mean time per step of each phase, and of the acts of each
+     * species, since the last report.
+     *
+     * @return The times, in milliseconds.
+     */
+    private String window() {
+        StringBuilder line = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            long total = windowPhases[phase.ordinal()];
+            if (total > 0) {
+                line.append(String.format("%s %.2f ms, ", phase, total / 1e6 / windowSteps));
+            }
+            if (phase == Phase.ACT) {
+                for (int id = 1; id < windowSpecies.length; id++) {
+                    if (windowSpecies[id] > 0) {
+                        line.append(String.format("%s %.2f ms, ", Species.get(id).getName(),
+                                windowSpecies[id] / 1e6 / windowSteps));
+                    }
+                }
+            }
+        }
+        return line.length() == 0 ? "nothing recorded" : line.substring(0, line.length() - 2);
+    }
+
+    /**
+     * Return a table of the time per step of every phase and species
+     * recorded: the number of steps, the mean, the percentiles, the
+     * greatest and the total.
+     *
+     * @return The table, one line per phase, in microseconds.
+     */
+    public synchronized String summary() {
+        StringBuilder table = new StringBuilder(String.format("%-16s %8s %10s", "phase", "steps", "mean us"));
+        for (double percentile : PERCENTILES) {
+            table.append(String.format(" %10s", "p" + (int) percentile + " us"));
+        }
+        table.append(String.format(" %10s %10s%n", "max us", "total ms"));
+        for (Phase phase : Phase.values()) {
+            appendRow(table, phase.toString(), phases[phase.ordinal()]);
+            if (phase == Phase.ACT) {
+                for (int id = 1; id < species.length; id++) {
+                    if (species[id] != null) {
+                        appendRow(table, "  " + Species.get(id).getName(), species[id]);
+                    }
+                }
+            }
+        }
+        return table.toString();
+    }
+
+    /**
+     * Add a line describing a histogram to the summary, if it has
+     * recorded anything.
+     *
+     * @param table     The summary.
+     * @param name      The name of the line.
+     * @param histogram The histogram.
+     */
+    private static void appendRow(StringBuilder table, String name, Histogram histogram) {
+        if (histogram.count == 0) {
+            return;
+        }
+        table.append(String.format("%-16s %8d %10.1f", name, histogram.count,
+                histogram.total / 1e3 / histogram.count));
+        for (double percentile : PERCENTILES) {
+            table.append(String.format(" %10.1f", histogram.percentile(percentile) / 1e3));
+        }
+        table.append(String.format(" %10.1f %10.1f%n", histogram.max / 1e3, histogram.total / 1e6));
+    }
+
+    /**
+     * The recorded times of one phase or species, in log-linear buckets.
+     */
+    private static class Histogram {
+        // The number of times recorded in each bucket.
+        private final long[] counts = new long[BUCKETS];
+        // The number, total and greatest of the times recorded.
+        private long count;
+        private long total;
+        private long max;
+
+        /**
+         * Record a time.
+         *
+         * @param nanos The time, in nanoseconds; negative times count as zero.
+         */
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[bucketOf(value)]++;
+            count++;
+            total += value;
+            max = Math.max(max, value);
+        }
+
+        /**
+         * Forget every time recorded.
+         */
+        void clear() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            total = 0;
+            max = 0;
+        }
+
+        /**
+         * Return a time that the given percentage of the recorded times do
+         * not exceed, to within the width of its bucket.
+         *
+         * @param percentile The percentage, from 0 to 100.
+         * @return The middle of the bucket holding that time, in nanoseconds.
+         */
+        long percentile(double percentile) {
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    long low = lowestIn(bucket);
+                    return Math.min(max, low + (lowestIn(bucket + 1) - low) / 2);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Return the bucket a value falls in. Values below SUB_BUCKETS have
+         * a bucket each; above that, each power of two is split into
+         * SUB_BUCKETS buckets by the bits after the highest one.
+         *
+         * @param value The value; not negative.
+         * @return The bucket.
+         */
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Return the lowest value that falls in a bucket.
+         *
+         * @param bucket The bucket, which may be one past the last.
+         * @return The value.
+         */
+        private static long lowestIn(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            if (exponent >= Long.SIZE - 1) {
+                return Long.MAX_VALUE;
+            }
+            return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        }
+    }
+}
@@ -0,0 +1,542 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
+
+/**
+ * Updates the animals of a field synchronously: every animal due at a
+ * step decides what to do from the field as it was at the start of the
+ * step, and only then are all the decisions carried out. Unlike the list
+ * order update, where an animal eaten earlier in the step never acts and
+ * newborns take cells before later movers look for one, no animal sees
+ * what another does in the same step, so the animals can be planned in
+ * any order and on any number of threads.
+ *
+ * A step has three phases.
+ *
+ * Plan: the animals, in chunks of CHUNK_SIZE in the order they are due,
+ * make their plans (see Animal.plan) on the engine's threads, reading the
+ * field but not changing it. Each chunk draws from its own random stream,
+ * made afresh at every step from the seed, the step and the chunk.
+ *
+ * Claim: every move, hunt and birth claims a cell. A cell claimed more
+ * than once goes to the claim with the lowest priority: a hash of the
+ * seed, the step, the claimant's cell and which of its claims it is, with
+ * the claim's number to break ties. Each claim is folded into its cell
+ * with an atomic minimum, which gives the same winner whatever order the
+ * claims arrive in.
+ *
+ * Commit: on the calling thread, in the order the animals are due, the
+ * winning hunts kill their prey, the animals that planned to die do so,
+ * the winning moves are made and the winning births are placed. A mover
+ * that loses stays where it is, a hunter that loses goes hungry, and a
+ * newborn that loses is not born. An animal that is eaten does not move,
+ * but its young are still born and its own prey still eaten, as it made
+ * its plan before it died. The claims stand in for the next step's field,
+ * and committing them is the swap.
+ *
+ * The outcome of a step depends only on the field, the seed and the step,
+ * never on the number of threads. It does differ from that of the list
+ * order update, which draws its random numbers in another order.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class SynchronousStepEngine {
+    // The number of animals planned with one random stream.
+    public static final int CHUNK_SIZE = 1024;
+    // The random stream newborns are made with; chunks number from zero.
+    private static final int BIRTH_STREAM = -1;
+    // The claim of a cell nothing has claimed.
+    private static final long UNCLAIMED = Long.MAX_VALUE;
+    // The fate of an animal that lives, or that was dead before it was due.
+    private static final byte LIVES = 0;
+    private static final byte SKIPPED = -1;
+    // Atomic access to the claims of the cells.
+    private static final VarHandle CLAIMS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // The field being updated.
+    private final Field field;
+    // The threads that plan the animals.
+    private final ForkJoinPool pool;
+    // The master seed of the chunks' random streams and of the priorities.
+    private final long seed;
+    // The winning claim of each cell, or UNCLAIMED; null if the field is
+    // sparse, when the claims of the cells claimed are kept in a map.
+    private final long[] claims;
+    private final ConcurrentHashMap<Integer, Long> sparseClaims;
+    // The animals due at this step, and for each its cell at the start of
+    // the step, the cell it means to be in at the end, whether that cell
+    // holds its prey and its fate: LIVES, SKIPPED or 1 + the ordinal of
+    // what it dies of.
+    private Animal[] planned;
+    private int[] sources;
+    private int[] targets;
+    private boolean[] hunts;
+    private byte[] fates;
+    // The births planned in each chunk, as pairs of the parent's index
+    // and the cell, and the number of births in the chunks before each.
+    private int[][] births;
+    private int[] birthCounts;
+    private int[] birthsBefore;
+    // The number of animals due, and of chunks, at this step.
+    private int due;
+    private int chunks;
+    // The time the animals of each species spent planning in each chunk
+    // this step, as [chunk][species id]; null while acts are not timed.
+    private volatile long[][] actNanos;
+
+    /**
+     * Create an engine for the given field.
+     *
+     * @param field   The field to update.
+     * @param threads The number of threads to plan the animals on.
+     * @param seed    The master seed of the random streams.
+     */
+    public SynchronousStepEngine(Field field, int threads, long seed) {
+        this.field = field;
+        pool = new ForkJoinPool(threads);
+        this.seed = seed;
+        if (field.isSparse()) {
+            claims = null;
+            sparseClaims = new ConcurrentHashMap<>();
+        } else {
+            claims = new long[field.getDepth() * field.getWidth()];
+            Arrays.fill(claims, UNCLAIMED);
+            sparseClaims = null;
+        }
+        planned = new Animal[0];
+        sources = new int[0];
+        targets = new int[0];
+        hunts = new boolean[0];
+        fates = new byte[0];
+        births = new int[0][];
+        birthCounts = new int[0];
+        birthsBefore = new int[0];
+    }
+
+    /**
+     * Make every live animal that is due at this step act once, all of
+     * them on the field as it was at the start of the step. The animals
+     * born during the step are added to newAnimals in the order their
+     * parents were due.
+     *
+     * @param animals    The animals due at this step.
+     * @param newAnimals A list to receive newly born animals.
+     */
+    public void step(ActivityScheduler animals, List<Animal> newAnimals) {
+        prepare(animals);
+        if (chunks > 0) {
+            pool.invoke(new ChunkTask(true, 0, chunks));
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                birthsBefore[chunk + 1] = birthsBefore[chunk] + birthCounts[chunk];
+            }
+            pool.invoke(new ChunkTask(false, 0, chunks));
+        }
+        commit(newAnimals);
+        // Do not keep the animals of this step reachable.
+        Arrays.fill(planned, 0, due, null);
+    }
+
+    /**
+     * Start or stop timing the plans of the animals, for a StepProfiler.
+     *
+     * @param profiling Whether to time them.
+     */
+    public void setProfiling(boolean profiling) {
+        actNanos = profiling ? new long[0][] : null;
+    }
+
+    /**
+     * Take the time the animals of each species spent planning at the last
+     * step, summed over all chunks, and start counting again. Times are
+     * only kept while profiling.
+     *
+     * @param nanos Receives the time of each species, by species id.
+     */
+    public void takeActNanos(long[] nanos) {
+        Arrays.fill(nanos, 0);
+        long[][] timed = actNanos;
+        if (timed == null) {
+            return;
+        }
+        for (long[] chunk : timed) {
+            for (int id = 0; id < chunk.length && id < nanos.length; id++) {
+                nanos[id] += chunk[id];
+            }
+            Arrays.fill(chunk, 0);
+        }
+    }
+
+    /**
+     * Return the number of threads the animals are planned on.
+     *
+     * @return The parallelism of the engine.
+     */
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the engine's threads. The engine cannot be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Take the animals due at this step and make room for their plans.
+     *
+     * @param animals The animals due at this step.
+     */
+    private void prepare(ActivityScheduler animals) {
+        due = animals.dueCount();
+        chunks = (due + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (planned.length < due) {
+            int size = Math.max(due, planned.length * 2);
+            planned = new Animal[size];
+            sources = new int[size];
+            targets = new int[size];
+            hunts = new boolean[size];
+            fates = new byte[size];
+        }
+        if (births.length < chunks) {
+            births = Arrays.copyOf(births, chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                if (births[chunk] == null) {
+                    births[chunk] = new int[64];
+                }
+            }
+            birthCounts = new int[chunks];
+            birthsBefore = new int[chunks + 1];
+        }
+        long[][] timed = actNanos;
+        if (timed != null && timed.length < chunks) {
+            timed = Arrays.copyOf(timed, chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                if (timed[chunk] == null) {
+                    timed[chunk] = new long[Species.idRange()];
+                }
+            }
+            actNanos = timed;
+        }
+        for (int i = 0; i < due; i++) {
+            planned[i] = animals.due(i);
+        }
+    }
+
+    /**
+     * Make the plans of the animals of one chunk.
+     *
+     * @param chunk The chunk.
+     */
+    private void planChunk(int chunk) {
+        Randomizer.setCurrent(Randomizer.stream(seed, field.getClock(), chunk));
+        long[] timed = actNanos == null ? null : actNanos[chunk];
+        Plan plan = new Plan();
+        birthCounts[chunk] = 0;
+        try {
+            int end = Math.min(due, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                Animal animal = planned[i];
+                if (!animal.isAlive()) {
+                    fates[i] = SKIPPED;
+                    continue;
+                }
+                if (timed == null) {
+                    animal.plan(plan);
+                } else {
+                    long start = System.nanoTime();
+                    animal.plan(plan);
+                    int id = animal.getSpeciesId();
+                    if (id < timed.length) {
+                        timed[id] += System.nanoTime() - start;
+                    }
+                }
+                sources[i] = plan.cell;
+                targets[i] = plan.target;
+                hunts[i] = plan.eats;
+                fates[i] = plan.death == null ? LIVES : (byte) (plan.death.ordinal() + 1);
+                for (int b = 0; b < plan.birthCount; b++) {
+                    addBirth(chunk, i, plan.births[b]);
+                }
+            }
+        } finally {
+            Randomizer.setCurrent(null);
+        }
+    }
+
+    /**
+     * Record a planned birth.
+     *
+     * @param chunk  The chunk of the parent.
+     * @param parent The index of the parent.
+     * @param cell   The cell the young is to be born in.
+     */
+    private void addBirth(int chunk, int parent, int cell) {
+        int n = birthCounts[chunk];
+        if (2 * n + 2 > births[chunk].length) {
+            births[chunk] = Arrays.copyOf(births[chunk], births[chunk].length * 2);
+        }
+        births[chunk][2 * n] = parent;
+        births[chunk][2 * n + 1] = cell;
+        birthCounts[chunk] = n + 1;
+    }
+
+    /**
+     * Make the claims of the animals of one chunk, and of their young.
+     *
+     * @param chunk The chunk.
+     */
+    private void claimChunk(int chunk) {
+        int end = Math.min(due, (chunk + 1) * CHUNK_SIZE);
+        for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+            if (fates[i] == LIVES && targets[i] != sources[i]) {
+                claim(targets[i], animalClaim(i));
+            }
+        }
+        int[] chunkBirths = births[chunk];
+        for (int b = 0; b < birthCounts[chunk]; b++) {
+            claim(chunkBirths[2 * b + 1], birthClaim(chunk, b));
+        }
+    }
+
+    /**
+     * @param i The index of an animal.
+     * @return The claim of its move or hunt.
+     */
+    private long animalClaim(int i) {
+        return (long) priority(sources[i], 0) << 32 | i;
+    }
+
+    /**
+     * @param chunk The chunk of the parent.
+     * @param b     The birth's index in the chunk.
+     * @return The claim of the birth.
+     */
+    private long birthClaim(int chunk, int b) {
+        int parent = births[chunk][2 * b];
+        // The parent's earlier young in the chunk give each its own slot.
+        int slot = 1;
+        for (int earlier = b - 1; earlier >= 0 && births[chunk][2 * earlier] == parent; earlier--) {
+            slot++;
+        }
+        return (long) priority(sources[parent], slot) << 32 | (due + birthsBefore[chunk] + b);
+    }
+
+    /**
+     * Return the priority of a claim, the lower the stronger: a hash of
+     * the seed, the clock, the claimant's cell and which of its claims it
+     * is, so that no cell or direction is favoured.
+     *
+     * @param cell The cell of the animal claiming, or of the parent.
+     * @param slot 0 for the animal's own claim, or 1 and up for its young.
+     * @return The priority, not negative.
+     */
+    private int priority(int cell, int slot) {
+        long hash = (seed * 0x9E3779B97F4A7C15L + field.getClock()) * 0x9E3779B97F4A7C15L
+                + ((long) cell << 4 | slot);
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Fold a claim into a cell, keeping the strongest.
+     *
+     * @param cell  The cell claimed.
+     * @param claim The claim.
+     */
+    private void claim(int cell, long claim) {
+        if (claims == null) {
+            sparseClaims.merge(cell, claim, Math::min);
+            return;
+        }
+        long current = (long) CLAIMS.getVolatile(claims, cell);
+        while (claim < current) {
+            long witness = (long) CLAIMS.compareAndExchange(claims, cell, current, claim);
+            if (witness == current) {
+                return;
+            }
+            current = witness;
+        }
+    }
+
+    /**
+     * @param cell  A cell.
+     * @param claim A claim of it.
+     * @return true if the claim won the cell.
+     */
+    private boolean won(int cell, long claim) {
+        if (claims == null) {
+            return sparseClaims.get(cell) == claim;
+        }
+        return claims[cell] == claim;
+    }
+
+    /**
+     * Carry out the winning plans, in the order the animals were due, and
+     * forget the claims.
+     *
+     * @param newAnimals A list to receive newly born animals.
+     */
+    private void commit(List<Animal> newAnimals) {
+        int clock = field.getClock();
+        SimulationEvents.DeathCause[] causes = SimulationEvents.DeathCause.values();
+        for (int i = 0; i < due; i++) {
+            if (fates[i] == LIVES && hunts[i] && won(targets[i], animalClaim(i))) {
+                Animal hunter = planned[i];
+                Animal prey = (Animal) field.getObjectAt(targets[i]);
+                field.countEaten(prey.getSpeciesId());
+                SimulationEvents.predation(hunter.getSpecies(), prey.getSpecies(), targets[i], clock);
+                prey.setDead(SimulationEvents.DeathCause.EATEN);
+                hunter.feed();
+            }
+        }
+        for (int i = 0; i < due; i++) {
+            if (fates[i] > LIVES && planned[i].isAlive()) {
+                planned[i].setDead(causes[fates[i] - 1]);
+            }
+        }
+        for (int i = 0; i < due; i++) {
+            if (fates[i] == LIVES && targets[i] != sources[i] && planned[i].isAlive()
+                    && won(targets[i], animalClaim(i))) {
+                planned[i].setLocation(targets[i]);
+            }
+        }
+
+        RandomGenerator previous = Randomizer.current();
+        Randomizer.setCurrent(Randomizer.stream(seed, clock, BIRTH_STREAM));
+        try {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int[] chunkBirths = births[chunk];
+                int born = 0;
+                for (int b = 0; b < birthCounts[chunk]; b++) {
+                    int parent = chunkBirths[2 * b];
+                    int cell = chunkBirths[2 * b + 1];
+                    if (won(cell, birthClaim(chunk, b))) {
+                        Species species = planned[parent].getSpecies();
+                        newAnimals.add(Animal.create(species, false, field, field.locationAt(cell)));
+                        born++;
+                    }
+                    boolean last = b + 1 == birthCounts[chunk] || chunkBirths[2 * b + 2] != parent;
+                    if (last && born > 0) {
+                        SimulationEvents.birth(planned[parent].getSpecies(), sources[parent], clock, born);
+                    }
+                    if (last) {
+                        born = 0;
+                    }
+                }
+            }
+        } finally {
+            Randomizer.setCurrent(previous);
+        }
+
+        if (claims == null) {
+            sparseClaims.clear();
+            return;
+        }
+        for (int i = 0; i < due; i++) {
+            if (fates[i] == LIVES) {
+                claims[targets[i]] = UNCLAIMED;
+            }
+        }
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            for (int b = 0; b < birthCounts[chunk]; b++) {
+                claims[births[chunk][2 * b + 1]] = UNCLAIMED;
+            }
+        }
+    }
+
+    /**
+     * What one animal means to do at a step, filled in by Animal.plan.
+     * Reused from one animal to the next.
+     */
+    static class Plan {
+        // The animal's cell at the start of the step.
+        int cell;
+        // What the animal dies of at this step, or null if it lives.
+        SimulationEvents.DeathCause death;
+        // The cell it means to end the step in; its own cell to stay.
+        int target;
+        // Whether the target holds prey it means to eat.
+        boolean eats;
+        // The cells its young are to be born in.
+        final int[] births = new int[8];
+        int birthCount;
+        // Space for the free cells around it.
+        final int[] free = new int[8];
+
+        /**
+         * Start the plan of an animal.
+         *
+         * @param cell The animal's cell.
+         */
+        void start(int cell) {
+            this.cell = cell;
+            death = null;
+            target = cell;
+            eats = false;
+            birthCount = 0;
+        }
+
+        /**
+         * Plan a birth.
+         *
+         * @param cell The free cell the young is to be born in.
+         */
+        void addBirth(int cell) {
+            births[birthCount++] = cell;
+        }
+    }
+
+    /**
+     * Plans or claims for a range of chunks, splitting the range between
+     * threads.
+     */
+    private class ChunkTask extends RecursiveAction {
+        // Fork/join tasks are never serialized.
+        private static final long serialVersionUID = 1L;
+
+        // Whether the chunks are planned, rather than their claims made.
+        private final boolean planning;
+        // The range of chunks handled by this task.
+        private final int from;
+        private final int to;
+
+        /**
+         * Create a task for chunks from to to - 1.
+         *
+         * @param planning true to plan the chunks, false to make their claims.
+         * @param from     The first chunk.
+         * @param to       One past the last chunk.
+         */
+        ChunkTask(boolean planning, int from, int to) {
+            this.planning = planning;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Handle the chunks, or split them between two tasks.
+         */
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (planning) {
+                    planChunk(from);
+                } else {
+                    claimChunk(from);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(planning, from, middle), new ChunkTask(planning, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates the animals of a field on several threads at once.
+ *
+ * The field is split into square tiles, and each tile is given one of four
+ * colours in a checkerboard pattern (by the parity of its tile row and tile
+ * column). An animal only ever moves into or gives birth into the cells
+ * next to its own, and only looks as far as its species' sensing range,
+ * so as long as a tile is wider than that range two tiles of the same
+ * colour, which are always at least one whole tile apart, can be updated
+ * at the same time without racing (see tileSizeFor). A step updates all
+ * tiles of the first colour in parallel, then all tiles of the second
+ * colour, and so on.
+ *
+ * Each animal acts once per step, in the tile it started the step in.
+ * Newborns are collected in a buffer per tile and merged in tile order at
+ * the end of the step. Each tile also draws from its own random stream,
+ * made afresh at every step from the seed, the step and the tile, so the
+ * outcome of a step depends only on those and never on how many threads
+ * ran it or which thread updated which tile.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class TiledStepEngine {
+    // The default width and depth of a tile, in cells.
+    public static final int DEFAULT_TILE_SIZE = 64;
+    // The smallest tile that keeps tiles of the same colour from interacting.
+    public static final int MIN_TILE_SIZE = 3;
+    // The number of tile colours.
+    private static final int COLOURS = 4;
+
+    // The field being updated.
+    private final Field field;
+    // The width and depth of a tile, in cells.
+    private final int tileSize;
+    // The number of tiles down and across the field.
+    private final int tileRows;
+    private final int tileCols;
+    // The threads that update the tiles.
+    private final ForkJoinPool pool;
+    // The tiles of each colour.
+    private final int[][] colourTiles;
+    // The animals of each tile at the start of the step, grouped by tile:
+    // tile t's animals are bucketed[tileStart[t]] to bucketed[tileStart[t + 1] - 1].
+    private Animal[] bucketed;
+    private final int[] tileStart;
+    // The next free position of each tile while bucketing.
+    private final int[] tileCursor;
+    // The animals born in each tile during the step.
+    private final List<List<Animal>> births;
+    // The master seed of the tiles' random streams.
+    private final long seed;
+    // The time the animals of each species spent acting in each tile this
+    // step, as [tile][species id]; null while acts are not timed.
+    private volatile long[][] actNanos;
+
+    /**
+     * Return the tile size to use when animals look up to the given
+     * distance from their cell: the default size, or larger if needed to
+     * keep what one tile's animals read away from what another tile of the
+     * same colour writes.
+     *
+     * @param reach The greatest sensing range of any species.
+     * @return The width and depth of a tile.
+     */
+    public static int tileSizeFor(int reach) {
+        return Math.max(DEFAULT_TILE_SIZE, reach + 2);
+    }
+
+    /**
+     * Create an engine for the given field.
+     *
+     * @param field    The field to update.
+     * @param threads  The number of threads to update tiles on.
+     * @param tileSize The width and depth of a tile, at least MIN_TILE_SIZE.
+     * @param seed     The master seed of the tiles' random streams.
+     */
+    public TiledStepEngine(Field field, int threads, int tileSize, long seed) {
+        if (tileSize < MIN_TILE_SIZE) {
+            throw new IllegalArgumentException("Tiles must be at least " + MIN_TILE_SIZE
+                    + " cells across: " + tileSize);
+        }
+        this.field = field;
+        this.tileSize = tileSize;
+        tileRows = (field.getDepth() + tileSize - 1) / tileSize;
+        tileCols = (field.getWidth() + tileSize - 1) / tileSize;
+        pool = new ForkJoinPool(threads);
+
+        int tiles = tileRows * tileCols;
+        int[] colourCounts = new int[COLOURS];
+        for (int tile = 0; tile < tiles; tile++) {
+            colourCounts[colourOf(tile)]++;
+        }
+        colourTiles = new int[COLOURS][];
+        for (int colour = 0; colour < COLOURS; colour++) {
+            colourTiles[colour] = new int[colourCounts[colour]];
+            colourCounts[colour] = 0;
+        }
+        for (int tile = 0; tile < tiles; tile++) {
+            int colour = colourOf(tile);
+            colourTiles[colour][colourCounts[colour]++] = tile;
+        }
+
+        bucketed = new Animal[0];
+        tileStart = new int[tiles + 1];
+        tileCursor = new int[tiles];
+        births = new ArrayList<>(tiles);
+        for (int tile = 0; tile < tiles; tile++) {
+            births.add(new ArrayList<>());
+        }
+        this.seed = seed;
+    }
+
+    /**
+     * Make every live animal that is due at this step act once. The
+     * animals born during the step are added to newAnimals in tile order.
+     *
+     * @param animals    The animals due at this step.
+     * @param newAnimals A list to receive newly born animals.
+     */
+    public void step(ActivityScheduler animals, List<Animal> newAnimals) {
+        bucket(animals);
+        for (int[] tiles : colourTiles) {
+            if (tiles.length > 0) {
+                pool.invoke(new TileTask(tiles, 0, tiles.length));
+            }
+        }
+        for (List<Animal> born : births) {
+            newAnimals.addAll(born);
+            born.clear();
+        }
+        // Do not keep the animals of this step reachable.
+        Arrays.fill(bucketed, 0, animals.dueCount(), null);
+    }
+
+    /**
+     * Start or stop timing the acts of the animals, for a StepProfiler.
+     *
+     * @param profiling Whether to time them.
+     */
+    public void setProfiling(boolean profiling) {
+        actNanos = profiling ? new long[tileStart.length - 1][Species.idRange()] : null;
+    }
+
+    /**
+     * Take the time the animals of each species spent acting at the last
+     * step, summed over all tiles, and start counting again. Times are
+     * only kept while profiling.
+     *
+     * @param nanos Receives the time of each species, by species id.
+     */
+    public void takeActNanos(long[] nanos) {
+        Arrays.fill(nanos, 0);
+        long[][] tiles = actNanos;
+        if (tiles == null) {
+            return;
+        }
+        for (long[] tile : tiles) {
+            for (int id = 0; id < tile.length && id < nanos.length; id++) {
+                nanos[id] += tile[id];
+            }
+            Arrays.fill(tile, 0);
+        }
+    }
+
+    /**
+     * Return the number of threads tiles are updated on.
+     *
+     * @return The parallelism of the engine.
+     */
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the engine's threads. The engine cannot be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Group the live animals by the tile they are in, keeping their
+     * order within each tile.
+     *
+     * @param animals The animals due at this step.
+     */
+    private void bucket(ActivityScheduler animals) {
+        if (bucketed.length < animals.dueCount()) {
+            bucketed = new Animal[animals.dueCount()];
+        }
+        Arrays.fill(tileStart, 0);
+        for (int i = 0; i < animals.dueCount(); i++) {
+            Animal animal = animals.due(i);
+            if (animal.isAlive()) {
+                tileStart[tileOf(animal.getCell()) + 1]++;
+            }
+        }
+        for (int tile = 0; tile < tileCursor.length; tile++) {
+            tileStart[tile + 1] += tileStart[tile];
+            tileCursor[tile] = tileStart[tile];
+        }
+        for (int i = 0; i < animals.dueCount(); i++) {
+            Animal animal = animals.due(i);
+            if (animal.isAlive()) {
+                bucketed[tileCursor[tileOf(animal.getCell())]++] = animal;
+            }
+        }
+    }
+
+    /**
+     * Make the animals that started the step in one tile act.
+     *
+     * @param tile The tile index.
+     */
+    private void actTile(int tile) {
+        List<Animal> born = births.get(tile);
+        Randomizer.setCurrent(Randomizer.stream(seed, field.getClock(), tile));
+        long[][] timed = actNanos;
+        try {
+            for (int i = tileStart[tile]; i < tileStart[tile + 1]; i++) {
+                Animal animal = bucketed[i];
+                // It may have been eaten by a neighbour earlier in the step.
+                if (animal.isAlive()) {
+                    if (timed == null) {
+                        animal.act(born);
+                    } else {
+                        long start = System.nanoTime();
+                        animal.act(born);
+                        int id = animal.getSpeciesId();
+                        if (id < timed[tile].length) {
+                            timed[tile][id] += System.nanoTime() - start;
+                        }
+                    }
+                }
+            }
+        } finally {
+            Randomizer.setCurrent(null);
+        }
+    }
+
+    /**
+     * Return the tile containing the given cell.
+     *
+     * @param cell The row-major index of the cell.
+     * @return The tile index.
+     */
+    private int tileOf(int cell) {
+        int row = cell / field.getWidth();
+        int col = cell - row * field.getWidth();
+        return (row / tileSize) * tileCols + col / tileSize;
+    }
+
+    /**
+     * Return the colour of the given tile.
+     *
+     * @param tile The tile index.
+     * @return A colour from 0 to 3.
+     */
+    private int colourOf(int tile) {
+        int tileRow = tile / tileCols;
+        int tileCol = tile % tileCols;
+        return ((tileRow & 1) << 1) | (tileCol & 1);
+    }
+
+    /**
+     * Updates a range of the tiles of one colour, splitting the range
+     * between threads.
+     */
+    private class TileTask extends RecursiveAction {
+        // Tasks are never serialized; declared to keep the class lint-clean.
+        private static final long serialVersionUID = 1L;
+
+        // The tiles of the colour being updated.
+        private final int[] tiles;
+        // The range of tiles handled by this task.
+        private final int from;
+        private final int to;
+
+        /**
+         * Create a task for tiles[from] to tiles[to - 1].
+         *
+         * @param tiles The tiles of one colour.
+         * @param from  The first tile to update.
+         * @param to    One past the last tile to update.
+         */
+        TileTask(int[] tiles, int from, int to) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Update the tiles, or split them between two tasks.
+         */
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                actTile(tiles[from]);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(tiles, from, middle), new TileTask(tiles, middle, to));
+            }
+        }
+    }
+}
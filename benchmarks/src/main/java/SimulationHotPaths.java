@@ -0,0 +1,244 @@
+import foodchain.benchmarks.HotPaths;
+
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The work timed by the JMH benchmarks in foodchain.benchmarks, done with
+ * the simulation's classes. It is in the unnamed package with them, which
+ * the benchmarks cannot be, and is found by the benchmarks through
+ * HotPaths.create().
+ *
+ * Fields are built from a fixed seed, so every run of a benchmark works on
+ * the same animals and queries the same cells.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class SimulationHotPaths implements HotPaths {
+    // The number of cells queried, and animals moved, in turn.
+    private static final int QUERIES = 1 << 16;
+    // The seed used to build the fields and choose the queries.
+    private static final long SEED = 42;
+    // The species, in the order fields are filled.
+    private static final Species[] SPECIES = {
+            Species.LION, Species.SNAKE, Species.OWL, Species.RAT, Species.ZEBRA};
+
+    // The field worked on.
+    private Field field;
+    // The cells queried, as cells and as locations, and the next to query.
+    private int[] cells;
+    private Location[] locations;
+    private int next;
+    // The animals moved, the cells each moves to next, and the next to move.
+    private Animal[] movers;
+    private int[] targets;
+    private int nextMover;
+    // The animals that act, and where their young are put.
+    private List<Animal> actors;
+    private final List<Animal> newAnimals = new ArrayList<>();
+    // The simulator worked on, and its view if open.
+    private Simulator simulator;
+    private SimulatorView view;
+
+    /**
+     * Create the work; nothing is built until a build method is called.
+     */
+    public SimulationHotPaths() {
+    }
+
+    @Override
+    public void buildField(int depth, int width, double density) {
+        SplittableRandom rand = new SplittableRandom(SEED);
+        field = new Field(depth, width);
+        for (int row = 0; row < depth; row++) {
+            for (int col = 0; col < width; col++) {
+                if (rand.nextDouble() < density) {
+                    Location location = field.locationAt(row, col);
+                    new Animal(SPECIES[rand.nextInt(SPECIES.length)], true, field, location);
+                }
+            }
+        }
+
+        cells = new int[QUERIES];
+        locations = new Location[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            cells[i] = rand.nextInt(depth * width);
+            locations[i] = field.locationAt(cells[i]);
+        }
+        next = 0;
+
+        // Only one animal may claim each free cell, so that every move
+        // there and back again is to a free cell.
+        List<Animal> chosen = new ArrayList<>();
+        List<Integer> claimedCells = new ArrayList<>();
+        boolean[] claimed = new boolean[depth * width];
+        for (Animal animal : animalsIn(null)) {
+            int target = field.randomFreeAdjacentCell(animal.getCell());
+            if (target != Field.NO_CELL && !claimed[target]) {
+                claimed[target] = true;
+                chosen.add(animal);
+                claimedCells.add(target);
+            }
+        }
+        movers = chosen.toArray(new Animal[0]);
+        targets = new int[movers.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = claimedCells.get(i);
+        }
+        nextMover = 0;
+    }
+
+    @Override
+    public int adjacentLocations() {
+        return field.adjacentLocations(nextLocation()).size();
+    }
+
+    @Override
+    public int freeAdjacentLocations() {
+        return field.getFreeAdjacentLocations(nextLocation()).size();
+    }
+
+    @Override
+    public int randomFreeAdjacentCell() {
+        return field.randomFreeAdjacentCell(nextCell());
+    }
+
+    @Override
+    public int randomAdjacentEmptyCell() {
+        return field.randomAdjacentCell(nextCell(), Species.EMPTY);
+    }
+
+    @Override
+    public int moveAnimal() {
+        if (movers.length == 0) {
+            return Field.NO_CELL;
+        }
+        int i = nextMover;
+        nextMover = (nextMover + 1) % movers.length;
+        int from = movers[i].getCell();
+        int to = targets[i];
+        movers[i].setLocation(to);
+        targets[i] = from;
+        return to;
+    }
+
+    @Override
+    public void chooseActors(String species) {
+        for (Species candidate : Species.all()) {
+            if (candidate.getName().equals(species)) {
+                actors = animalsIn(candidate);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No species called " + species);
+    }
+
+    @Override
+    public int act() {
+        newAnimals.clear();
+        field.timeSkip();
+        for (Animal animal : actors) {
+            if (animal.isAlive()) {
+                animal.act(newAnimals);
+            }
+        }
+        return newAnimals.size();
+    }
+
+    @Override
+    public void buildSimulator(int depth, int width, boolean pooled) {
+        close();
+        simulator = new Simulator(depth, width, false);
+        if (!pooled) {
+            simulator.getField().getAnimalPool().setCapacity(0);
+        }
+    }
+
+    @Override
+    public int populate() {
+        // reset() clears the field and populates it again.
+        simulator.reset();
+        return population();
+    }
+
+    @Override
+    public int simulateOneStep() {
+        simulator.simulateOneStep();
+        return population();
+    }
+
+    @Override
+    public void openView() {
+        if (GraphicsEnvironment.isHeadless()) {
+            throw new IllegalStateException("SimulatorView needs a display");
+        }
+        Field shown = simulator.getField();
+        view = new SimulatorView(shown.getDepth(), shown.getWidth());
+    }
+
+    @Override
+    public int showStatus() {
+        view.showStatus(simulator.getStep(), simulator.getField(), simulator.getStats());
+        return simulator.getStep();
+    }
+
+    @Override
+    public void close() {
+        if (view != null) {
+            view.dispose();
+            view = null;
+        }
+        if (simulator != null) {
+            simulator.setThreads(0);
+        }
+    }
+
+    /**
+     * @return The next cell to query.
+     */
+    private int nextCell() {
+        int cell = cells[next];
+        next = (next + 1) & (QUERIES - 1);
+        return cell;
+    }
+
+    /**
+     * @return The location of the next cell to query.
+     */
+    private Location nextLocation() {
+        Location location = locations[next];
+        next = (next + 1) & (QUERIES - 1);
+        return location;
+    }
+
+    /**
+     * Return the animals of one species in the field, in row-major order.
+     *
+     * @param species The species, or null for every animal.
+     * @return The animals.
+     */
+    private List<Animal> animalsIn(Species species) {
+        List<Animal> animals = new ArrayList<>();
+        field.forEachOccupied(cell -> {
+            Animal occupant = (Animal) field.getObjectAt(cell);
+            if (species == null || occupant.getSpecies() == species) {
+                animals.add(occupant);
+            }
+        });
+        return animals;
+    }
+
+    /**
+     * @return The number of animals in the simulator's field.
+     */
+    private int population() {
+        int population = 0;
+        for (Species species : Species.all()) {
+            population += simulator.getField().getPopulation(species.getId());
+        }
+        return population;
+    }
+}
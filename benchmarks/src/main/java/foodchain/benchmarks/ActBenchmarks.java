@@ -0,0 +1,65 @@
+package foodchain.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of each species' act(). Each operation lets every animal of
+ * one species in a freshly built field act once. Acting changes the field,
+ * so it is built again before every operation, untimed; a pass over a
+ * species is long enough that the cost of the extra timing is small.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActBenchmarks {
+    // The size of the field, as depth x width.
+    @Param({"80x120", "500x500", "1000x1000"})
+    public String grid;
+    // The fraction of cells occupied.
+    @Param({"0.2", "0.5", "0.8"})
+    public double density;
+    // The species that acts.
+    @Param({"Lion", "Snake", "Owl", "Rat", "Zebra"})
+    public String species;
+
+    // The field and its actors.
+    private HotPaths paths;
+
+    /**
+     * Build the field and choose the actors.
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        Grid size = new Grid(grid);
+        paths = HotPaths.create();
+        paths.buildField(size.depth, size.width, density);
+        paths.chooseActors(species);
+    }
+
+    /**
+     * @return The number of animals born.
+     */
+    @Benchmark
+    public int act() {
+        return paths.act();
+    }
+}
@@ -0,0 +1,61 @@
+package foodchain.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+import java.io.IOException;
+
+/**
+ * Runs the JMH benchmarks, taking the usual JMH command line, but with the
+ * gc profiler (-prof gc) and JSON results (-rf json) unless told
+ * otherwise, so that every run records its allocation rate and can be
+ * compared with runs of other versions. Name the results of each version
+ * with -rff, for example:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar -rff results-2021.03.01.json
+ *
+ * Add -e showStatus when there is no display.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public class BenchmarkMain {
+    /**
+     * Run the benchmarks.
+     *
+     * @param args The JMH command line.
+     * @throws CommandLineOptionException If the command line is not valid.
+     * @throws RunnerException If a benchmark cannot be run.
+     * @throws IOException If the benchmark list cannot be read.
+     */
+    public static void main(String[] args)
+            throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions command = new CommandLineOptions(args);
+        if (command.shouldHelp() || command.shouldList() || command.shouldListProfilers()
+                || command.shouldListResultFormats() || command.shouldListWithParams()) {
+            Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(command);
+        boolean profiled = false;
+        for (ProfilerConfig profiler : command.getProfilers()) {
+            profiled |= profiler.getKlass().equals("gc")
+                    || profiler.getKlass().equals(GCProfiler.class.getName());
+        }
+        if (!profiled) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!command.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,94 @@
+package foodchain.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the neighbourhood queries of a Field and of moving an
+ * animal, on fields of several sizes and occupancies. A random free
+ * neighbour is found three ways, for comparison: from the list of free
+ * locations, by reading each neighbour, and from the occupancy bitboard.
+ * Each operation is one query about, or one move of, the next of a fixed
+ * set of random cells or animals.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmarks {
+    // The size of the field, as depth x width.
+    @Param({"80x120", "500x500", "1000x1000"})
+    public String grid;
+    // The fraction of cells occupied.
+    @Param({"0.2", "0.5", "0.8"})
+    public double density;
+
+    // The field and the queries.
+    private HotPaths paths;
+
+    /**
+     * Build the field.
+     */
+    @Setup
+    public void setUp() {
+        Grid size = new Grid(grid);
+        paths = HotPaths.create();
+        paths.buildField(size.depth, size.width, density);
+    }
+
+    /**
+     * @return The result of Field.adjacentLocations.
+     */
+    @Benchmark
+    public int adjacentLocations() {
+        return paths.adjacentLocations();
+    }
+
+    /**
+     * @return The result of Field.getFreeAdjacentLocations.
+     */
+    @Benchmark
+    public int getFreeAdjacentLocations() {
+        return paths.freeAdjacentLocations();
+    }
+
+    /**
+     * @return The result of Field.randomFreeAdjacentCell.
+     */
+    @Benchmark
+    public int randomFreeAdjacentCell() {
+        return paths.randomFreeAdjacentCell();
+    }
+
+    /**
+     * @return The result of Field.randomAdjacentCell for an empty cell.
+     */
+    @Benchmark
+    public int randomAdjacentEmptyCell() {
+        return paths.randomAdjacentEmptyCell();
+    }
+
+    /**
+     * @return The cell an animal was moved to with Animal.setLocation.
+     */
+    @Benchmark
+    public int setLocation() {
+        return paths.moveAnimal();
+    }
+}
@@ -0,0 +1,30 @@
+package foodchain.benchmarks;
+
+/**
+ * The size of a field, given to a benchmark as a single parameter such as
+ * "80x120" (depth by width), so that JMH does not run every depth with
+ * every width.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+final class Grid {
+    // The depth and width of the field.
+    final int depth;
+    final int width;
+
+    /**
+     * Read a field size.
+     *
+     * @param grid The size, as depth x width.
+     * @throws IllegalArgumentException If it is not of that form.
+     */
+    Grid(String grid) {
+        int x = grid.indexOf('x');
+        if (x < 0) {
+            throw new IllegalArgumentException("Grid should be depth x width: " + grid);
+        }
+        depth = Integer.parseInt(grid.substring(0, x));
+        width = Integer.parseInt(grid.substring(x + 1));
+    }
+}
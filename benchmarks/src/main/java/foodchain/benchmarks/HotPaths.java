@@ -0,0 +1,128 @@
+package foodchain.benchmarks;
+
+import java.util.ServiceLoader;
+
+/**
+ * The work timed by the benchmarks, done with the simulation's classes.
+ * Those are in the unnamed package, which JMH does not allow benchmarks in
+ * and which code in a package cannot import, so the benchmarks reach them
+ * through this interface. Its implementation, SimulationHotPaths, is in
+ * the unnamed package and is found with a ServiceLoader.
+ *
+ * Each instance works on one field or simulator at a time, built by one of
+ * the build methods; the query methods ask about the next of a fixed set
+ * of random cells each time they are called.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+public interface HotPaths {
+    /**
+     * @return A new instance of the implementation on the class path.
+     * @throws IllegalStateException If there is none.
+     */
+    static HotPaths create() {
+        return ServiceLoader.load(HotPaths.class).findFirst()
+                .orElseThrow(() -> new IllegalStateException("No HotPaths on the class path"));
+    }
+
+    /**
+     * Build a field in which each cell is occupied with the given
+     * probability, by an animal of a species chosen at random, and choose
+     * the cells to query and the animals to move.
+     *
+     * @param depth   The depth of the field.
+     * @param width   The width of the field.
+     * @param density The fraction of cells occupied.
+     */
+    void buildField(int depth, int width, double density);
+
+    /**
+     * @return The number of locations adjacent to the next cell, from
+     *         Field.adjacentLocations.
+     */
+    int adjacentLocations();
+
+    /**
+     * @return The number of free locations adjacent to the next cell,
+     *         from Field.getFreeAdjacentLocations.
+     */
+    int freeAdjacentLocations();
+
+    /**
+     * @return A random free neighbour of the next cell, from the
+     *         occupancy bitboard.
+     */
+    int randomFreeAdjacentCell();
+
+    /**
+     * @return A random free neighbour of the next cell, found by reading
+     *         each neighbour's species as it is without the bitboard.
+     */
+    int randomAdjacentEmptyCell();
+
+    /**
+     * Move the next animal to a free neighbour with Animal.setLocation,
+     * or back again if it has moved there already.
+     *
+     * @return The cell it moved to.
+     */
+    int moveAnimal();
+
+    /**
+     * Choose the animals of one species in the field as the actors.
+     *
+     * @param species The name of the species.
+     * @throws IllegalArgumentException If there is no such species.
+     */
+    void chooseActors(String species);
+
+    /**
+     * Let every actor act once.
+     *
+     * @return The number of animals born.
+     */
+    int act();
+
+    /**
+     * Build a populated simulator without a view.
+     *
+     * @param depth  The depth of the field.
+     * @param width  The width of the field.
+     * @param pooled Whether births reuse the animals that died.
+     */
+    void buildSimulator(int depth, int width, boolean pooled);
+
+    /**
+     * Clear the simulator's field and populate it again.
+     *
+     * @return The number of animals placed.
+     */
+    int populate();
+
+    /**
+     * Run the simulator for one step.
+     *
+     * @return The number of animals alive after it.
+     */
+    int simulateOneStep();
+
+    /**
+     * Open a view of the simulator's field.
+     *
+     * @throws IllegalStateException If there is no display.
+     */
+    void openView();
+
+    /**
+     * Show the simulator's state in the view.
+     *
+     * @return The step shown.
+     */
+    int showStatus();
+
+    /**
+     * Close the view, if open, and stop the simulator's threads.
+     */
+    void close();
+}
@@ -0,0 +1,162 @@
+package foodchain.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a whole Simulator: populating its field, running a step
+ * with and without the pool of dead animals (compare the allocation rates
+ * that -prof gc reports), and painting the view. Each benchmark has its
+ * own state, so it is run only with the parameters it uses.
+ *
+ * The view can only be painted with a display; without one the
+ * showStatus benchmark fails in its setup, and can be left out with
+ * -e showStatus.
+ *
+ * @author Dylan Barker (k20001430) and Isaac Addo (k20034809)
+ * @version 2021.03.01
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmarks {
+    /**
+     * @param state A simulator.
+     * @return The number of animals placed by Simulator.populate.
+     */
+    @Benchmark
+    public int populate(Populated state) {
+        return state.paths.populate();
+    }
+
+    /**
+     * @param state A simulator, built again for each iteration.
+     * @return The number of animals alive after one step.
+     */
+    @Benchmark
+    public int simulateOneStep(Running state) {
+        return state.paths.simulateOneStep();
+    }
+
+    /**
+     * @param state A simulator with a view.
+     * @return The step shown by SimulatorView.showStatus.
+     */
+    @Benchmark
+    public int showStatus(Viewed state) {
+        return state.paths.showStatus();
+    }
+
+    /**
+     * A simulator to populate.
+     */
+    @State(Scope.Thread)
+    public static class Populated {
+        // The size of the field, as depth x width.
+        @Param({"80x120", "500x500", "1000x1000"})
+        public String grid;
+
+        // The simulator.
+        HotPaths paths;
+
+        /**
+         * Build the simulator.
+         */
+        @Setup
+        public void setUp() {
+            Grid size = new Grid(grid);
+            paths = HotPaths.create();
+            paths.buildSimulator(size.depth, size.width, true);
+        }
+
+        /**
+         * Stop the simulator.
+         */
+        @TearDown
+        public void tearDown() {
+            paths.close();
+        }
+    }
+
+    /**
+     * A simulator to run. Its population changes as it runs, so it is
+     * built again for each iteration.
+     */
+    @State(Scope.Thread)
+    public static class Running {
+        // The size of the field, as depth x width.
+        @Param({"80x120", "500x500", "1000x1000"})
+        public String grid;
+        // Whether births reuse the animals that died.
+        @Param({"true", "false"})
+        public boolean pooled;
+
+        // The simulator.
+        HotPaths paths;
+
+        /**
+         * Build the simulator.
+         */
+        @Setup(Level.Iteration)
+        public void setUp() {
+            Grid size = new Grid(grid);
+            paths = HotPaths.create();
+            paths.buildSimulator(size.depth, size.width, pooled);
+        }
+
+        /**
+         * Stop the simulator.
+         */
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            paths.close();
+        }
+    }
+
+    /**
+     * A simulator with a view to paint.
+     */
+    @State(Scope.Thread)
+    public static class Viewed {
+        // The size of the field, as depth x width.
+        @Param({"80x120", "500x500", "1000x1000"})
+        public String grid;
+
+        // The simulator and its view.
+        HotPaths paths;
+
+        /**
+         * Build the simulator and open its view.
+         */
+        @Setup
+        public void setUp() {
+            Grid size = new Grid(grid);
+            paths = HotPaths.create();
+            paths.buildSimulator(size.depth, size.width, true);
+            paths.openView();
+        }
+
+        /**
+         * Close the view and stop the simulator.
+         */
+        @TearDown
+        public void tearDown() {
+            paths.close();
+        }
+    }
+}